@@ -0,0 +1,99 @@
+package landsatviewer.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares a JMH JSON result with the stored baseline and exits non-zero
+ * if any benchmark got slower, or allocates more per operation, by more
+ * than the given fraction and by more than the two runs' error margins.
+ *
+ * Usage: BaselineCheck result.json baseline.json tolerance
+ *
+ * To accept a new baseline, copy target/jmh-result.json over
+ * src/jmh/baseline.json.  Timings only compare meaningfully on the
+ * machine the baseline was recorded on; allocation per operation is
+ * much less sensitive to hardware.
+ */
+public class BaselineCheck {
+    private static final String ALLOCATION = "·gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        final File result = new File(args[0]);
+        final File baseline = new File(args[1]);
+        final double tolerance = Double.parseDouble(args[2]);
+
+        if (!baseline.exists()) {
+            System.out.printf("No benchmark baseline at %s; copy %s there to create one%n", baseline, result);
+            return;
+        }
+
+        final Map<String, JsonNode> current = read(result);
+        final Map<String, JsonNode> previous = read(baseline);
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %8s%n", "benchmark", "baseline", "current", "change");
+        for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+            final JsonNode before = previous.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14s%n", entry.getKey(), "(new)", score(entry.getValue().path("primaryMetric")));
+                continue;
+            }
+
+            final boolean higherIsBetter = "thrpt".equals(entry.getValue().path("mode").asText());
+            regressions += compare(entry.getKey(), before.path("primaryMetric"), entry.getValue().path("primaryMetric"),
+                    higherIsBetter, tolerance);
+
+            final JsonNode allocationBefore = before.path("secondaryMetrics").path(ALLOCATION);
+            final JsonNode allocationNow = entry.getValue().path("secondaryMetrics").path(ALLOCATION);
+            if (!allocationBefore.isMissingNode() && !allocationNow.isMissingNode()) {
+                regressions += compare(entry.getKey() + " (alloc)", allocationBefore, allocationNow, false, tolerance);
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d benchmark(s) regressed by more than %.0f%% against %s%n", regressions, tolerance * 100, baseline);
+            System.exit(1);
+        }
+    }
+
+    private static int compare(String name, JsonNode before, JsonNode now, boolean higherIsBetter, double tolerance) {
+        final double was = before.path("score").asDouble();
+        final double is = now.path("score").asDouble();
+        final double error = before.path("scoreError").asDouble(0) + now.path("scoreError").asDouble(0);
+        final double change = was == 0 ? (is == 0 ? 0 : 1) : (is - was) / was;
+        final boolean regressed = Math.abs(is - was) > error && (higherIsBetter ? change < -tolerance : change > tolerance);
+
+        System.out.printf("%-70s %14s %14s %+7.1f%%%s%n", name, score(before), score(now), change * 100, regressed ? "  REGRESSED" : "");
+        return regressed ? 1 : 0;
+    }
+
+    private static String score(JsonNode metric) {
+        return String.format("%.2f %s", metric.path("score").asDouble(), metric.path("scoreUnit").asText());
+    }
+
+    private static Map<String, JsonNode> read(File file) throws IOException {
+        final Map<String, JsonNode> benchmarks = new LinkedHashMap<>();
+        for (JsonNode benchmark : new ObjectMapper().readTree(file)) {
+            benchmarks.put(key(benchmark), benchmark);
+        }
+        return benchmarks;
+    }
+
+    private static String key(JsonNode benchmark) {
+        final String name = benchmark.path("benchmark").asText().replace("landsatviewer.benchmark.", "");
+        final Map<String, String> params = new TreeMap<>();
+        for (Iterator<Map.Entry<String, JsonNode>> it = benchmark.path("params").fields(); it.hasNext(); ) {
+            final Map.Entry<String, JsonNode> param = it.next();
+            params.put(param.getKey(), param.getValue().asText());
+        }
+        return params.isEmpty() ? name : name + params;
+    }
+}
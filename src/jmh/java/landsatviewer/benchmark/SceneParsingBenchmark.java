@@ -0,0 +1,95 @@
+package landsatviewer.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneCollection;
+import landsatviewer.planet.SceneParser;
+
+/**
+ * Turning Planet payloads (src/jmh/resources/payloads) into our JSON:
+ * Jackson data binding, the streaming parser's binding, and its copy
+ * straight to an output generator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SceneParsingBenchmark {
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private final OutputStream discard = new Discard();
+    private byte[] search;
+    private byte[] scene;
+
+    @Setup
+    public void setUp() throws IOException {
+        search = load("/payloads/search-response.json");
+        scene = load("/payloads/scene.json");
+    }
+
+    @Benchmark
+    public SceneCollection searchJackson() throws IOException {
+        return mapper.readValue(search, SceneCollection.class);
+    }
+
+    @Benchmark
+    public SceneCollection searchParser() throws IOException {
+        return SceneParser.parse(search);
+    }
+
+    @Benchmark
+    public void searchRoundTripJackson() throws IOException {
+        mapper.writeValue(discard, mapper.readValue(search, SceneCollection.class));
+    }
+
+    @Benchmark
+    public void searchCopy(Blackhole blackhole) throws IOException {
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(discard)) {
+            SceneParser.copy(new ByteArrayInputStream(search), generator);
+            blackhole.consume(generator);
+        }
+    }
+
+    @Benchmark
+    public Scene sceneJackson() throws IOException {
+        return mapper.readValue(scene, Scene.class);
+    }
+
+    private static byte[] load(String path) throws IOException {
+        try (InputStream in = SceneParsingBenchmark.class.getResourceAsStream(path)) {
+            return in.readAllBytes();
+        }
+    }
+
+    // Unlike OutputStream.nullOutputStream(), keeps accepting writes after the generator closes it
+    private static class Discard extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package landsatviewer.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import landsatviewer.planet.SearchCriteria;
+
+/**
+ * Building a search and writing its request body, directly and through
+ * Jackson as RestTemplate does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchCriteriaBenchmark {
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Benchmark
+    public byte[] toJson() {
+        return new SearchCriteria(-122.4194, 37.7749, 14).toJson();
+    }
+
+    @Benchmark
+    public byte[] objectMapper() throws JsonProcessingException {
+        return mapper.writeValueAsBytes(new SearchCriteria(-122.4194, 37.7749, 14));
+    }
+}
@@ -0,0 +1,116 @@
+package landsatviewer.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import landsatviewer.Application;
+
+/**
+ * One tile request through the whole application, from the HTTP client to
+ * a stub upstream on localhost and back, with the tile caches and
+ * prefetching turned off so every request is proxied.
+ *
+ * The gc profiler only sees the benchmark's own JVM, which here includes
+ * the server, the stub and the client.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TileProxyBenchmark {
+    @Param({"true", "false"})
+    public boolean streaming;
+
+    private HttpServer upstream;
+    private ExecutorService upstreamThreads;
+    private ConfigurableApplicationContext context;
+    private HttpClient http;
+    private HttpRequest request;
+
+    @Setup
+    public void setUp() throws IOException {
+        final byte[] tile = Files.readAllBytes(Paths.get("src/main/webapp/tile-error.png"));
+
+        // Otherwise Nagle's algorithm holds back the stub's response body behind its headers
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        upstreamThreads = Executors.newFixedThreadPool(4);
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 100);
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody()) {
+                in.readAllBytes();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        });
+        upstream.start();
+
+        final String upstreamUrl = "http://127.0.0.1:" + upstream.getAddress().getPort();
+        context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=0",
+                        "logging.level.root=WARN",
+                        "PLANET_API_KEY=test-key",
+                        "PLANET_API_URL=" + upstreamUrl,
+                        "PLANET_TILES_URL=" + upstreamUrl,
+                        "TILE_STREAMING=" + streaming,
+                        "TILE_CACHE_MAX_BYTES=0",
+                        "PREFETCH_CONCURRENCY=0")
+                .run();
+
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        request = HttpRequest
+                .newBuilder(URI.create("http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port")
+                        + "/tiles/test-scene-id/10/163/395.png"))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        upstream.stop(0);
+        upstreamThreads.shutdownNow();
+    }
+
+    @Benchmark
+    public byte[] tile() throws IOException, InterruptedException {
+        final HttpResponse<byte[]> response = http.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("tile request failed with HTTP " + response.statusCode());
+        }
+        return response.body();
+    }
+}
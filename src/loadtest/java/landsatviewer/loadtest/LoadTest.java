@@ -0,0 +1,144 @@
+package landsatviewer.loadtest;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import landsatviewer.Application;
+
+/**
+ * Runs the application against {@link PlanetStub} in this JVM, drives it
+ * with {@link MapPanTraffic} from a number of users for a while, and
+ * reports throughput, latency percentiles and response statuses for each
+ * kind of request, alongside the calls that reached the stub.  The report
+ * is printed and written as JSON so that builds can be compared.
+ *
+ * The application is configured from the environment as usual, and
+ * arguments are passed on to it, for example --TILE_CACHE_MAX_BYTES=0.
+ * Its logging is off, since the failures the stub injects would flood
+ * the output.
+ */
+public class LoadTest {
+    private static final int USERS = Integer.getInteger("loadtest.users", 50);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 60);
+    private static final long SEED = Long.getLong("loadtest.seed", 1);
+
+    private final Map<String, List<Long>> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, Long>> statuses = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        final Map<PlanetStub.Kind, PlanetStub.Latency> upstreamLatencies = Map.of(
+                PlanetStub.Kind.TILE, PlanetStub.Latency.parse(System.getProperty("loadtest.latency.tile", "40:250")),
+                PlanetStub.Kind.SCENE, PlanetStub.Latency.parse(System.getProperty("loadtest.latency.scene", "80:400")),
+                PlanetStub.Kind.SEARCH, PlanetStub.Latency.parse(System.getProperty("loadtest.latency.search", "200:1000")));
+        final double errorRate = Double.parseDouble(System.getProperty("loadtest.errors", "0.01"));
+        final double throttleRate = Double.parseDouble(System.getProperty("loadtest.throttled", "0.01"));
+
+        try (PlanetStub stub = new PlanetStub(Paths.get(System.getProperty("loadtest.recordings", "src/jmh/resources/payloads")),
+                upstreamLatencies, errorRate, throttleRate, SEED)) {
+            final Map<String, Object> report;
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                    .properties(
+                            "server.port=0",
+                            "logging.level.root=OFF",
+                            "PLANET_API_KEY=test-key",
+                            "PLANET_API_URL=" + stub.getUrl(),
+                            "PLANET_TILES_URL=" + stub.getUrl())
+                    .run(args)) {
+                final String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+                report = new LoadTest().run(baseUrl, stub);
+            }
+
+            final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            final String result = System.getProperty("loadtest.result", "target/loadtest-result.json");
+            mapper.writeValue(new File(result), report);
+            System.out.println("Wrote " + result);
+        }
+    }
+
+    private Map<String, Object> run(String baseUrl, PlanetStub stub) throws Exception {
+        final MapPanTraffic traffic = new MapPanTraffic(baseUrl, stub.getSearchResponse(), this::record);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        final ExecutorService users = Executors.newFixedThreadPool(USERS);
+        for (int i = 0; i < USERS; i++) {
+            final long seed = SEED * 1_000_003 + i;
+            users.execute(() -> {
+                try {
+                    traffic.browse(seed, deadline);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        users.shutdown();
+        users.awaitTermination(DURATION_SECONDS + 60, TimeUnit.SECONDS);
+
+        return report(stub);
+    }
+
+    private void record(String kind, int status, long nanos) {
+        latencies.computeIfAbsent(kind, k -> Collections.synchronizedList(new ArrayList<>())).add(nanos);
+        statuses.computeIfAbsent(kind, k -> new ConcurrentHashMap<>()).merge(status, 1L, Long::sum);
+    }
+
+    private Map<String, Object> report(PlanetStub stub) {
+        final Map<String, Object> requests = new LinkedHashMap<>();
+        System.out.println();
+        System.out.printf("%s, %d users, %d s, seed %d%n", System.getProperty("loadtest.label", "build"), USERS, DURATION_SECONDS, SEED);
+        System.out.printf("%-8s %10s %12s %10s %10s  %s%n", "request", "count", "requests/s", "p50 (ms)", "p99 (ms)", "statuses");
+        for (String kind : List.of("tile", "scene", "search")) {
+            final List<Long> sorted = new ArrayList<>(latencies.getOrDefault(kind, List.of()));
+            Collections.sort(sorted);
+            final Map<Integer, Long> counts = new TreeMap<>(statuses.getOrDefault(kind, Map.of()));
+
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", sorted.size());
+            summary.put("throughput", sorted.size() / (double) DURATION_SECONDS);
+            summary.put("p50_ms", percentile(sorted, 0.50));
+            summary.put("p99_ms", percentile(sorted, 0.99));
+            summary.put("statuses", counts);
+            requests.put(kind, summary);
+
+            System.out.printf("%-8s %10d %12.1f %10.1f %10.1f  %s%n",
+                    kind, sorted.size(), sorted.size() / (double) DURATION_SECONDS,
+                    percentile(sorted, 0.50), percentile(sorted, 0.99), counts);
+        }
+
+        final Map<String, Map<String, Long>> upstream = stub.stats();
+        System.out.printf("%-8s %10s %10s %10s%n", "upstream", "calls", "errors", "throttled");
+        upstream.forEach((kind, counts) -> System.out.printf("%-8s %10d %10d %10d%n",
+                kind, counts.get("calls"), counts.get("errors"), counts.get("throttled")));
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", System.getProperty("loadtest.label", "build"));
+        report.put("users", USERS);
+        report.put("duration_seconds", DURATION_SECONDS);
+        report.put("seed", SEED);
+        report.put("requests", requests);
+        report.put("upstream", upstream);
+        return report;
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1)) / 1e6;
+    }
+}
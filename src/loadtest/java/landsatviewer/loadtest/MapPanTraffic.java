@@ -0,0 +1,184 @@
+package landsatviewer.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays what a map client does while someone browses scenes: a point
+ * search, a scene lookup, then the tiles of a 4x3 tile viewport as it
+ * pans with some momentum and now and then zooms.  A pan requests only
+ * the row or column of tiles it uncovers, all at once as a browser
+ * would, and a zoom requests the whole viewport.
+ *
+ * Scenes are chosen with a skew towards the first ones in the recorded
+ * search, so that users overlap the way they do around popular places.
+ * Each user's choices come from its own seeded random source, so the
+ * same seed replays the same requests.
+ */
+class MapPanTraffic {
+    private static final int COLUMNS = 4;
+    private static final int ROWS = 3;
+    private static final int MIN_ZOOM = 7;
+    private static final int MAX_ZOOM = 13;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    interface Recorder {
+        void record(String kind, int status, long nanos);
+    }
+
+    private final String baseUrl;
+    private final HttpClient http;
+    private final List<Place> places;
+    private final Recorder recorder;
+
+    MapPanTraffic(String baseUrl, byte[] searchResponse, Recorder recorder) throws IOException {
+        this.baseUrl = baseUrl;
+        this.http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(TIMEOUT).build();
+        this.places = readPlaces(searchResponse);
+        this.recorder = recorder;
+    }
+
+    /**
+     * Browses as one user until the deadline, one session after another.
+     */
+    void browse(long seed, long deadline) throws InterruptedException {
+        final Random random = new Random(seed);
+        while (System.nanoTime() < deadline) {
+            session(random, deadline);
+        }
+    }
+
+    private void session(Random random, long deadline) throws InterruptedException {
+        // Squaring a uniform value favours the first places
+        final double u = random.nextDouble();
+        final Place place = places.get((int) (u * u * places.size()));
+        final double lon = place.lon + (random.nextDouble() - 0.5) * 0.2;
+        final double lat = place.lat + (random.nextDouble() - 0.5) * 0.2;
+
+        join(List.of(send("search", String.format(Locale.ROOT, "/scenes?x=%.4f&y=%.4f", lon, lat))));
+        join(List.of(send("scene", "/scenes/" + place.sceneId)));
+
+        int zoom = 9 + random.nextInt(3);
+        int left = (int) tileX(lon, zoom) - COLUMNS / 2;
+        int top = (int) tileY(lat, zoom) - ROWS / 2;
+        join(tiles(place.sceneId, zoom, left, top, COLUMNS, ROWS));
+
+        int dx = random.nextInt(3) - 1;
+        int dy = random.nextInt(3) - 1;
+        final int moves = 20 + random.nextInt(40);
+        for (int i = 0; i < moves && System.nanoTime() < deadline; i++) {
+            Thread.sleep(100 + random.nextInt(500));
+
+            if (random.nextDouble() < 0.1) {
+                final int next = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, zoom + (random.nextBoolean() ? 1 : -1)));
+                final double scale = Math.pow(2, next - zoom);
+                left = (int) ((left + COLUMNS / 2.0) * scale) - COLUMNS / 2;
+                top = (int) ((top + ROWS / 2.0) * scale) - ROWS / 2;
+                zoom = next;
+                join(tiles(place.sceneId, zoom, left, top, COLUMNS, ROWS));
+                continue;
+            }
+
+            // Mostly keep going the same way
+            if (random.nextDouble() < 0.3 || (dx == 0 && dy == 0)) {
+                dx = random.nextInt(3) - 1;
+                dy = random.nextInt(3) - 1;
+            }
+            left += dx;
+            top += dy;
+
+            final List<CompletableFuture<Void>> uncovered = new ArrayList<>();
+            if (dx != 0) {
+                uncovered.addAll(tiles(place.sceneId, zoom, dx > 0 ? left + COLUMNS - 1 : left, top, 1, ROWS));
+            }
+            if (dy != 0) {
+                uncovered.addAll(tiles(place.sceneId, zoom, left, dy > 0 ? top + ROWS - 1 : top, COLUMNS, 1));
+            }
+            join(uncovered);
+        }
+    }
+
+    private List<CompletableFuture<Void>> tiles(String sceneId, int zoom, int left, int top, int columns, int rows) {
+        final int size = 1 << zoom;
+        final List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (int y = top; y < top + rows; y++) {
+            for (int x = left; x < left + columns; x++) {
+                if (y >= 0 && y < size) {
+                    requests.add(send("tile", String.format("/tiles/%s/%d/%d/%d.png", sceneId, zoom, Math.floorMod(x, size), y)));
+                }
+            }
+        }
+        return requests;
+    }
+
+    private CompletableFuture<Void> send(String kind, String path) {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(TIMEOUT).build();
+        final long start = System.nanoTime();
+        return http.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, e) -> {
+                    recorder.record(kind, e != null ? 0 : response.statusCode(), System.nanoTime() - start);
+                    return null;
+                });
+    }
+
+    // Failures are recorded, so the requests always complete normally
+    private static void join(List<CompletableFuture<Void>> requests) throws InterruptedException {
+        CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0])).join();
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+    }
+
+    private static double tileX(double lon, int zoom) {
+        return (lon + 180) / 360 * (1 << zoom);
+    }
+
+    private static double tileY(double lat, int zoom) {
+        final double radians = Math.toRadians(lat);
+        return (1 - Math.log(Math.tan(radians) + 1 / Math.cos(radians)) / Math.PI) / 2 * (1 << zoom);
+    }
+
+    private static List<Place> readPlaces(byte[] searchResponse) throws IOException {
+        final List<Place> places = new ArrayList<>();
+        for (JsonNode feature : new ObjectMapper().readTree(searchResponse).path("features")) {
+            // The centre of the footprint's outer ring, closing point excluded
+            final JsonNode ring = feature.path("geometry").path("coordinates").path(0);
+            double lon = 0;
+            double lat = 0;
+            final int points = Math.max(1, ring.size() - 1);
+            for (int i = 0; i < points; i++) {
+                lon += ring.path(i).path(0).asDouble();
+                lat += ring.path(i).path(1).asDouble();
+            }
+            places.add(new Place(feature.path("id").asText(), lon / points, lat / points));
+        }
+        if (places.isEmpty()) {
+            throw new IOException("recorded search response has no features");
+        }
+        return places;
+    }
+
+    private static class Place {
+        final String sceneId;
+        final double lon;
+        final double lat;
+
+        Place(String sceneId, double lon, double lat) {
+            this.sceneId = sceneId;
+            this.lon = lon;
+            this.lat = lat;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package landsatviewer.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Stands in for Planet's tile, item and quick-search endpoints on a
+ * local port.  Responses are the recorded payloads in a directory
+ * (scene.json, search-response.json and any *.png tiles; tiles are
+ * generated if there are none), each sent after a latency drawn from a
+ * log-normal distribution for its kind.  A share of calls fails with 500
+ * and another share is throttled with 429 and Retry-After.
+ *
+ * Each response's latency and outcome are drawn from the seed, the
+ * request's URI and how many times that URI has been requested before,
+ * so the same seed gives the nth request for a URI the same response
+ * whatever order concurrent requests arrive in.
+ */
+public class PlanetStub implements AutoCloseable {
+    public enum Kind {
+        TILE, SCENE, SEARCH
+    }
+
+    private final HttpServer server;
+    private final ExecutorService threads;
+    private final Map<Kind, Latency> latencies;
+    private final double errorRate;
+    private final double throttleRate;
+    private final long seed;
+
+    private final byte[] scene;
+    private final byte[] search;
+    private final List<byte[]> tiles;
+
+    private final Map<Kind, LongAdder> calls = new LinkedHashMap<>();
+    private final Map<Kind, LongAdder> errors = new LinkedHashMap<>();
+    private final Map<Kind, LongAdder> throttled = new LinkedHashMap<>();
+    private final Map<String, AtomicLong> requests = new ConcurrentHashMap<>();
+
+    public PlanetStub(Path recordings, Map<Kind, Latency> latencies, double errorRate, double throttleRate, long seed)
+            throws IOException {
+        this.latencies = latencies;
+        this.errorRate = errorRate;
+        this.throttleRate = throttleRate;
+        this.seed = seed;
+        this.scene = Files.readAllBytes(recordings.resolve("scene.json"));
+        // Result pages link back to Planet, which must not be followed from here
+        this.search = new String(Files.readAllBytes(recordings.resolve("search-response.json")), StandardCharsets.UTF_8)
+                .replaceFirst("\"_next\": \"[^\"]*\", ", "")
+                .getBytes(StandardCharsets.UTF_8);
+        this.tiles = readTiles(recordings);
+
+        for (Kind kind : Kind.values()) {
+            calls.put(kind, new LongAdder());
+            errors.put(kind, new LongAdder());
+            throttled.put(kind, new LongAdder());
+        }
+
+        // Otherwise each response waits out a delayed ACK between its headers and body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        threads = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1000);
+        server.setExecutor(threads);
+        server.createContext("/data/v1/Landsat8L1G/", exchange ->
+                respond(exchange, Kind.TILE, "image/png", tiles.get(Math.floorMod(exchange.getRequestURI().getPath().hashCode(), tiles.size()))));
+        server.createContext("/data/v1/item-types/", exchange -> respond(exchange, Kind.SCENE, "application/json", scene));
+        server.createContext("/data/v1/quick-search", exchange -> respond(exchange, Kind.SEARCH, "application/json", search));
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * The recorded search response, for picking scenes to request.
+     */
+    public byte[] getSearchResponse() {
+        return search;
+    }
+
+    public Map<String, Map<String, Long>> stats() {
+        final Map<String, Map<String, Long>> stats = new LinkedHashMap<>();
+        for (Kind kind : Kind.values()) {
+            stats.put(kind.name().toLowerCase(), Map.of(
+                    "calls", calls.get(kind).sum(),
+                    "errors", errors.get(kind).sum(),
+                    "throttled", throttled.get(kind).sum()));
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        threads.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange, Kind kind, String contentType, byte[] body) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            in.readAllBytes();
+        }
+        calls.get(kind).increment();
+
+        final String uri = exchange.getRequestURI().toString();
+        final long count = requests.computeIfAbsent(uri, u -> new AtomicLong()).getAndIncrement();
+        final Random random = new Random((seed * 1_000_003 + uri.hashCode()) * 1_000_003 + count);
+
+        try {
+            Thread.sleep(latencies.get(kind).sample(random));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final double outcome = random.nextDouble();
+        if (outcome < throttleRate) {
+            throttled.get(kind).increment();
+            exchange.getResponseHeaders().add("Retry-After", "1");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+            return;
+        }
+        if (outcome < throttleRate + errorRate) {
+            errors.get(kind).increment();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static List<byte[]> readTiles(Path recordings) throws IOException {
+        final List<byte[]> tiles = new ArrayList<>();
+        try (Stream<Path> files = Files.list(recordings)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".png")).sorted().collect(Collectors.toList())) {
+                tiles.add(Files.readAllBytes(file));
+            }
+        }
+        if (tiles.isEmpty()) {
+            final Random random = new Random(1);
+            for (int i = 0; i < 16; i++) {
+                tiles.add(createTile(random));
+            }
+        }
+        return tiles;
+    }
+
+    // Noisy enough that the PNG is about the size of a real Landsat tile
+    private static byte[] createTile(Random random) throws IOException {
+        final BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        for (int y = 0; y < 256; y += 4) {
+            for (int x = 0; x < 256; x += 4) {
+                graphics.setColor(new Color(random.nextInt(64) + 64, random.nextInt(64) + 96, random.nextInt(64) + 64));
+                graphics.fillRect(x, y, 4, 4);
+            }
+        }
+        graphics.dispose();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A log-normal latency given by its median and 99th percentile in milliseconds, written "median:p99".
+     */
+    public static class Latency {
+        private static final double Z_99 = 2.326;
+
+        private final double mu;
+        private final double sigma;
+
+        Latency(double median, double p99) {
+            this.mu = Math.log(Math.max(median, 0.001));
+            this.sigma = p99 > median ? Math.log(p99 / median) / Z_99 : 0;
+        }
+
+        public static Latency parse(String value) {
+            final String[] parts = value.split(":");
+            final double median = Double.parseDouble(parts[0]);
+            return new Latency(median, parts.length > 1 ? Double.parseDouble(parts[1]) : median);
+        }
+
+        long sample(Random random) {
+            return Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package landsatviewer;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Counts requests being served, including asynchronous ones still waiting
+ * on upstream after their servlet thread has returned.
+ */
+class ActiveRequestFilter extends OncePerRequestFilter {
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AsyncListener listener = new AsyncListener() {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            active.decrementAndGet();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    };
+
+    ActiveRequestFilter(MeterRegistry registry) {
+        Gauge.builder("http.server.requests.active", active, AtomicInteger::get)
+                .description("Requests being served")
+                .register(registry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        active.incrementAndGet();
+        try {
+            chain.doFilter(request, response);
+        }
+        finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(listener);
+            }
+            else {
+                active.decrementAndGet();
+            }
+        }
+    }
+}
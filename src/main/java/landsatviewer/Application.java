@@ -2,10 +2,16 @@ package landsatviewer;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class Application {
     public static void main(String[] args) {
-        SpringApplication.run(Application.class, args);
+        final ConfigurableApplicationContext context = SpringApplication.run(Application.class, args);
+
+        // A training run only loads the classes a class-data-sharing archive should hold
+        if (context.getEnvironment().getProperty("STARTUP_TRAINING_RUN", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
@@ -0,0 +1,443 @@
+package landsatviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import landsatviewer.planet.Client;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TileLoader;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TileSynthesizer;
+
+/**
+ * Fetches many scenes or tiles in one request.  Items are fetched in
+ * parallel up to a per-request limit and written out as each completes,
+ * so a slow item does not hold up the rest.
+ *
+ * Scenes are written as newline-delimited JSON.  Tiles are written as
+ * frames of five big-endian ints (z, x, y, HTTP status, data length)
+ * followed by the PNG data.  Tiles are loaded the same way as single
+ * ones, so they come from the caches, synthesis or their owner first,
+ * and a tile another instance owns is fetched from Planet only by it.
+ *
+ * A composite tile layers the same tile of several scenes, in the order
+ * given, into one PNG.  Scenes are fetched in parallel but layered in
+ * order, and no further scenes are fetched once the tile is covered.
+ */
+@RestController
+class BatchController {
+    private static final Logger logger = LoggerFactory.getLogger(BatchController.class);
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    static final MediaType TILE_FRAMES = MediaType.parseMediaType("application/vnd.landsat-viewer.tiles");
+    static final int FRAME_HEADER_SIZE = 20;
+
+    private static final int CACHE_LONG = 86400;
+    private static final int CACHE_SHORT = 300;
+
+    private final SceneCache sceneCache;
+    private final TileLoader tileLoader;
+    private final TileSynthesizer tileSynthesizer;
+    private final ObjectMapper mapper;
+    private final int concurrency;
+    private final int maxItems;
+
+    @Autowired
+    BatchController(SceneCache sceneCache,
+                    TileLoader tileLoader,
+                    TileSynthesizer tileSynthesizer,
+                    ObjectMapper mapper,
+                    @Value("${BATCH_CONCURRENCY:8}") int concurrency,
+                    @Value("${BATCH_MAX_ITEMS:100}") int maxItems) {
+        this.sceneCache = sceneCache;
+        this.tileLoader = tileLoader;
+        this.tileSynthesizer = tileSynthesizer;
+        this.mapper = mapper;
+        this.concurrency = concurrency;
+        this.maxItems = maxItems;
+    }
+
+    @GetMapping(value = "/scenes", params = "ids")
+    ResponseEntity<ResponseBodyEmitter> getScenes(@RequestParam String ids) {
+        final List<String> sceneIds = new ArrayList<>(new LinkedHashSet<>(split(ids)));
+        if (sceneIds.isEmpty() || sceneIds.size() > maxItems) {
+            return createError("Malformed input: expected between 1 and %d scene ids", maxItems);
+        }
+
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        fanOut(sceneIds, sceneCache::get, (id, scene, e) -> {
+            if (e != null) {
+                emitter.send(line(Map.of("id", id, "error", String.format("Scene fetch error: %s", unwrap(e).getMessage()))), NDJSON);
+            }
+            else if (scene.isMissing()) {
+                emitter.send(line(Map.of("id", id, "error", String.format("Scene '%s' not found", id))), NDJSON);
+            }
+            else {
+                emitter.send(line(scene.getJson()), NDJSON);
+            }
+        }, emitter);
+
+        return ResponseEntity.ok().contentType(NDJSON).body(emitter);
+    }
+
+    @GetMapping("/tiles/{sceneId}/batch")
+    ResponseEntity<ResponseBodyEmitter> getTiles(@PathVariable String sceneId, @RequestParam String tiles) {
+        final List<TileKey> keys = new ArrayList<>();
+        for (String tile : new LinkedHashSet<>(split(tiles))) {
+            final TileKey key = TileKey.parse(sceneId + "/" + tile);
+            if (key == null) {
+                return createError("Malformed input: '%s' is not a z/x/y tile", tile);
+            }
+            keys.add(key);
+        }
+        if (keys.isEmpty() || keys.size() > maxItems) {
+            return createError("Malformed input: expected between 1 and %d tiles", maxItems);
+        }
+
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        fanOut(keys, tileLoader::load, (key, data, e) -> {
+            if (e != null) {
+                logger.error("Could not fetch batched tile (scene={}, x={}, y={}, z={})", key.sceneId, key.x, key.y, key.z);
+                emitter.send(frame(key, statusOf(unwrap(e)).value(), new byte[0]), TILE_FRAMES);
+            }
+            else {
+                emitter.send(frame(key, 200, data), TILE_FRAMES);
+            }
+        }, emitter);
+
+        return ResponseEntity.ok().contentType(TILE_FRAMES).body(emitter);
+    }
+
+    @GetMapping("/composite/{z}/{x}/{y}.png")
+    CompletableFuture<ResponseEntity<byte[]>> getComposite(@PathVariable int z,
+                                                           @PathVariable int x,
+                                                           @PathVariable int y,
+                                                           @RequestParam String scenes) {
+        final List<TileKey> keys = new ArrayList<>();
+        for (String sceneId : new LinkedHashSet<>(split(scenes))) {
+            final TileKey key = TileKey.parse(String.format("%s/%d/%d/%d", sceneId, z, x, y));
+            if (key == null) {
+                return CompletableFuture.completedFuture(createCompositeError(HttpStatus.BAD_REQUEST,
+                        "Malformed input: '%s/%d/%d/%d' is not a tile", sceneId, z, x, y));
+            }
+            keys.add(key);
+        }
+        if (keys.isEmpty() || keys.size() > maxItems) {
+            return CompletableFuture.completedFuture(createCompositeError(HttpStatus.BAD_REQUEST,
+                    "Malformed input: expected between 1 and %d scene ids", maxItems));
+        }
+
+        return new CompositeRequest(keys).start();
+    }
+
+    /**
+     * Runs {@code task} over {@code items} with at most {@link #concurrency} in flight, reporting each result as it
+     * completes and completing the emitter after the last one.
+     */
+    private <T, R> void fanOut(List<T> items, Function<T, CompletableFuture<R>> task, Listener<T, R> listener, ResponseBodyEmitter emitter) {
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger remaining = new AtomicInteger(items.size());
+
+        // Results that are already complete are reported from the loop rather than from their callbacks, so that a
+        // batch served from the caches does not nest a call per item
+        final Runnable lane = new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while ((index = next.getAndIncrement()) < items.size()) {
+                    final T item = items.get(index);
+                    CompletableFuture<R> result;
+                    try {
+                        result = task.apply(item);
+                    }
+                    catch (RuntimeException e) {
+                        result = CompletableFuture.failedFuture(e);
+                    }
+
+                    if (!result.isDone()) {
+                        result.whenComplete((value, e) -> {
+                            report(item, value, e);
+                            run();
+                        });
+                        return;
+                    }
+                    result.whenComplete((value, e) -> report(item, value, e));
+                }
+            }
+
+            private void report(T item, R value, Throwable e) {
+                try {
+                    listener.completed(item, value, e);
+                }
+                catch (IOException | IllegalStateException sendError) {
+                    logger.debug("Could not write batch item {}: {}", item, sendError.getMessage());
+                }
+
+                if (remaining.decrementAndGet() == 0) {
+                    emitter.complete();
+                }
+            }
+        };
+
+        for (int i = 0; i < Math.min(concurrency, items.size()); i++) {
+            lane.run();
+        }
+    }
+
+    private byte[] line(Object value) throws IOException {
+        return line(mapper.writeValueAsBytes(value));
+    }
+
+    private static byte[] line(byte[] json) {
+        final byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private static byte[] frame(TileKey key, int status, byte[] data) {
+        return ByteBuffer.allocate(FRAME_HEADER_SIZE + data.length)
+                .putInt(key.z)
+                .putInt(key.x)
+                .putInt(key.y)
+                .putInt(status)
+                .putInt(data.length)
+                .put(data)
+                .array();
+    }
+
+    private static List<String> split(String values) {
+        final List<String> parts = new ArrayList<>();
+        for (String value : values.split(",")) {
+            if (!value.trim().isEmpty()) {
+                parts.add(value.trim());
+            }
+        }
+        return parts;
+    }
+
+    private static HttpStatus statusOf(Throwable e) {
+        return e instanceof Client.Overloaded
+                || e instanceof RejectedExecutionException
+                || e instanceof TilePeers.OwnerError && ((TilePeers.OwnerError) e).getStatus() == 503
+                ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private ResponseEntity<byte[]> createCompositeError(HttpStatus status, String message, Object... args) {
+        final ResponseEntity.BodyBuilder response = ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON);
+        if (status == HttpStatus.SERVICE_UNAVAILABLE) {
+            response.header(HttpHeaders.RETRY_AFTER, "1");
+        }
+        try {
+            return response.body(mapper.writeValueAsBytes(Map.of("error", String.format(message, args))));
+        }
+        catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> createError(String message, Object... args) {
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            emitter.send(Map.of("error", String.format(message, args)), MediaType.APPLICATION_JSON);
+            emitter.complete();
+        }
+        catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON).body(emitter);
+    }
+
+    /**
+     * Fetches the layers of a composite up to {@link #concurrency} at a time and adds them in order as the ones before
+     * them are done.  Layers that fail are left out, and the tile is cached briefly if any did.
+     */
+    private class CompositeRequest {
+        private final List<TileKey> keys;
+        private final List<CompletableFuture<byte[]>> layers;
+        private final TileSynthesizer.Composite composite = tileSynthesizer.composite();
+        private final CompletableFuture<ResponseEntity<byte[]>> result = new CompletableFuture<>();
+
+        private int started;
+        private int added;
+        private int freed;
+        private boolean adding;
+        private boolean covered;
+        private boolean finished;
+        private boolean driving;
+        private boolean dirty;
+        private Throwable failure;
+
+        CompositeRequest(List<TileKey> keys) {
+            this.keys = keys;
+            this.layers = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        }
+
+        CompletableFuture<ResponseEntity<byte[]>> start() {
+            synchronized (this) {
+                freed = Math.min(concurrency, keys.size());
+            }
+            drive();
+            return result;
+        }
+
+        // Starts fetches for freed places and adds the next layer if it has arrived and no other layer is being added.
+        // A layer's place in the concurrency limit is freed once it has been added, so that coverage is known before
+        // the next fetch.  One thread drives at a time, outside the lock; fetches and adds that complete meanwhile,
+        // including ones that complete inline, only ask it to go round again.
+        private void drive() {
+            synchronized (this) {
+                dirty = true;
+                if (driving) {
+                    return;
+                }
+                driving = true;
+            }
+
+            while (true) {
+                final int fetches;
+                byte[] next = null;
+                boolean finishing = false;
+                synchronized (this) {
+                    if (!dirty) {
+                        driving = false;
+                        return;
+                    }
+                    dirty = false;
+
+                    while (!adding && !finished) {
+                        if (covered || added == keys.size()) {
+                            finished = finishing = true;
+                            break;
+                        }
+                        final CompletableFuture<byte[]> layer = layers.get(added);
+                        if (layer == null || !layer.isDone()) {
+                            break;
+                        }
+
+                        try {
+                            next = layer.join();
+                        }
+                        catch (CompletionException | CancellationException e) {
+                            failure = unwrap(e);
+                            added++;
+                            freed++;
+                            continue;
+                        }
+                        adding = true;
+                        break;
+                    }
+
+                    fetches = freed;
+                    freed = 0;
+                }
+
+                for (int i = 0; i < fetches; i++) {
+                    fetchNext();
+                }
+                if (next != null) {
+                    composite.add(next).whenComplete((full, e) -> {
+                        synchronized (this) {
+                            adding = false;
+                            added++;
+                            freed++;
+                            covered = Boolean.TRUE.equals(full);
+                            if (e != null) {
+                                failure = unwrap(e);
+                            }
+                        }
+                        drive();
+                    });
+                }
+                if (finishing) {
+                    finish();
+                }
+            }
+        }
+
+        private void fetchNext() {
+            final int index;
+            synchronized (this) {
+                if (covered || started == keys.size()) {
+                    return;
+                }
+                index = started++;
+            }
+            final TileKey key = keys.get(index);
+
+            CompletableFuture<byte[]> layer;
+            try {
+                layer = tileLoader.load(key);
+            }
+            catch (RuntimeException e) {
+                layer = CompletableFuture.failedFuture(e);
+            }
+            synchronized (this) {
+                layers.set(index, layer);
+            }
+            layer.whenComplete((data, e) -> {
+                if (e != null) {
+                    logger.error("Could not fetch composite layer (scene={}, x={}, y={}, z={})", key.sceneId, key.x, key.y, key.z);
+                }
+                drive();
+            });
+        }
+
+        private void finish() {
+            if (composite.isEmpty() && failure != null) {
+                result.complete(createCompositeError(statusOf(failure), "Composite tile error: %s", failure.getMessage()));
+                return;
+            }
+
+            final int maxAge = failure != null ? CACHE_SHORT : CACHE_LONG;
+            composite.encode().whenComplete((png, e) -> {
+                if (e != null) {
+                    result.complete(createCompositeError(statusOf(unwrap(e)), "Composite tile error: %s", unwrap(e).getMessage()));
+                    return;
+                }
+                result.complete(ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_PNG)
+                        .cacheControl(CacheControl.maxAge(maxAge, TimeUnit.SECONDS))
+                        .body(png));
+            });
+        }
+    }
+
+    private interface Listener<T, R> {
+        void completed(T item, R result, Throwable error) throws IOException;
+    }
+}
@@ -0,0 +1,322 @@
+package landsatviewer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.Client;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.scenes.SearchCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TileSynthesizer;
+
+/**
+ * Carries the hottest cache keys across a restart.  The keys of the
+ * scenes, search cells and tiles each cache would keep longest are
+ * written to a gzipped snapshot periodically and on shutdown, one
+ * "kind key" line each.
+ *
+ * On startup, tiles in the snapshot that are in the disk store are put
+ * back in the tile cache before the server starts listening.  Everything
+ * else is loaded from Planet in the background, hottest first, at no
+ * more than the restore rate.  Tiles another peer owns or that are
+ * synthesized are not fetched.
+ */
+@Component
+public class CacheSnapshot implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshot.class);
+
+    private static final String SCENE = "scene";
+    private static final String SEARCH = "search";
+    private static final String TILE = "tile";
+
+    private final Path file;
+    private final long intervalSeconds;
+    private final int maxTiles;
+    private final int maxEntries;
+    private final int rate;
+    private final Client client;
+    private final SceneCache sceneCache;
+    private final SearchCache searchCache;
+    private final TileCache tileCache;
+    private final DiskTileStore tileStore;
+    private final TilePeers peers;
+    private final TileSynthesizer synthesizer;
+
+    private final Queue<Supplier<CompletableFuture<?>>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private ScheduledExecutorService executor;
+    private CompletableFuture<ScheduledFuture<?>> restoring;
+    private volatile boolean running;
+
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong restoredLocal = new AtomicLong();
+    private final AtomicLong restoredFetched = new AtomicLong();
+    private final AtomicLong restoreFailed = new AtomicLong();
+
+    @Autowired
+    public CacheSnapshot(@Value("${CACHE_SNAPSHOT_FILE:}") String file,
+                         @Value("${CACHE_SNAPSHOT_INTERVAL:300}") long intervalSeconds,
+                         @Value("${CACHE_SNAPSHOT_MAX_TILES:5000}") int maxTiles,
+                         @Value("${CACHE_SNAPSHOT_MAX_ENTRIES:1000}") int maxEntries,
+                         @Value("${CACHE_RESTORE_RATE:10}") int rate,
+                         Client client,
+                         SceneCache sceneCache,
+                         SearchCache searchCache,
+                         TileCache tileCache,
+                         DiskTileStore tileStore,
+                         TilePeers peers,
+                         TileSynthesizer synthesizer) {
+        this.file = file.isEmpty() ? null : Paths.get(file);
+        this.intervalSeconds = intervalSeconds;
+        this.maxTiles = maxTiles;
+        this.maxEntries = maxEntries;
+        this.rate = rate;
+        this.client = client;
+        this.sceneCache = sceneCache;
+        this.searchCache = searchCache;
+        this.tileCache = tileCache;
+        this.tileStore = tileStore;
+        this.peers = peers;
+        this.synthesizer = synthesizer;
+
+        if (this.file == null) {
+            logger.info("Cache snapshots disabled");
+        }
+        else {
+            logger.info("Cache snapshots enabled (file={}, interval={}s, max_tiles={}, max_entries={}, restore_rate={})",
+                    this.file, intervalSeconds, maxTiles, maxEntries, rate);
+        }
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        if (!isEnabled()) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cache-snapshot");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        try {
+            restore(read());
+        }
+        catch (NoSuchFileException e) {
+            logger.info("No cache snapshot at {}", file);
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn("Could not read cache snapshot {}: {}", file, e.getMessage());
+        }
+
+        if (!pending.isEmpty() && rate > 0) {
+            final long period = TimeUnit.SECONDS.toNanos(1) / rate;
+            // Assigned before the task can first run, which may be before scheduleAtFixedRate returns
+            restoring = new CompletableFuture<>();
+            restoring.complete(executor.scheduleAtFixedRate(this::restoreNext, period, period, TimeUnit.NANOSECONDS));
+        }
+        if (intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::snapshotQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (!isEnabled() || executor == null) {
+            return;
+        }
+
+        executor.shutdownNow();
+        pending.clear();
+        snapshotQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Writes the hottest keys of each cache, replacing the previous snapshot only once the new one is complete.
+     */
+    public synchronized void snapshot() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        for (String sceneId : sceneCache.hottest(maxEntries)) {
+            lines.add(SCENE + " " + sceneId);
+        }
+        for (String search : searchCache.hottest(maxEntries)) {
+            lines.add(SEARCH + " " + search);
+        }
+        for (TileKey key : tileCache.hottest(maxTiles)) {
+            lines.add(TILE + " " + key);
+        }
+
+        final Path partial = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(partial)), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        snapshots.incrementAndGet();
+        keys.set(lines.size());
+        logger.debug("Wrote cache snapshot {} ({} keys)", file, lines.size());
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of(
+                "snapshots", snapshots.get(),
+                "keys", keys.get(),
+                "restored_local", restoredLocal.get(),
+                "restored_fetched", restoredFetched.get(),
+                "restore_failed", restoreFailed.get(),
+                "restore_pending", (long) pending.size());
+    }
+
+    private List<String> read() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private void restore(List<String> lines) {
+        for (String line : lines) {
+            final int space = line.indexOf(' ');
+            final String kind = space < 0 ? line : line.substring(0, space);
+            final String key = line.substring(space + 1);
+
+            if (SCENE.equals(kind)) {
+                pending.add(() -> sceneCache.get(key));
+            }
+            else if (SEARCH.equals(kind)) {
+                pending.add(() -> searchCache.restore(key));
+            }
+            else if (TILE.equals(kind)) {
+                final TileKey tile = TileKey.parse(key);
+                if (tile != null && !restoreStored(tile) && peers.isOwner(tile) && !synthesizer.isOverzoomed(tile)) {
+                    pending.add(() -> fetch(tile));
+                }
+            }
+        }
+
+        logger.info("Restored {} tiles from the disk store, {} keys to fetch", restoredLocal.get(), pending.size());
+    }
+
+    private boolean restoreStored(TileKey key) {
+        // Restoring a tile is not a request for it, so it leaves the store's hit ratio and recency alone
+        final ByteBuffer stored = tileStore.peek(key);
+        if (stored == null) {
+            return false;
+        }
+        final byte[] data = new byte[stored.remaining()];
+        stored.duplicate().get(data);
+        tileCache.put(key, data);
+        restoredLocal.incrementAndGet();
+        return true;
+    }
+
+    private CompletableFuture<?> fetch(TileKey key) {
+        if (tileCache.contains(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return client.fetchTileDataAsync(key.sceneId, key.x, key.y, key.z).thenAccept(data -> {
+            tileCache.put(key, data);
+            tileStore.put(key, data);
+        });
+    }
+
+    // One key per tick, and none while as many fetches as the rate allows per second are still outstanding
+    private void restoreNext() {
+        if (inFlight.get() >= rate) {
+            return;
+        }
+
+        final Supplier<CompletableFuture<?>> next = pending.poll();
+        if (next == null) {
+            restoring.thenAccept(task -> task.cancel(false));
+            logger.info("Cache restore finished (fetched={}, failed={})", restoredFetched.get(), restoreFailed.get());
+            return;
+        }
+
+        inFlight.incrementAndGet();
+        CompletableFuture<?> restored;
+        try {
+            restored = next.get();
+        }
+        catch (RuntimeException e) {
+            restored = CompletableFuture.failedFuture(e);
+        }
+        restored.whenComplete((result, e) -> {
+            inFlight.decrementAndGet();
+            if (e != null) {
+                restoreFailed.incrementAndGet();
+                logger.debug("Could not restore cache entry: {}", e.getMessage());
+            }
+            else {
+                restoredFetched.incrementAndGet();
+            }
+        });
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn("Could not write cache snapshot {}: {}", file, e.getMessage());
+        }
+    }
+}
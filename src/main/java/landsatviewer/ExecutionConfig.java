@@ -0,0 +1,19 @@
+package landsatviewer;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import landsatviewer.planet.UpstreamExecutor;
+
+@Configuration
+class ExecutionConfig {
+
+    // Ignores case, as UpstreamExecutor does when it reads the same mode
+    @Bean
+    @ConditionalOnExpression("'${EXECUTION_MODE:async}'.equalsIgnoreCase('virtual')")
+    TomcatConnectorCustomizer virtualThreadConnector() {
+        return connector -> connector.getProtocolHandler().setExecutor(UpstreamExecutor.newVirtualExecutor("http-"));
+    }
+}
@@ -0,0 +1,98 @@
+package landsatviewer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.PlanetTransport;
+import landsatviewer.scenes.FootprintCatalog;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.scenes.SearchCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TilePrefetcher;
+import landsatviewer.tiles.TileSynthesizer;
+
+/**
+ * Metrics served at /actuator/prometheus.  Endpoint and upstream timers
+ * publish p50/p95/p99 and histogram buckets; the statistics each component
+ * reports on /stats are exported as gauges, read when scraped.
+ */
+@Configuration
+class MetricsConfig {
+    private static final String[] TIMED = {"http.server.requests", "planet.requests"};
+
+    @Bean
+    MeterFilter latencyDistributions() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                for (String name : TIMED) {
+                    if (id.getName().equals(name)) {
+                        return DistributionStatisticConfig.builder()
+                                .percentiles(0.5, 0.95, 0.99)
+                                .percentilesHistogram(true)
+                                .minimumExpectedValue(Duration.ofMillis(1).toNanos())
+                                .maximumExpectedValue(Duration.ofSeconds(30).toNanos())
+                                .build()
+                                .merge(config);
+                    }
+                }
+                return config;
+            }
+        };
+    }
+
+    @Bean
+    ActiveRequestFilter activeRequestFilter(MeterRegistry registry) {
+        return new ActiveRequestFilter(registry);
+    }
+
+    @Bean
+    MeterBinder componentStats(Client client,
+                               PlanetTransport transport,
+                               SearchCache searchCache,
+                               FootprintCatalog footprintCatalog,
+                               SceneCache sceneCache,
+                               TileCache tileCache,
+                               DiskTileStore tileStore,
+                               TilePrefetcher tilePrefetcher,
+                               TilePeers tilePeers,
+                               TileSynthesizer tileSynthesizer,
+                               CacheSnapshot cacheSnapshot) {
+        return registry -> {
+            bind(registry, "upstream", client::stats);
+            bind(registry, "transport", transport::stats);
+            bind(registry, "search_cache", searchCache::stats);
+            bind(registry, "footprint_catalog", footprintCatalog::stats);
+            bind(registry, "scene_cache", sceneCache::stats);
+            bind(registry, "tile_cache", tileCache::stats);
+            bind(registry, "tile_store", tileStore::stats);
+            bind(registry, "tile_prefetch", tilePrefetcher::stats);
+            bind(registry, "tile_peers", tilePeers::stats);
+            bind(registry, "tile_synthesis", tileSynthesizer::stats);
+            bind(registry, "cache_snapshot", cacheSnapshot::stats);
+        };
+    }
+
+    // Gauges hold their state weakly, and nothing else refers to the method reference
+    private static void bind(MeterRegistry registry, String component, Supplier<? extends Map<String, ? extends Number>> stats) {
+        for (String key : stats.get().keySet()) {
+            Gauge.builder("landsat." + component + "." + key, stats, supplier -> {
+                final Number value = supplier.get().get(key);
+                return value != null ? value.doubleValue() : Double.NaN;
+            }).strongReference(true).register(registry);
+        }
+    }
+}
@@ -1,25 +1,50 @@
 package landsatviewer;
 
 import javax.servlet.ServletContext;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import landsatviewer.planet.Client;
+import landsatviewer.planet.PlanetTransport;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.TileStream;
+import landsatviewer.scenes.FootprintCatalog;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.scenes.SearchCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TileLoader;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TilePrefetcher;
+import landsatviewer.tiles.TileSynthesizer;
 
 @RestController
 class PlanetController {
@@ -31,11 +56,51 @@ class PlanetController {
 
     private final Client client;
     private final ServletContext context;
+    private final TileCache tileCache;
+    private final DiskTileStore tileStore;
+    private final SearchCache searchCache;
+    private final FootprintCatalog footprintCatalog;
+    private final SceneCache sceneCache;
+    private final TilePrefetcher tilePrefetcher;
+    private final TilePeers tilePeers;
+    private final TileSynthesizer tileSynthesizer;
+    private final TileLoader tileLoader;
+    private final CacheSnapshot cacheSnapshot;
+    private final PlanetTransport transport;
+    private final ObjectMapper mapper;
+    private final boolean searchStreaming;
 
     @Autowired
-    PlanetController(Client client, ServletContext context) {
+    PlanetController(Client client,
+                     ServletContext context,
+                     TileCache tileCache,
+                     DiskTileStore tileStore,
+                     SearchCache searchCache,
+                     FootprintCatalog footprintCatalog,
+                     SceneCache sceneCache,
+                     TilePrefetcher tilePrefetcher,
+                     TilePeers tilePeers,
+                     TileSynthesizer tileSynthesizer,
+                     TileLoader tileLoader,
+                     CacheSnapshot cacheSnapshot,
+                     PlanetTransport transport,
+                     ObjectMapper mapper,
+                     @Value("${SEARCH_STREAMING:true}") boolean searchStreaming) {
         this.client = client;
         this.context = context;
+        this.tileCache = tileCache;
+        this.tileStore = tileStore;
+        this.searchCache = searchCache;
+        this.footprintCatalog = footprintCatalog;
+        this.sceneCache = sceneCache;
+        this.tilePrefetcher = tilePrefetcher;
+        this.tilePeers = tilePeers;
+        this.tileSynthesizer = tileSynthesizer;
+        this.tileLoader = tileLoader;
+        this.cacheSnapshot = cacheSnapshot;
+        this.transport = transport;
+        this.mapper = mapper;
+        this.searchStreaming = searchStreaming;
     }
 
     @GetMapping("/")
@@ -43,67 +108,262 @@ class PlanetController {
         return Map.of("uptime", Duration.between(START_TIMESTAMP, Instant.now()).toMillis() / 1000D);
     }
 
+    @GetMapping("/stats")
+    Map<String, Object> stats() {
+        return Map.ofEntries(
+                Map.entry("upstream", client.stats()),
+                Map.entry("transport", transport.stats()),
+                Map.entry("search_cache", searchCache.stats()),
+                Map.entry("footprint_catalog", footprintCatalog.stats()),
+                Map.entry("scene_cache", sceneCache.stats()),
+                Map.entry("tile_cache", tileCache.stats()),
+                Map.entry("tile_store", tileStore.stats()),
+                Map.entry("tile_prefetch", tilePrefetcher.stats()),
+                Map.entry("tile_peers", tilePeers.stats()),
+                Map.entry("tile_synthesis", tileSynthesizer.stats()),
+                Map.entry("cache_snapshot", cacheSnapshot.stats()));
+    }
+
     @GetMapping("/scenes")
-    ResponseEntity search(@RequestParam(required = false) Double x,
-                          @RequestParam(required = false) Double y,
-                          @RequestParam(name = "days_ago", defaultValue = "14") int daysAgo) {
+    CompletableFuture<ResponseEntity<?>> search(@RequestParam(required = false) Double x,
+                                                @RequestParam(required = false) Double y,
+                                                @RequestParam(name = "days_ago", defaultValue = "14") int daysAgo) {
         if (x == null || y == null) {
-            return createError(400, "Malformed input: missing 'x' and/or 'y' value");
+            return CompletableFuture.completedFuture(createError(400, "Malformed input: missing 'x' and/or 'y' value"));
         }
 
-        try {
-            return createCached(client.search(x, y, daysAgo), CACHE_SHORT);
+        if (searchStreaming && !searchCache.isEnabled()) {
+            return client.openSearchAsync(x, y, daysAgo)
+                    .handle((stream, e) -> {
+                        if (e != null) {
+                            return createError(unwrap(e), "Search error: %s", unwrap(e).getMessage());
+                        }
+                        return createCached(stream, CACHE_SHORT);
+                    });
+        }
+
+        return searchCache.search(x, y, daysAgo)
+                .handle((scenes, e) -> {
+                    if (e != null) {
+                        return createError(unwrap(e), "Search error: %s", unwrap(e).getMessage());
+                    }
+                    return createCached(scenes, CACHE_SHORT);
+                });
+    }
+
+    /**
+     * The same search as newline-delimited JSON, one scene per line.
+     */
+    @GetMapping(value = "/scenes", params = "format=ndjson")
+    CompletableFuture<ResponseEntity<StreamingResponseBody>> searchLines(@RequestParam(required = false) Double x,
+                                                                         @RequestParam(required = false) Double y,
+                                                                         @RequestParam(name = "days_ago", defaultValue = "14") int daysAgo) {
+        if (x == null || y == null) {
+            return CompletableFuture.completedFuture(createStreamedError(null, 400, "Malformed input: missing 'x' and/or 'y' value"));
         }
-        catch (Client.Error err) {
-            return createError("Search error: %s", err.getMessage());
+
+        if (searchStreaming && !searchCache.isEnabled()) {
+            return client.openSearchAsync(x, y, daysAgo)
+                    .handle((stream, e) -> {
+                        if (e != null) {
+                            return createStreamedError(unwrap(e), statusOf(unwrap(e)), "Search error: %s", unwrap(e).getMessage());
+                        }
+                        return createLines(stream::writeLines);
+                    });
         }
+
+        return searchCache.search(x, y, daysAgo)
+                .handle((scenes, e) -> {
+                    if (e != null) {
+                        return createStreamedError(unwrap(e), statusOf(unwrap(e)), "Search error: %s", unwrap(e).getMessage());
+                    }
+                    return createLines(out -> {
+                        if (scenes.features != null) {
+                            for (Scene scene : scenes.features) {
+                                out.write(mapper.writeValueAsBytes(scene));
+                                out.write('\n');
+                            }
+                        }
+                    });
+                });
     }
 
     @GetMapping("/scenes/{id}")
-    ResponseEntity getScene(@PathVariable String id) {
-        try {
-            return createCached(client.getScene(id), CACHE_LONG);
+    CompletableFuture<ResponseEntity<?>> getScene(@PathVariable String id,
+                                                  @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return sceneCache.get(id)
+                .handle((scene, e) -> {
+                    if (e != null) {
+                        return createError(unwrap(e), "Scene fetch error: %s", unwrap(e).getMessage());
+                    }
+                    if (scene.isMissing()) {
+                        return createError(404, "Scene '%s' not found", id);
+                    }
+                    if (scene.matches(ifNoneMatch)) {
+                        return ResponseEntity
+                                .status(HttpStatus.NOT_MODIFIED)
+                                .cacheControl(CacheControl.maxAge(CACHE_LONG, TimeUnit.SECONDS))
+                                .eTag(scene.getETag())
+                                .build();
+                    }
+                    return ResponseEntity
+                            .ok()
+                            .cacheControl(CacheControl.maxAge(CACHE_LONG, TimeUnit.SECONDS))
+                            .eTag(scene.getETag())
+                            .contentType(MediaType.APPLICATION_JSON_UTF8)
+                            .body(scene.getJson());
+                });
+    }
+
+    @GetMapping("/tiles/{sceneId}/{z}/{x}/{y}.png")
+    CompletableFuture<ResponseEntity<Resource>> tiles(@PathVariable String sceneId,
+                                                      @PathVariable int x,
+                                                      @PathVariable int y,
+                                                      @PathVariable int z) {
+        final TileKey key = new TileKey(sceneId, z, x, y);
+        tilePrefetcher.observe(key);
+
+        final ByteBuffer held = tileLoader.getHeld(key);
+        if (held != null) {
+            return CompletableFuture.completedFuture(createTile(200, new ByteBufferResource(held)));
         }
-        catch (Client.NotFound err) {
-            return createError(404, "Scene '%s' not found", id);
+
+        return tileLoader.fetch(key)
+                .handle((stream, e) -> {
+                    if (e != null) {
+                        logger.error("Could not load tile (scene={}, x={}, y={}, z={})", sceneId, x, y, z);
+                        return createFallbackTile(key, unwrap(e));
+                    }
+                    return createTile(stream);
+                });
+    }
+
+    /**
+     * Serves a tile this instance owns to another instance, from the caches or Planet but never from a further peer.
+     */
+    @GetMapping(TilePeers.PATH + "/{sceneId}/{z}/{x}/{y}.png")
+    CompletableFuture<ResponseEntity<Resource>> peerTiles(@PathVariable String sceneId,
+                                                          @PathVariable int x,
+                                                          @PathVariable int y,
+                                                          @PathVariable int z,
+                                                          @RequestHeader(value = TilePeers.SECRET_HEADER, required = false) String secret) {
+        if (!tilePeers.accepts(secret)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
         }
-        catch (Client.Error err) {
-            return createError("Scene fetch error: %s", err.getMessage());
+        tilePeers.served();
+
+        final TileKey key = new TileKey(sceneId, z, x, y);
+        final ByteBuffer held = tileLoader.getHeld(key);
+        if (held != null) {
+            return CompletableFuture.completedFuture(createTile(200, new ByteBufferResource(held)));
         }
+
+        return tileLoader.fetchFromPlanet(key)
+                .handle((stream, e) -> {
+                    if (e != null) {
+                        logger.error("Could not proxy tile request (scene={}, x={}, y={}, z={})", sceneId, x, y, z);
+                        return ResponseEntity.<Resource>status(statusOf(unwrap(e)) == 503 ? 503 : 502).build();
+                    }
+                    return createTile(stream);
+                });
     }
 
-    @GetMapping("/tiles/{sceneId}/{z}/{x}/{y}.png")
-    ResponseEntity<InputStreamResource> tiles(@PathVariable String sceneId,
-                                              @PathVariable int x,
-                                              @PathVariable int y,
-                                              @PathVariable int z) {
-        InputStream stream;
-        int status = 200;
+    private ResponseEntity<Resource> createFallbackTile(TileKey key, Throwable e) {
+        final byte[] stale = tileCache.getStale(key);
+        if (stale != null) {
+            return createTile(200, CACHE_SHORT, new HttpHeaders(), new ByteArrayResource(stale));
+        }
+        return createTile(statusOf(e), CACHE_SHORT, retryHeaders(e),
+                new InputStreamResource(context.getResourceAsStream("/tile-error.png")));
+    }
+
+    private ResponseEntity<Resource> createTile(TileStream stream) {
+        final HttpHeaders headers = new HttpHeaders();
+        if (stream.getContentLength() >= 0) {
+            headers.setContentLength(stream.getContentLength());
+        }
+        if (stream.getETag() != null) {
+            headers.setETag(stream.getETag());
+        }
+
+        return createTile(200, headers, new InputStreamResource(stream));
+    }
 
+    private ResponseEntity<StreamingResponseBody> createLines(StreamingResponseBody body) {
+        return ResponseEntity
+                .ok()
+                .cacheControl(CacheControl.maxAge(CACHE_SHORT, TimeUnit.SECONDS))
+                .contentType(BatchController.NDJSON)
+                .body(body);
+    }
+
+    private ResponseEntity<StreamingResponseBody> createStreamedError(Throwable e, int status, String message, Object... args) {
+        final byte[] body;
         try {
-            stream = client.fetchTile(sceneId, x, y, z);
+            body = mapper.writeValueAsBytes(Map.of("error", String.format(message, args)));
         }
-        catch (Client.Error err) {
-            logger.error("Could not proxy tile request (scene={}, x={}, y={}, z={})", sceneId, x, y, z);
-            status = 500;
-            stream = context.getResourceAsStream("/tile-error.png");
+        catch (JsonProcessingException jsonError) {
+            throw new IllegalStateException(jsonError);
         }
         return ResponseEntity
                 .status(status)
-                .contentType(MediaType.IMAGE_PNG)
-                .cacheControl(CacheControl.maxAge(CACHE_LONG, TimeUnit.SECONDS))
-                .body(new InputStreamResource(stream));
+                .headers(retryHeaders(e))
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(out -> out.write(body));
     }
 
-    private ResponseEntity createCached(Object entity, int maxAge) {
+    private ResponseEntity<Object> createCached(Object entity, int maxAge) {
         return ResponseEntity
                 .ok()
                 .cacheControl(CacheControl.maxAge(maxAge, TimeUnit.SECONDS))
                 .body(entity);
     }
 
-    private ResponseEntity<Map<String, String>> createError(String message, Object... args) {
-        return createError(500, message, args);
+    private ResponseEntity<Resource> createTile(int status, Resource body) {
+        return createTile(status, new HttpHeaders(), body);
+    }
+
+    private ResponseEntity<Resource> createTile(int status, HttpHeaders headers, Resource body) {
+        return createTile(status, CACHE_LONG, headers, body);
+    }
+
+    private ResponseEntity<Resource> createTile(int status, int maxAge, HttpHeaders headers, Resource body) {
+        return ResponseEntity
+                .status(status)
+                .headers(headers)
+                .contentType(MediaType.IMAGE_PNG)
+                .cacheControl(CacheControl.maxAge(maxAge, TimeUnit.SECONDS))
+                .body(body);
+    }
+
+    private ResponseEntity<Map<String, String>> createError(Throwable e, String message, Object... args) {
+        return ResponseEntity
+                .status(statusOf(e))
+                .headers(retryHeaders(e))
+                .body(Map.of("error", String.format(message, args)));
+    }
+
+    // Requests shed to protect Planet are worth retrying shortly
+    private static int statusOf(Throwable e) {
+        return isOverloaded(e) ? 503 : 500;
+    }
+
+    private static boolean isOverloaded(Throwable e) {
+        return e instanceof Client.Overloaded
+                || e instanceof RejectedExecutionException
+                || e instanceof TilePeers.OwnerError && ((TilePeers.OwnerError) e).getStatus() == 503;
+    }
+
+    private static HttpHeaders retryHeaders(Throwable e) {
+        final HttpHeaders headers = new HttpHeaders();
+        if (isOverloaded(e)) {
+            headers.set(HttpHeaders.RETRY_AFTER, "1");
+        }
+        return headers;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
     }
 
     private ResponseEntity<Map<String, String>> createError(int status, String message, Object... args) {
@@ -0,0 +1,48 @@
+package landsatviewer;
+
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.Lifecycle;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.MethodMetadata;
+import org.springframework.util.ClassUtils;
+
+@Configuration
+class StartupConfig {
+
+    /**
+     * Creates application beans on first use rather than at startup.  Infrastructure beans and lifecycle beans,
+     * which must be running before the first request, are still created eagerly.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "STARTUP_LAZY", havingValue = "true")
+    static BeanFactoryPostProcessor lazyInitialization() {
+        return beanFactory -> {
+            for (String name : beanFactory.getBeanDefinitionNames()) {
+                final BeanDefinition definition = beanFactory.getBeanDefinition(name);
+                if (definition.getRole() == BeanDefinition.ROLE_INFRASTRUCTURE || isLifecycle(definition, beanFactory.getBeanClassLoader())) {
+                    continue;
+                }
+                definition.setLazyInit(true);
+            }
+        };
+    }
+
+    // Decided from the declared type, since resolving the bean's actual type here could create it
+    private static boolean isLifecycle(BeanDefinition definition, ClassLoader classLoader) {
+        String typeName = definition.getBeanClassName();
+        if (definition instanceof AnnotatedBeanDefinition) {
+            final MethodMetadata factoryMethod = ((AnnotatedBeanDefinition) definition).getFactoryMethodMetadata();
+            if (factoryMethod != null) {
+                typeName = factoryMethod.getReturnTypeName();
+            }
+        }
+        if (typeName == null || !ClassUtils.isPresent(typeName, classLoader)) {
+            return false;
+        }
+        return Lifecycle.class.isAssignableFrom(ClassUtils.resolveClassName(typeName, classLoader));
+    }
+}
@@ -0,0 +1,175 @@
+package landsatviewer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.Banner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exercises the tile, scene and search paths before the server starts
+ * listening, so that the first real requests do not pay for class loading
+ * and JIT compilation.  A second application context is run against a
+ * Planet stub on a local port, sent requests, and closed again.
+ *
+ * A failed warm-up is logged and the instance starts anyway.
+ */
+@Component
+@ConditionalOnProperty(name = "STARTUP_WARMUP", havingValue = "true")
+class Warmup implements SmartLifecycle {
+    private static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+    private static final String SCENE_ID = "LC80470302019207LGN00";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final int requests;
+    private volatile boolean running;
+
+    Warmup(@Value("${STARTUP_WARMUP_REQUESTS:100}") int requests) {
+        this.requests = requests;
+    }
+
+    @Override
+    public void start() {
+        final long start = System.nanoTime();
+        try {
+            run();
+            logger.info("Warm-up finished in {} ms ({} requests)", (System.nanoTime() - start) / 1_000_000, requests);
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warn("Warm-up failed: {}", e.getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() throws IOException, InterruptedException {
+        final HttpServer planet = startPlanetStub();
+        final String planetUrl = "http://127.0.0.1:" + planet.getAddress().getPort();
+
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("PLANET_API_KEY", "warmup");
+        properties.put("PLANET_API_URL", planetUrl);
+        properties.put("PLANET_TILES_URL", planetUrl);
+        properties.put("STARTUP_WARMUP", false);
+        properties.put("STARTUP_TRAINING_RUN", false);
+        properties.put("TILE_STORE_DIR", "");
+        properties.put("TILE_PEERS", "");
+        properties.put("CACHE_SNAPSHOT_FILE", "");
+        properties.put("PREFETCH_CONCURRENCY", 0);
+        properties.put("spring.jmx.enabled", false);
+        properties.put("management.metrics.use-global-registry", false);
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .registerShutdownHook(false)
+                // Ahead of this instance's own environment, so that the stub is used and nothing is shared
+                .initializers(warmup -> warmup.getEnvironment().getPropertySources()
+                        .addFirst(new MapPropertySource("warmup", properties)))
+                .run()) {
+            final String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+            final HttpClient http = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+
+            // Distinct tiles, scenes and search cells, so that every request reaches the stub
+            for (int i = 0; i < requests; i++) {
+                send(http, String.format("%s/tiles/%s/12/%d/%d.png", baseUrl, SCENE_ID, 700 + i % 64, 1600 + i / 64));
+                if (i % 4 == 0) {
+                    send(http, String.format("%s/scenes/%s-%d", baseUrl, SCENE_ID, i));
+                    send(http, String.format("%s/scenes?x=%.2f&y=30.5", baseUrl, -114.0 + i * 0.01));
+                }
+            }
+        }
+        finally {
+            planet.stop(0);
+        }
+    }
+
+    private static void send(HttpClient http, String url) throws IOException, InterruptedException {
+        final HttpResponse<Void> response = http.send(HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT).build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            logger.debug("Warm-up request {} answered HTTP {}", url, response.statusCode());
+        }
+    }
+
+    private static HttpServer startPlanetStub() throws IOException {
+        final byte[] scene;
+        try (InputStream in = Warmup.class.getResourceAsStream("/warmup/scene.json")) {
+            scene = in.readAllBytes();
+        }
+        final byte[] search = ("{\"type\": \"FeatureCollection\", \"features\": [" + new String(scene, StandardCharsets.UTF_8)
+                + ", " + new String(scene, StandardCharsets.UTF_8) + "]}").getBytes(StandardCharsets.UTF_8);
+        final byte[] tile = createTile();
+
+        // Otherwise each response waits out a delayed ACK between its headers and body
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/v1/Landsat8L1G/", exchange -> respond(exchange, "image/png", tile));
+        server.createContext("/data/v1/item-types/", exchange -> respond(exchange, "application/json", scene));
+        server.createContext("/data/v1/quick-search", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, "application/json", search);
+        });
+        server.start();
+        return server;
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static byte[] createTile() throws IOException {
+        final BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.GRAY);
+        graphics.fillRect(0, 0, 256, 192);
+        graphics.dispose();
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,188 @@
+package landsatviewer.planet;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stops sending tile requests to Planet while most recent ones fail, so
+ * callers fall back at once instead of waiting out timeouts.  After a
+ * while one probe request is let through; if it succeeds the breaker
+ * closes, otherwise it stays open for another period.  Only the probe
+ * decides, so requests let through before the breaker opened cannot
+ * close it when they complete late.
+ */
+@Component
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    /**
+     * Returned by {@link #tryAcquire} when a request may not be sent.
+     */
+    static final long REJECTED = -1;
+
+    // Requests let through while closed share this permit; probes are numbered from 1
+    private static final long CLOSED_PERMIT = 0;
+
+    private final double failureRate;
+    private final boolean[] window;
+    private final long openDuration;
+    private final LongSupplier clock;
+
+    private volatile State state = State.CLOSED;
+    private int position;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private long probe;
+    private long probes;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    @Autowired
+    public CircuitBreaker(@Value("${TILE_BREAKER_FAILURE_RATE:0.5}") double failureRate,
+                          @Value("${TILE_BREAKER_WINDOW:20}") int window,
+                          @Value("${TILE_BREAKER_OPEN_DURATION:10}") long openSeconds) {
+        this(failureRate, window, Duration.ofSeconds(openSeconds), System::nanoTime);
+    }
+
+    CircuitBreaker(double failureRate, int window, Duration openDuration, LongSupplier clock) {
+        if (failureRate > 0) {
+            logger.info("Tile circuit breaker enabled (failure_rate={}, window={}, open_duration={})", failureRate, window, openDuration);
+        }
+
+        this.failureRate = failureRate;
+        this.window = new boolean[Math.max(window, 1)];
+        this.openDuration = openDuration.toNanos();
+        this.clock = clock;
+    }
+
+    public static CircuitBreaker disabled() {
+        return new CircuitBreaker(0, 1, Duration.ZERO, System::nanoTime);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * A permit to send a request, or {@link #REJECTED}.  Every permitted request must be followed by {@link #record}
+     * with its permit.
+     */
+    long tryAcquire() {
+        if (state == State.CLOSED) {
+            return CLOSED_PERMIT;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN && clock.getAsLong() - openedAt >= openDuration) {
+                state = State.HALF_OPEN;
+                probe = CLOSED_PERMIT;
+            }
+            if (state == State.HALF_OPEN && probe == CLOSED_PERMIT) {
+                probe = ++probes;
+                return probe;
+            }
+            if (state == State.CLOSED) {
+                return CLOSED_PERMIT;
+            }
+        }
+
+        rejected.incrementAndGet();
+        return REJECTED;
+    }
+
+    /**
+     * Records the outcome of a request sent with {@code permit}; {@code e} is null if it succeeded.
+     */
+    void record(long permit, Throwable e) {
+        if (failureRate <= 0) {
+            return;
+        }
+
+        final boolean failed = e != null && isUpstreamFailure(e);
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                if (permit == CLOSED_PERMIT || permit != probe) {
+                    return;
+                }
+                if (failed) {
+                    open();
+                }
+                else {
+                    logger.info("Planet tile requests recovered; closing circuit breaker");
+                    state = State.CLOSED;
+                    calls = 0;
+                    failures = 0;
+                    position = 0;
+                }
+                probe = CLOSED_PERMIT;
+                return;
+            }
+            if (state == State.OPEN) {
+                return;
+            }
+
+            if (calls == window.length) {
+                if (window[position]) {
+                    failures--;
+                }
+            }
+            else {
+                calls++;
+            }
+            window[position] = failed;
+            if (failed) {
+                failures++;
+            }
+            position = (position + 1) % window.length;
+
+            if (calls == window.length && failures >= failureRate * calls) {
+                logger.warn("{} of the last {} tile requests to Planet failed; opening circuit breaker", failures, calls);
+                open();
+            }
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        opened.incrementAndGet();
+    }
+
+    // Missing tiles, client errors and calls shed locally say nothing about Planet's health
+    static boolean isUpstreamFailure(Throwable e) {
+        if (e instanceof Client.NotFound || e instanceof Client.Overloaded) {
+            return false;
+        }
+        if (e instanceof Client.Error) {
+            final int status = ((Client.Error) e).getStatus();
+            return status == 0 || status == 429 || status >= 500;
+        }
+        return true;
+    }
+
+    Map<String, Long> stats() {
+        if (failureRate <= 0) {
+            return Map.of();
+        }
+        return Map.of(
+                "tile_breaker_state", (long) state.ordinal(),
+                "tile_breaker_opened", opened.get(),
+                "tile_breaker_rejected", rejected.get());
+    }
+}
@@ -2,7 +2,25 @@ package landsatviewer.planet;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,39 +29,340 @@ import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import landsatviewer.planet.UpstreamMetrics.Operation;
+
 @Component
 public class Client {
     private static final Logger logger = LoggerFactory.getLogger(Client.class);
 
-    private static final String TILE_URL = "https://tiles.planet.com/data/v1/Landsat8L1G/{sceneId}/{z}/{x}/{y}.png";
-    private static final String SCENE_URL = "https://api.planet.com/data/v1/item-types/Landsat8L1G/items/{sceneId}";
-    private static final String SEARCH_URL = "https://api.planet.com/data/v1/quick-search";
+    private static final String API_URL = "https://api.planet.com";
+    private static final String TILES_URL = "https://tiles.planet.com";
+    private static final String TILE_PATH = "/data/v1/Landsat8L1G/{sceneId}/{z}/{x}/{y}.png";
+    private static final String SCENE_PATH = "/data/v1/item-types/Landsat8L1G/items/{sceneId}";
+    private static final String SEARCH_PATH = "/data/v1/quick-search";
+    private static final int SEARCH_MAX_FEATURES = 1000;
 
     private final RestTemplate restTemplate;
+    private final HttpClient httpClient;
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private final String authorization;
+    private final String tileUrl;
+    private final String sceneUrl;
+    private final String searchUrl;
+    private final boolean streaming;
+    private final UpstreamExecutor executor;
+    private final Duration requestTimeout;
+    private final UpstreamMetrics metrics;
+    private final HedgePolicy hedging;
+    private final CircuitBreaker breaker;
+    private final ConcurrencyLimiter limiter;
+    private final int searchMaxFeatures;
+
+    private final SingleFlight<List<Object>, Tile> tileFlights = new SingleFlight<>();
+    private final SingleFlight<String, Scene> sceneFlights = new SingleFlight<>();
+    private final SingleFlight<List<Object>, SceneDocument> sceneDocumentFlights = new SingleFlight<>();
+    private final SingleFlight<List<Object>, SceneCollection> searchFlights = new SingleFlight<>();
 
     @Autowired
-    public Client(@Value("${PLANET_API_KEY}") String apiKey) {
-        this.restTemplate = new RestTemplateBuilder()
-                .basicAuthorization(apiKey, "")
-                .build();
+    public Client(@Value("${PLANET_API_KEY}") String apiKey,
+                  @Value("${PLANET_API_URL:" + API_URL + "}") String apiUrl,
+                  @Value("${PLANET_TILES_URL:" + TILES_URL + "}") String tilesUrl,
+                  @Value("${TILE_STREAMING:true}") boolean streaming,
+                  @Value("${SEARCH_MAX_FEATURES:1000}") int searchMaxFeatures,
+                  UpstreamExecutor executor,
+                  PlanetTransport transport,
+                  UpstreamMetrics metrics,
+                  HedgePolicy hedging,
+                  CircuitBreaker breaker,
+                  ConcurrencyLimiter limiter) {
+        this(new RestTemplateBuilder().basicAuthorization(apiKey, "").requestFactory(transport::getRequestFactory).build(),
+                transport.getHttpClient(), apiKey, apiUrl, tilesUrl, streaming, executor, transport.getReadTimeout(), metrics,
+                hedging, breaker, limiter, searchMaxFeatures);
     }
 
     public Client(RestTemplate restTemplate) {
+        this(restTemplate, true);
+    }
+
+    Client(RestTemplate restTemplate, boolean streaming) {
+        this(restTemplate, HttpClient.newHttpClient(), "", API_URL, TILES_URL, streaming, UpstreamExecutor.async());
+    }
+
+    Client(RestTemplate restTemplate, HttpClient httpClient, String apiKey, String apiUrl, String tilesUrl,
+           boolean streaming, UpstreamExecutor executor) {
+        this(restTemplate, httpClient, apiKey, apiUrl, tilesUrl, streaming, executor, null, new UpstreamMetrics(new SimpleMeterRegistry()),
+                HedgePolicy.disabled(), CircuitBreaker.disabled(), ConcurrencyLimiter.unlimited(), SEARCH_MAX_FEATURES);
+    }
+
+    Client(RestTemplate restTemplate, HttpClient httpClient, String apiKey, String apiUrl, String tilesUrl,
+           boolean streaming, UpstreamExecutor executor, Duration requestTimeout, UpstreamMetrics metrics,
+           HedgePolicy hedging, CircuitBreaker breaker, ConcurrencyLimiter limiter, int searchMaxFeatures) {
         this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((apiKey + ":").getBytes(StandardCharsets.UTF_8));
+        this.tileUrl = tilesUrl + TILE_PATH;
+        this.sceneUrl = apiUrl + SCENE_PATH;
+        this.searchUrl = apiUrl + SEARCH_PATH;
+        this.streaming = streaming;
+        this.executor = executor;
+        this.requestTimeout = requestTimeout;
+        this.metrics = metrics;
+        this.hedging = hedging;
+        this.breaker = breaker;
+        this.limiter = limiter;
+        this.searchMaxFeatures = searchMaxFeatures;
+    }
+
+    public TileStream fetchTile(String sceneId, int x, int y, int z) throws Error {
+        final List<Object> key = List.of(sceneId, z, x, y);
+
+        if (!streaming) {
+            final Tile tile = tileFlights.execute(key, () -> guardTile(() -> requestTile(sceneId, x, y, z)));
+            return TileStream.buffered(tile.data, tile.etag);
+        }
+
+        final CompletableFuture<Tile> pending = new CompletableFuture<>();
+        final CompletableFuture<Tile> existing = tileFlights.lead(key, pending);
+        if (existing != null) {
+            final Tile tile = SingleFlight.await(existing);
+            return TileStream.buffered(tile.data, tile.etag);
+        }
+
+        final TileStream stream;
+        try {
+            stream = guardTile(() -> openTile(sceneId, x, y, z));
+        }
+        catch (Error | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        }
+
+        return settleWhenRead(stream, pending);
+    }
+
+    public CompletableFuture<TileStream> fetchTileAsync(String sceneId, int x, int y, int z) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> fetchTile(sceneId, x, y, z));
+        }
+
+        final CompletableFuture<Tile> pending = new CompletableFuture<>();
+        final CompletableFuture<Tile> existing = tileFlights.lead(List.of(sceneId, z, x, y), pending);
+        if (existing != null) {
+            return existing.thenApply(tile -> TileStream.buffered(tile.data, tile.etag));
+        }
+
+        final CompletableFuture<TileStream> response;
+        try {
+            response = guardTileAsync(() -> hedging.run(() -> sendTile(sceneId, x, y, z, streaming)));
+        }
+        catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            return CompletableFuture.failedFuture(e);
+        }
+
+        return response
+                .whenComplete((stream, e) -> {
+                    if (e != null) {
+                        pending.completeExceptionally(unwrap(e));
+                    }
+                })
+                .thenApply(stream -> settleWhenRead(stream, pending));
+    }
+
+    /**
+     * Fetches a whole tile without streaming it, for callers that need the bytes rather than a response body.
+     */
+    public CompletableFuture<byte[]> fetchTileDataAsync(String sceneId, int x, int y, int z) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> {
+                try (TileStream stream = fetchTile(sceneId, x, y, z)) {
+                    return stream.readAllBytes();
+                }
+                catch (IOException e) {
+                    throw new Error(e);
+                }
+            });
+        }
+
+        return tileFlights.executeAsync(List.of(sceneId, z, x, y), () -> guardTileAsync(() -> sendTile(sceneId, x, y, z, false))
+                .thenApply(stream -> new Tile(stream.body().join(), stream.getETag())))
+                .thenApply(tile -> tile.data);
+    }
+
+    public Scene getScene(String sceneId) throws Error {
+        return sceneFlights.execute(sceneId, () -> requestScene(sceneId));
+    }
+
+    public CompletableFuture<Scene> getSceneAsync(String sceneId) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> getScene(sceneId));
+        }
+        return sceneFlights.executeAsync(sceneId, () -> sendScene(sceneId));
+    }
+
+    /**
+     * Fetches a scene, or revalidates a previously fetched one, in which
+     * case the same document is returned if Planet reports it unchanged.
+     */
+    public SceneDocument getSceneDocument(String sceneId, SceneDocument previous) throws Error {
+        return sceneDocumentFlights.execute(Arrays.asList(sceneId, previous), () -> requestSceneDocument(sceneId, previous));
+    }
+
+    public CompletableFuture<SceneDocument> getSceneDocumentAsync(String sceneId, SceneDocument previous) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> getSceneDocument(sceneId, previous));
+        }
+        return sceneDocumentFlights.executeAsync(Arrays.asList(sceneId, previous), () -> sendSceneDocument(sceneId, previous));
     }
 
-    public InputStream fetchTile(String sceneId, int x, int y, int z) throws Error {
+    public SceneCollection search(double x, double y, int daysSince) throws Error {
+        return searchFlights.execute(List.of(x, y, daysSince), () -> requestSearch(new SearchCriteria(x, y, daysSince)));
+    }
+
+    public SceneCollection search(SearchCriteria criteria) throws Error {
+        return searchFlights.execute(searchKey(criteria), () -> requestSearch(criteria));
+    }
+
+    public CompletableFuture<SceneCollection> searchAsync(double x, double y, int daysSince) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> search(x, y, daysSince));
+        }
+        return searchFlights.executeAsync(List.of(x, y, daysSince), () -> sendSearch(new SearchCriteria(x, y, daysSince)));
+    }
+
+    public CompletableFuture<SceneCollection> searchAsync(SearchCriteria criteria) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> search(criteria));
+        }
+        return searchFlights.executeAsync(searchKey(criteria), () -> sendSearch(criteria));
+    }
+
+    /**
+     * Starts a search whose features are read as they arrive; see {@link SceneStream}.  Streamed searches are not
+     * coalesced, since a response body can only be read once.
+     */
+    public SceneStream openSearch(double x, double y, int daysSince) throws Error {
+        return openSearch(new SearchCriteria(x, y, daysSince));
+    }
+
+    public CompletableFuture<SceneStream> openSearchAsync(double x, double y, int daysSince) {
+        if (executor.isBlocking()) {
+            return executor.submit(() -> openSearch(x, y, daysSince));
+        }
+        return sendSearchStream(new SearchCriteria(x, y, daysSince));
+    }
+
+    public Map<String, Long> stats() {
+        final Map<String, Long> stats = new TreeMap<>(executor.stats());
+        stats.put("tile_coalesced", tileFlights.coalesced());
+        stats.put("scene_coalesced", sceneFlights.coalesced() + sceneDocumentFlights.coalesced());
+        stats.put("search_coalesced", searchFlights.coalesced());
+        stats.putAll(hedging.stats());
+        stats.putAll(breaker.stats());
+        stats.putAll(limiter.stats());
+        return stats;
+    }
+
+    private <T> T guardTile(SingleFlight.Call<T> call) throws Error {
+        final long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            throw new Unavailable();
+        }
+
+        try {
+            final T result = call.call();
+            breaker.record(permit, null);
+            return result;
+        }
+        catch (Error | RuntimeException e) {
+            breaker.record(permit, e);
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> guardTileAsync(Supplier<CompletableFuture<T>> call) {
+        final long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REJECTED) {
+            return CompletableFuture.failedFuture(new Unavailable());
+        }
+
+        final CompletableFuture<T> response;
+        try {
+            response = call.get();
+        }
+        catch (RuntimeException e) {
+            breaker.record(permit, e);
+            throw e;
+        }
+        return response.whenComplete((value, e) -> breaker.record(permit, e != null ? unwrap(e) : null));
+    }
+
+    private static TileStream settleWhenRead(TileStream stream, CompletableFuture<Tile> pending) {
+        stream.body().whenComplete((data, e) -> {
+            if (e != null) {
+                pending.completeExceptionally(e);
+            }
+            else {
+                pending.complete(new Tile(data, stream.getETag()));
+            }
+        });
+        return stream;
+    }
+
+    private TileStream openTile(String sceneId, int x, int y, int z) throws Error {
+        logger.debug("Stream tile (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+
+        final URI uri = restTemplate.getUriTemplateHandler().expand(tileUrl, sceneId, z, x, y);
+
+        final ClientHttpResponse response;
+        try {
+            response = execute(Operation.TILE, restTemplate.getRequestFactory().createRequest(uri, HttpMethod.GET));
+        }
+        catch (IOException e) {
+            logger.error("Could not communicate with Planet API: {}", e.getMessage(), e);
+            throw new Error(e);
+        }
+
+        try {
+            final int status = response.getRawStatusCode();
+            if (status != 200) {
+                response.close();
+                logger.error("Tile request failed (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+                throw new Error(status);
+            }
+
+            final HttpHeaders headers = response.getHeaders();
+            return TileStream.live(response.getBody(), response, headers.getContentLength(), headers.getETag());
+        }
+        catch (IOException e) {
+            response.close();
+            logger.error("Tile request failed: {} (sceneId={}, x={}, y={}, z={})", e.getMessage(), sceneId, x, y, z, e);
+            throw new Error("could not get stream from response");
+        }
+    }
+
+    private Tile requestTile(String sceneId, int x, int y, int z) throws Error {
         logger.debug("Request tile (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
 
         final ResponseEntity<ByteArrayResource> response;
         try {
-            response = restTemplate.getForEntity(TILE_URL, ByteArrayResource.class, sceneId, z, x, y);
+            response = exchange(Operation.TILE, () -> restTemplate.getForEntity(tileUrl, ByteArrayResource.class, sceneId, z, x, y));
+        }
+        catch (HttpStatusCodeException e) {
+            logger.error("Tile request failed (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+            throw new Error(e.getRawStatusCode());
         }
         catch (RestClientException e) {
             logger.error("Could not communicate with Planet API: {}", e.getMessage(), e);
@@ -53,27 +372,23 @@ public class Client {
         final int status = response.getStatusCodeValue();
         if (status != 200) {
             logger.error("Tile request failed (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
-            throw new Error("Planet returned HTTP %s", status);
+            throw new Error(status);
         }
 
-        final InputStream stream;
-        try {
-            stream = response.getBody().getInputStream();
-        }
-        catch (IOException e) {
-            logger.error("Tile request failed: {} (sceneId={}, x={}, y={}, z={})", e.getMessage(), sceneId, x, y, z, e);
+        if (response.getBody() == null) {
+            logger.error("Tile request failed: empty response (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
             throw new Error("could not get stream from response");
         }
 
-        return stream;
+        return new Tile(response.getBody().getByteArray(), response.getHeaders().getETag());
     }
 
-    public Scene getScene(String sceneId) throws Error {
+    private Scene requestScene(String sceneId) throws Error {
         logger.debug("Request metadata for scene '{}'", sceneId);
 
         final ResponseEntity<Scene> response;
         try {
-            response = restTemplate.getForEntity(SCENE_URL, Scene.class, sceneId);
+            response = exchange(Operation.SCENE, () -> restTemplate.getForEntity(sceneUrl, Scene.class, sceneId));
         }
         catch (RestClientException e) {
             logger.error("Could not communicate with Planet API: {}", e.getMessage(), e);
@@ -86,21 +401,30 @@ public class Client {
                 throw new NotFound();
             }
             logger.error("Scene metadata request failed for '{}': Planet returned HTTP {}", sceneId, status);
-            throw new Error("Planet returned HTTP %s", status);
+            throw new Error(status);
         }
 
         return response.getBody();
     }
 
-    public SceneCollection search(double x, double y, int daysSince) throws Error {
-        final HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
+    private SceneDocument requestSceneDocument(String sceneId, SceneDocument previous) throws Error {
+        logger.debug("Request metadata for scene '{}' (revalidate={})", sceneId, previous != null);
 
-        final HttpEntity<SearchCriteria> entity = new HttpEntity<>(new SearchCriteria(x, y, daysSince), headers);
+        final HttpHeaders headers = new HttpHeaders();
+        if (previous != null && previous.etag != null) {
+            headers.set(HttpHeaders.IF_NONE_MATCH, previous.etag);
+        }
+        if (previous != null && previous.lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+        }
 
-        final ResponseEntity<SceneCollection> response;
+        final ResponseEntity<Scene> response;
         try {
-            response = restTemplate.postForEntity(SEARCH_URL, entity, SceneCollection.class);
+            response = exchange(Operation.SCENE,
+                    () -> restTemplate.exchange(sceneUrl, HttpMethod.GET, new HttpEntity<>(headers), Scene.class, sceneId));
+        }
+        catch (HttpClientErrorException.NotFound e) {
+            throw new NotFound();
         }
         catch (RestClientException e) {
             logger.error("Could not communicate with Planet API: {}", e.getMessage(), e);
@@ -108,25 +432,404 @@ public class Client {
         }
 
         final int status = response.getStatusCodeValue();
+        if (status == 304 && previous != null) {
+            return previous;
+        }
         if (status != 200) {
-            logger.error("Search failed: Planet returned HTTP {}", status);
-            throw new Error("Planet returned HTTP %s", status);
+            logger.error("Scene metadata request failed for '{}': Planet returned HTTP {}", sceneId, status);
+            throw new Error(status);
         }
 
-        return response.getBody();
+        return new SceneDocument(response.getBody(),
+                response.getHeaders().getETag(),
+                response.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+    }
+
+    // Criteria are only equal by the search they send
+    private static List<Object> searchKey(SearchCriteria criteria) {
+        return List.of(new String(criteria.toJson(), StandardCharsets.UTF_8));
+    }
+
+    private SceneCollection requestSearch(SearchCriteria criteria) throws Error {
+        try (SceneStream stream = openSearch(criteria)) {
+            return stream.read();
+        }
+        catch (IOException e) {
+            logger.error("Could not parse Planet API response: {}", e.getMessage(), e);
+            throw new Error(e);
+        }
+    }
+
+    private SceneStream openSearch(SearchCriteria criteria) throws Error {
+        final ClientHttpResponse response;
+        try {
+            final ClientHttpRequest request = restTemplate.getRequestFactory().createRequest(URI.create(searchUrl), HttpMethod.POST);
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            request.getBody().write(criteria.toJson());
+            response = execute(Operation.SEARCH, request);
+        }
+        catch (IOException e) {
+            logger.error("Could not communicate with Planet API: {}", e.getMessage(), e);
+            throw new Error(e);
+        }
+
+        try {
+            final int status = response.getRawStatusCode();
+            if (status != 200) {
+                response.close();
+                logger.error("Search failed: Planet returned HTTP {}", status);
+                throw new Error(status);
+            }
+            return new SceneStream(response.getBody(), response, this::sendSearchPage, searchMaxFeatures);
+        }
+        catch (IOException e) {
+            response.close();
+            logger.error("Search failed: {}", e.getMessage(), e);
+            throw new Error("could not get stream from response");
+        }
+    }
+
+    private CompletableFuture<TileStream> sendTile(String sceneId, int x, int y, int z, boolean live) {
+        logger.debug("Request tile asynchronously (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+
+        final HttpRequest request = newRequest(restTemplate.getUriTemplateHandler().expand(tileUrl, sceneId, z, x, y))
+                .GET()
+                .build();
+
+        if (!live) {
+            return send(Operation.TILE, request, HttpResponse.BodyHandlers.ofByteArray())
+                    .thenApply(response -> {
+                        if (response.statusCode() != 200) {
+                            logger.error("Tile request failed (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+                            throw new CompletionException(new Error(response.statusCode()));
+                        }
+                        return TileStream.buffered(response.body(), response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+                    });
+        }
+
+        return send(Operation.TILE, request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    final InputStream body = response.body();
+                    if (response.statusCode() != 200) {
+                        closeQuietly(body);
+                        logger.error("Tile request failed (sceneId={}, x={}, y={}, z={})", sceneId, x, y, z);
+                        throw new CompletionException(new Error(response.statusCode()));
+                    }
+                    return TileStream.live(body, null,
+                            response.headers().firstValueAsLong(HttpHeaders.CONTENT_LENGTH).orElse(-1),
+                            response.headers().firstValue(HttpHeaders.ETAG).orElse(null));
+                });
+    }
+
+    private CompletableFuture<Scene> sendScene(String sceneId) {
+        logger.debug("Request metadata for scene '{}' asynchronously", sceneId);
+
+        final HttpRequest request = newRequest(restTemplate.getUriTemplateHandler().expand(sceneUrl, sceneId))
+                .GET()
+                .build();
+
+        return send(Operation.SCENE, request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    final int status = response.statusCode();
+                    if (status == 404) {
+                        throw new CompletionException(new NotFound());
+                    }
+                    if (status != 200) {
+                        logger.error("Scene metadata request failed for '{}': Planet returned HTTP {}", sceneId, status);
+                        throw new CompletionException(new Error(status));
+                    }
+                    return decode(response.body(), Scene.class);
+                });
+    }
+
+    private CompletableFuture<SceneDocument> sendSceneDocument(String sceneId, SceneDocument previous) {
+        logger.debug("Request metadata for scene '{}' asynchronously (revalidate={})", sceneId, previous != null);
+
+        final HttpRequest.Builder builder = newRequest(restTemplate.getUriTemplateHandler().expand(sceneUrl, sceneId)).GET();
+        if (previous != null && previous.etag != null) {
+            builder.header(HttpHeaders.IF_NONE_MATCH, previous.etag);
+        }
+        if (previous != null && previous.lastModified != null) {
+            builder.header(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified);
+        }
+
+        return send(Operation.SCENE, builder.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    final int status = response.statusCode();
+                    if (status == 304 && previous != null) {
+                        return previous;
+                    }
+                    if (status == 404) {
+                        throw new CompletionException(new NotFound());
+                    }
+                    if (status != 200) {
+                        logger.error("Scene metadata request failed for '{}': Planet returned HTTP {}", sceneId, status);
+                        throw new CompletionException(new Error(status));
+                    }
+                    return new SceneDocument(decode(response.body(), Scene.class),
+                            response.headers().firstValue(HttpHeaders.ETAG).orElse(null),
+                            response.headers().firstValue(HttpHeaders.LAST_MODIFIED).orElse(null));
+                });
+    }
+
+    private CompletableFuture<SceneCollection> sendSearch(SearchCriteria criteria) {
+        final byte[] body = criteria.toJson();
+        final HttpRequest request = newRequest(URI.create(searchUrl))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+
+        final SceneCollection scenes = new SceneCollection();
+        scenes.features = new ArrayList<>();
+        return send(Operation.SEARCH, request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenCompose(response -> collectSearchPage(response, scenes));
+    }
+
+    private CompletableFuture<SceneCollection> collectSearchPage(HttpResponse<byte[]> response, SceneCollection scenes) {
+        if (response.statusCode() != 200) {
+            logger.error("Search failed: Planet returned HTTP {}", response.statusCode());
+            throw new CompletionException(new Error(response.statusCode()));
+        }
+
+        final String[] next = new String[1];
+        final int count;
+        try (JsonParser parser = SceneParser.JSON.createParser(response.body())) {
+            count = SceneParser.bindPage(parser, scenes.features, searchMaxFeatures - scenes.features.size(), url -> next[0] = url);
+        }
+        catch (IOException e) {
+            logger.error("Could not parse Planet API response: {}", e.getMessage(), e);
+            throw new CompletionException(new Error(e));
+        }
+
+        if (next[0] == null || count == 0 || scenes.features.size() >= searchMaxFeatures) {
+            return CompletableFuture.completedFuture(scenes);
+        }
+        return newSearchPageRequest(next[0])
+                .thenCompose(request -> send(Operation.SEARCH, request, HttpResponse.BodyHandlers.ofByteArray()))
+                .thenCompose(page -> collectSearchPage(page, scenes));
+    }
+
+    private CompletableFuture<SceneStream> sendSearchPage(String url) {
+        return newSearchPageRequest(url)
+                .thenCompose(request -> send(Operation.SEARCH, request, HttpResponse.BodyHandlers.ofInputStream()))
+                .thenApply(response -> {
+                    final InputStream body = response.body();
+                    if (response.statusCode() != 200) {
+                        closeQuietly(body);
+                        logger.error("Search page failed: Planet returned HTTP {}", response.statusCode());
+                        throw new CompletionException(new Error(response.statusCode()));
+                    }
+                    return new SceneStream(body, null);
+                });
+    }
+
+    // Links come from the response, so they are only followed on Planet's own host, where the credentials are meant to go
+    private CompletableFuture<HttpRequest> newSearchPageRequest(String url) {
+        final URI uri;
+        final URI search = URI.create(searchUrl);
+        try {
+            uri = search.resolve(url);
+        }
+        catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new Error("malformed search page link"));
+        }
+        if (!search.getScheme().equals(uri.getScheme()) || !search.getAuthority().equals(uri.getAuthority())) {
+            logger.error("Search page link points away from Planet: {}", url);
+            return CompletableFuture.failedFuture(new Error("unexpected search page link"));
+        }
+        return CompletableFuture.completedFuture(newRequest(uri).GET().build());
+    }
+
+    private CompletableFuture<SceneStream> sendSearchStream(SearchCriteria criteria) {
+        final HttpRequest request = newRequest(URI.create(searchUrl))
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(criteria.toJson()))
+                .build();
+
+        return send(Operation.SEARCH, request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApply(response -> {
+                    final InputStream body = response.body();
+                    if (response.statusCode() != 200) {
+                        closeQuietly(body);
+                        logger.error("Search failed: Planet returned HTTP {}", response.statusCode());
+                        throw new CompletionException(new Error(response.statusCode()));
+                    }
+                    return new SceneStream(body, null, this::sendSearchPage, searchMaxFeatures);
+                });
+    }
+
+    private HttpRequest.Builder newRequest(URI uri) {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(uri).header(HttpHeaders.AUTHORIZATION, authorization);
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+        return builder;
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(Operation operation, HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+        if (!limiter.tryAcquire(operation)) {
+            return CompletableFuture.failedFuture(new Overloaded(operation));
+        }
+
+        final long start = metrics.start(operation);
+        final CompletableFuture<HttpResponse<T>> response;
+        try {
+            response = httpClient.sendAsync(request, handler);
+        }
+        catch (RuntimeException e) {
+            limiter.release(operation, start, 0);
+            metrics.failed(operation, start, e);
+            throw e;
+        }
+
+        return response
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        limiter.release(operation, start, 0);
+                        metrics.failed(operation, start, unwrap(e));
+                    }
+                    else {
+                        limiter.release(operation, start, result.statusCode());
+                        metrics.completed(operation, start, result.statusCode());
+                    }
+                })
+                .exceptionally(e -> {
+                    final Throwable cause = unwrap(e);
+                    logger.error("Could not communicate with Planet API: {}", cause.getMessage(), cause);
+                    throw new CompletionException(new Error(cause));
+                });
+    }
+
+    private <T> ResponseEntity<T> exchange(Operation operation, Supplier<ResponseEntity<T>> call) throws Overloaded {
+        if (!limiter.tryAcquire(operation)) {
+            throw new Overloaded(operation);
+        }
+
+        final long start = metrics.start(operation);
+        try {
+            final ResponseEntity<T> response = call.get();
+            limiter.release(operation, start, response.getStatusCodeValue());
+            metrics.completed(operation, start, response.getStatusCodeValue());
+            return response;
+        }
+        catch (HttpStatusCodeException e) {
+            limiter.release(operation, start, e.getRawStatusCode());
+            metrics.completed(operation, start, e.getRawStatusCode());
+            throw e;
+        }
+        catch (RuntimeException e) {
+            limiter.release(operation, start, 0);
+            metrics.failed(operation, start, e);
+            throw e;
+        }
+    }
+
+    private ClientHttpResponse execute(Operation operation, ClientHttpRequest request) throws IOException, Overloaded {
+        if (!limiter.tryAcquire(operation)) {
+            throw new Overloaded(operation);
+        }
+
+        final long start = metrics.start(operation);
+        final ClientHttpResponse response;
+        try {
+            response = request.execute();
+        }
+        catch (IOException | RuntimeException e) {
+            limiter.release(operation, start, 0);
+            metrics.failed(operation, start, e);
+            throw e;
+        }
+
+        try {
+            final int status = response.getRawStatusCode();
+            limiter.release(operation, start, status);
+            metrics.completed(operation, start, status);
+            return response;
+        }
+        catch (IOException e) {
+            limiter.release(operation, start, 0);
+            metrics.failed(operation, start, e);
+            response.close();
+            throw e;
+        }
+    }
+
+    private <T> T decode(byte[] body, Class<T> type) {
+        try {
+            return mapper.readValue(body, type);
+        }
+        catch (IOException e) {
+            logger.error("Could not parse Planet API response: {}", e.getMessage(), e);
+            throw new CompletionException(new Error(e));
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        }
+        catch (IOException e) {
+            logger.debug("Could not close upstream stream: {}", e.getMessage());
+        }
+    }
+
+    static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static class Tile {
+        final byte[] data;
+        final String etag;
+
+        Tile(byte[] data, String etag) {
+            this.data = data;
+            this.etag = etag;
+        }
     }
 
     public static class Error extends Exception {
+        private final int status;
+
         public Error(String message) {
             super(message);
+            this.status = 0;
         }
 
         Error(String message, Object... args) {
             super(String.format(message, args));
+            this.status = 0;
         }
 
         Error(Throwable e) {
             super(e);
+            this.status = 0;
+        }
+
+        Error(int status) {
+            super(String.format("Planet returned HTTP %s", status));
+            this.status = status;
+        }
+
+        /**
+         * The status Planet answered with, or 0 if the request failed without a response.
+         */
+        public int getStatus() {
+            return status;
+        }
+    }
+
+    /**
+     * Refused without calling Planet because too many calls for the same operation are in flight.
+     */
+    public static class Overloaded extends Error {
+        Overloaded(Operation operation) {
+            super("too many %s requests in flight to Planet", operation.tag);
+        }
+    }
+
+    public static class Unavailable extends Error {
+        Unavailable() {
+            super("Planet is unavailable");
         }
     }
 
@@ -0,0 +1,146 @@
+package landsatviewer.planet;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.UpstreamMetrics.Operation;
+
+/**
+ * Separate, adaptive limits on concurrent calls to Planet for tiles, scene
+ * lookups and searches, so a burst of one cannot starve the others.  Each
+ * limit grows by one while calls complete quickly and the limit is in use,
+ * and shrinks by a tenth when a call fails, is throttled, or takes much
+ * longer than the average (AIMD).  Calls over the limit are refused rather
+ * than queued.
+ */
+@Component
+public class ConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ConcurrencyLimiter.class);
+
+    private static final double BACKOFF = 0.9;
+    private static final double SMOOTHING = 0.02;
+
+    private final Limit[] limits = new Limit[Operation.values().length];
+
+    @Autowired
+    public ConcurrencyLimiter(@Value("${CONCURRENCY_LIMIT:true}") boolean enabled,
+                              @Value("${CONCURRENCY_LIMIT_INITIAL:20}") int initial,
+                              @Value("${CONCURRENCY_LIMIT_MIN:4}") int min,
+                              @Value("${CONCURRENCY_LIMIT_TILES:200}") int maxTiles,
+                              @Value("${CONCURRENCY_LIMIT_SCENES:50}") int maxScenes,
+                              @Value("${CONCURRENCY_LIMIT_SEARCHES:50}") int maxSearches,
+                              @Value("${CONCURRENCY_LIMIT_TOLERANCE:2.0}") double tolerance) {
+        this(enabled ? Map.of(Operation.TILE, maxTiles, Operation.SCENE, maxScenes, Operation.SEARCH, maxSearches) : Map.of(),
+                initial, min, tolerance);
+    }
+
+    ConcurrencyLimiter(Map<Operation, Integer> max, int initial, int min, double tolerance) {
+        if (!max.isEmpty()) {
+            logger.info("Upstream concurrency limits enabled (initial={}, min={}, max={}, tolerance={})", initial, min, max, tolerance);
+        }
+
+        for (Map.Entry<Operation, Integer> entry : max.entrySet()) {
+            final int ceiling = Math.max(entry.getValue(), min);
+            limits[entry.getKey().ordinal()] = new Limit(Math.min(Math.max(initial, min), ceiling), min, ceiling, tolerance);
+        }
+    }
+
+    public static ConcurrencyLimiter unlimited() {
+        return new ConcurrencyLimiter(Map.of(), 0, 0, 0);
+    }
+
+    /**
+     * Takes a slot for a call, or returns false if the operation is at its limit.  Every slot taken must be given
+     * back with {@link #release}.
+     */
+    boolean tryAcquire(Operation operation) {
+        final Limit limit = limits[operation.ordinal()];
+        return limit == null || limit.tryAcquire();
+    }
+
+    /**
+     * Gives back a slot, given the {@link System#nanoTime} the call started at and the status Planet answered with,
+     * 0 if none.
+     */
+    void release(Operation operation, long start, int status) {
+        final Limit limit = limits[operation.ordinal()];
+        if (limit != null) {
+            limit.release(System.nanoTime() - start, status == 0 || status == 429 || status >= 500);
+        }
+    }
+
+    int getLimit(Operation operation) {
+        final Limit limit = limits[operation.ordinal()];
+        return limit != null ? (int) limit.limit : Integer.MAX_VALUE;
+    }
+
+    Map<String, Long> stats() {
+        final Map<String, Long> stats = new TreeMap<>();
+        for (Operation operation : Operation.values()) {
+            final Limit limit = limits[operation.ordinal()];
+            if (limit != null) {
+                stats.put(operation.tag + "_limit", (long) limit.limit);
+                stats.put(operation.tag + "_in_flight", (long) limit.inFlight.get());
+                stats.put(operation.tag + "_shed", limit.shed.get());
+            }
+        }
+        return stats;
+    }
+
+    static class Limit {
+        private final int min;
+        private final int max;
+        private final double tolerance;
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong shed = new AtomicLong();
+        private volatile double limit;
+        private double average;
+
+        Limit(int initial, int min, int max, double tolerance) {
+            this.min = min;
+            this.max = max;
+            this.tolerance = tolerance;
+            this.limit = initial;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                final int current = inFlight.get();
+                if (current >= (int) limit) {
+                    shed.incrementAndGet();
+                    return false;
+                }
+                if (inFlight.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(long nanos, boolean dropped) {
+            final int current = inFlight.getAndDecrement();
+
+            synchronized (this) {
+                final boolean slow = average > 0 && nanos > tolerance * average;
+                if (dropped || slow) {
+                    limit = Math.max(min, limit * BACKOFF);
+                }
+                else if (current * 2 >= limit) {
+                    limit = Math.min(max, limit + 1);
+                }
+
+                if (!dropped) {
+                    average = average > 0 ? average + SMOOTHING * (nanos - average) : nanos;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package landsatviewer.planet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hedged tile requests: when the first attempt has not answered within a
+ * percentile of recent upstream latencies, a second one is sent and
+ * whichever answers first is used.  Hedges are limited to a fraction of
+ * requests, so a slow upstream is not sent twice the traffic.
+ */
+@Component
+public class HedgePolicy {
+    private static final Logger logger = LoggerFactory.getLogger(HedgePolicy.class);
+
+    private static final int SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 100;
+    private static final int RECOMPUTE_INTERVAL = 64;
+
+    // Budget is kept in thousandths of a hedge so that fractional budgets accrue without floating point
+    private static final long TOKEN = 1000;
+    private static final long MAX_TOKENS = 10 * TOKEN;
+
+    private final double percentile;
+    private final long budget;
+    private final long minDelay;
+
+    private final long[] samples = new long[SAMPLES];
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong tokens = new AtomicLong();
+    private volatile long delay = -1;
+
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    @Autowired
+    public HedgePolicy(@Value("${TILE_HEDGE_PERCENTILE:0.95}") double percentile,
+                       @Value("${TILE_HEDGE_BUDGET:0.05}") double budget,
+                       @Value("${TILE_HEDGE_MIN_DELAY:10}") long minDelayMillis) {
+        this(percentile, budget, Duration.ofMillis(minDelayMillis));
+    }
+
+    HedgePolicy(double percentile, double budget, Duration minDelay) {
+        if (percentile > 0) {
+            logger.info("Tile hedging enabled (percentile={}, budget={}, min_delay={})", percentile, budget, minDelay);
+        }
+
+        this.percentile = percentile;
+        this.budget = Math.round(budget * TOKEN);
+        this.minDelay = minDelay.toNanos();
+    }
+
+    public static HedgePolicy disabled() {
+        return new HedgePolicy(0, 0, Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return percentile > 0;
+    }
+
+    /**
+     * Runs an attempt, and a second one if the first is slow and the budget allows.  The losing attempt's result is
+     * closed when it arrives.
+     */
+    <T extends Closeable> CompletableFuture<T> run(Supplier<CompletableFuture<T>> attempt) {
+        if (!isEnabled()) {
+            return attempt.get();
+        }
+
+        tokens.getAndUpdate(available -> Math.min(available + budget, MAX_TOKENS));
+
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger outstanding = new AtomicInteger(1);
+        start(attempt, result, outstanding, false);
+
+        final long after = delay;
+        if (after >= 0) {
+            CompletableFuture.delayedExecutor(after, TimeUnit.NANOSECONDS).execute(() -> {
+                if (result.isDone() || !acquire()) {
+                    return;
+                }
+                outstanding.incrementAndGet();
+                hedged.incrementAndGet();
+                start(attempt, result, outstanding, true);
+            });
+        }
+        return result;
+    }
+
+    private <T extends Closeable> void start(Supplier<CompletableFuture<T>> attempt, CompletableFuture<T> result,
+                                             AtomicInteger outstanding, boolean hedge) {
+        final long start = System.nanoTime();
+        final CompletableFuture<T> response;
+        try {
+            response = attempt.get();
+        }
+        catch (RuntimeException e) {
+            if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+            return;
+        }
+
+        response.whenComplete((value, e) -> {
+            if (e != null) {
+                if (outstanding.decrementAndGet() == 0) {
+                    result.completeExceptionally(Client.unwrap(e));
+                }
+                return;
+            }
+
+            record(System.nanoTime() - start);
+            if (!result.complete(value)) {
+                closeQuietly(value);
+            }
+            else if (hedge) {
+                hedgeWins.incrementAndGet();
+            }
+        });
+    }
+
+    private boolean acquire() {
+        while (true) {
+            final long available = tokens.get();
+            if (available < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(available, available - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    void record(long nanos) {
+        final long count = recorded.getAndIncrement();
+        samples[(int) (count % SAMPLES)] = nanos;
+
+        if (count + 1 >= MIN_SAMPLES && (count + 1) % RECOMPUTE_INTERVAL == 0) {
+            final long[] sorted = Arrays.copyOf(samples, (int) Math.min(count + 1, SAMPLES));
+            Arrays.sort(sorted);
+            delay = Math.max(minDelay, sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)]);
+        }
+    }
+
+    /**
+     * How long an attempt may take before it is hedged, or -1 until enough latencies have been seen.
+     */
+    long delay() {
+        return delay;
+    }
+
+    Map<String, Long> stats() {
+        if (!isEnabled()) {
+            return Map.of();
+        }
+        return Map.of(
+                "tile_hedged", hedged.get(),
+                "tile_hedge_wins", hedgeWins.get(),
+                "tile_hedge_delay_ms", delay >= 0 ? TimeUnit.NANOSECONDS.toMillis(delay) : -1);
+    }
+
+    private static void closeQuietly(Closeable value) {
+        try {
+            value.close();
+        }
+        catch (IOException e) {
+            logger.debug("Could not close losing attempt: {}", e.getMessage());
+        }
+    }
+}
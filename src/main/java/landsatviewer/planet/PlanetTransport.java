@@ -0,0 +1,184 @@
+package landsatviewer.planet;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Connections to Planet.  {@code pooled} keeps per-host pools of
+ * keep-alive HTTP/1.1 connections (Apache HttpClient) for the blocking
+ * calls; {@code http2} sends them through the JDK client instead, which
+ * multiplexes requests over HTTP/2 where Planet offers it; {@code simple}
+ * is the JDK's URLConnection.
+ *
+ * Asynchronous calls always use the JDK client, configured to match: it
+ * speaks HTTP/2 only in {@code http2} mode, keeps idle connections for
+ * the idle timeout and at most the maximum number of them, and runs on
+ * its own threads.  It has no per-host limit; the concurrency limiter
+ * bounds asynchronous calls instead.
+ *
+ * The JDK reads its pool settings once, when the first of its clients
+ * in the JVM is built, and applies them to every client in the process,
+ * including the one that reaches peers.  They are set here only if
+ * nothing else has, for example a -Djdk.httpclient.* flag, and any bean
+ * that builds a JDK client at startup must depend on this one.
+ */
+@Component
+public class PlanetTransport {
+    private static final Logger logger = LoggerFactory.getLogger(PlanetTransport.class);
+
+    public enum Mode {
+        SIMPLE,
+        POOLED,
+        HTTP2,
+    }
+
+    private final Mode mode;
+    private final Duration readTimeout;
+    private final HttpClient httpClient;
+    private final ThreadPoolExecutor httpClientExecutor;
+    private final PoolingHttpClientConnectionManager pool;
+    private final CloseableHttpClient pooledClient;
+    private final ClientHttpRequestFactory requestFactory;
+
+    @Autowired
+    public PlanetTransport(@Value("${PLANET_TRANSPORT:pooled}") String mode,
+                           @Value("${PLANET_MAX_CONNECTIONS:200}") int maxConnections,
+                           @Value("${PLANET_MAX_CONNECTIONS_PER_HOST:100}") int maxConnectionsPerHost,
+                           @Value("${PLANET_CONNECT_TIMEOUT:5000}") long connectTimeoutMillis,
+                           @Value("${PLANET_READ_TIMEOUT:30000}") long readTimeoutMillis,
+                           @Value("${PLANET_IDLE_TIMEOUT:60}") long idleTimeoutSeconds) {
+        this(Mode.valueOf(mode.toUpperCase()), maxConnections, maxConnectionsPerHost,
+                Duration.ofMillis(connectTimeoutMillis), Duration.ofMillis(readTimeoutMillis), Duration.ofSeconds(idleTimeoutSeconds));
+    }
+
+    PlanetTransport(Mode mode, int maxConnections, int maxConnectionsPerHost, Duration connectTimeout, Duration readTimeout,
+                    Duration idleTimeout) {
+        logger.info("Planet transport: {} (max_connections={}, max_connections_per_host={}, connect_timeout={}, read_timeout={}, idle_timeout={})",
+                mode, maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout, idleTimeout);
+
+        this.mode = mode;
+        this.readTimeout = readTimeout;
+        setDefaultProperty("jdk.httpclient.connectionPoolSize", maxConnections);
+        setDefaultProperty("jdk.httpclient.keepalive.timeout", idleTimeout.getSeconds());
+        final AtomicInteger threads = new AtomicInteger();
+        this.httpClientExecutor = (ThreadPoolExecutor) Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "planet-http-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.httpClient = HttpClient.newBuilder()
+                .version(mode == Mode.HTTP2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .executor(httpClientExecutor)
+                .build();
+
+        switch (mode) {
+            case POOLED:
+                this.pool = new PoolingHttpClientConnectionManager(idleTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                this.pool.setMaxTotal(maxConnections);
+                this.pool.setDefaultMaxPerRoute(maxConnectionsPerHost);
+                this.pool.setValidateAfterInactivity(1000);
+                this.pooledClient = HttpClients.custom()
+                        .setConnectionManager(pool)
+                        .setDefaultRequestConfig(RequestConfig.custom()
+                                .setConnectTimeout((int) connectTimeout.toMillis())
+                                .setSocketTimeout((int) readTimeout.toMillis())
+                                .setConnectionRequestTimeout((int) connectTimeout.toMillis())
+                                .build())
+                        .evictIdleConnections(idleTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .evictExpiredConnections()
+                        .disableCookieManagement()
+                        .build();
+                this.requestFactory = new HttpComponentsClientHttpRequestFactory(pooledClient);
+                break;
+            case HTTP2:
+                this.pool = null;
+                this.pooledClient = null;
+                this.requestFactory = new JdkClientHttpRequestFactory(httpClient, readTimeout);
+                break;
+            default:
+                this.pool = null;
+                this.pooledClient = null;
+                final SimpleClientHttpRequestFactory simple = new SimpleClientHttpRequestFactory();
+                simple.setConnectTimeout((int) connectTimeout.toMillis());
+                simple.setReadTimeout((int) readTimeout.toMillis());
+                this.requestFactory = simple;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * How long an asynchronous request may wait for its response headers.
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public Map<String, Long> stats() {
+        final Map<String, Long> stats = new HashMap<>();
+        stats.put("async_threads", (long) httpClientExecutor.getPoolSize());
+        stats.put("async_active_threads", (long) httpClientExecutor.getActiveCount());
+        stats.put("async_tasks", httpClientExecutor.getCompletedTaskCount());
+        if (pool != null) {
+            final PoolStats total = pool.getTotalStats();
+            stats.put("leased", (long) total.getLeased());
+            stats.put("available", (long) total.getAvailable());
+            stats.put("pending", (long) total.getPending());
+            stats.put("max", (long) total.getMax());
+            stats.put("routes", (long) pool.getRoutes().size());
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        httpClientExecutor.shutdown();
+        if (pooledClient != null) {
+            try {
+                pooledClient.close();
+            }
+            catch (IOException e) {
+                logger.debug("Could not close connection pool: {}", e.getMessage());
+            }
+        }
+    }
+
+    private static void setDefaultProperty(String name, long value) {
+        if (System.getProperty(name) == null) {
+            System.setProperty(name, String.valueOf(value));
+        }
+    }
+}
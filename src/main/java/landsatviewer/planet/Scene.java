@@ -12,7 +12,15 @@ public class Scene {
     public String type;
 
     @JsonIgnoreProperties(ignoreUnknown = true)
-    static class Properties {
+    public static class Properties {
+        private static final String[] PADDED = new String[1000];
+
+        static {
+            for (int i = 0; i < PADDED.length; i++) {
+                PADDED[i] = new String(new char[]{(char) ('0' + i / 100), (char) ('0' + i / 10 % 10), (char) ('0' + i % 10)});
+            }
+        }
+
         public String acquiredOn;
         public int resolution;
         public float cloudCover;
@@ -28,12 +36,25 @@ public class Scene {
             this.acquiredOn = acquiredOn;
             this.cloudCover = cloudCover;
             this.resolution = resolution;
-            this.wrsPath = String.format("%03d", wrsPath);
-            this.wrsRow = String.format("%03d", wrsRow);
+            this.wrsPath = pad(wrsPath);
+            this.wrsRow = pad(wrsRow);
+        }
+
+        /**
+         * Zero-pads a WRS path or row to three digits, as {@code %03d} would.
+         */
+        static String pad(int value) {
+            if (value >= 0 && value < PADDED.length) {
+                return PADDED[value];
+            }
+            if (value < 0) {
+                return (value > -10 ? "-0" : "-") + (-(long) value);
+            }
+            return Integer.toString(value);
         }
     }
 
-    static class Geometry {
+    public static class Geometry {
         public String type;
         public double[][][] coordinates;
     }
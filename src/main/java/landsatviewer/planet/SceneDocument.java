@@ -0,0 +1,17 @@
+package landsatviewer.planet;
+
+/**
+ * A scene together with the validators Planet sent with it, so it can
+ * later be revalidated with a conditional request.
+ */
+public class SceneDocument {
+    public final Scene scene;
+    public final String etag;
+    public final String lastModified;
+
+    public SceneDocument(Scene scene, String etag, String lastModified) {
+        this.scene = scene;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+}
@@ -0,0 +1,594 @@
+package landsatviewer.planet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Reads Planet search responses token by token, keeping only the fields a
+ * {@link Scene} exposes and skipping everything else (links, permissions,
+ * the rest of the properties) without building it.
+ *
+ * Features are either bound to {@link Scene}s or copied straight to a
+ * generator as they are read, in the same shape Jackson writes a
+ * {@link SceneCollection}.  Each feature is read into one reusable
+ * buffer, and most coordinates are parsed without an intermediate String,
+ * so copying allocates little beyond the id and date strings and Jackson's
+ * number formatting.
+ */
+public final class SceneParser {
+    static final JsonFactory JSON = new JsonFactory();
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    private SceneParser() {
+    }
+
+    public static SceneCollection parse(byte[] json) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            return parse(parser);
+        }
+    }
+
+    public static SceneCollection parse(InputStream json) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            return parse(parser);
+        }
+    }
+
+    /**
+     * Copies a search response to {@code generator} one feature at a time.
+     */
+    public static void copy(InputStream json, JsonGenerator generator) throws IOException {
+        try (JsonParser parser = JSON.createParser(json)) {
+            copy(parser, generator);
+        }
+    }
+
+    static SceneCollection parse(JsonParser parser) throws IOException {
+        final SceneCollection scenes = new SceneCollection();
+        final Feature feature = new Feature();
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("features".equals(name) && token == JsonToken.START_ARRAY) {
+                scenes.features = new ArrayList<>();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    scenes.features.add(feature.read(parser) ? feature.toScene() : null);
+                }
+            }
+            else if ("features".equals(name)) {
+                expect(parser, token, JsonToken.VALUE_NULL);
+                scenes.features = null;
+            }
+            else if ("type".equals(name)) {
+                scenes.type = text(parser);
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return scenes;
+    }
+
+    static void copy(JsonParser parser, JsonGenerator generator) throws IOException {
+        final Feature feature = new Feature();
+        String type = "FeatureCollection";
+        boolean copied = false;
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        generator.writeStartObject();
+        generator.writeFieldName("features");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("features".equals(name) && !copied) {
+                copied = true;
+                if (token == JsonToken.START_ARRAY) {
+                    generator.writeStartArray();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (feature.read(parser)) {
+                            feature.write(generator);
+                        }
+                        else {
+                            generator.writeNull();
+                        }
+                    }
+                    generator.writeEndArray();
+                }
+                else {
+                    expect(parser, token, JsonToken.VALUE_NULL);
+                    generator.writeNull();
+                }
+            }
+            else if ("type".equals(name)) {
+                type = text(parser);
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        if (!copied) {
+            generator.writeNull();
+        }
+        generator.writeStringField("type", type);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Binds up to {@code limit} features of one page of a search response, returning how many were read.  The link
+     * to the next page is passed to {@code next} as soon as it is seen, so it can be fetched while this page is read.
+     */
+    static int bindPage(JsonParser parser, List<Scene> scenes, int limit, Consumer<String> next) throws IOException {
+        return readPage(parser, limit, next, feature -> scenes.add(feature != null ? feature.toScene() : null));
+    }
+
+    /**
+     * Copies up to {@code limit} features of one page to {@code generator}, as array elements or, with
+     * {@code lines}, as newline-terminated root values.
+     */
+    static int copyPage(JsonParser parser, JsonGenerator generator, boolean lines, int limit, Consumer<String> next)
+            throws IOException {
+        return readPage(parser, limit, next, feature -> {
+            if (feature != null) {
+                feature.write(generator);
+            }
+            else {
+                generator.writeNull();
+            }
+            if (lines) {
+                generator.writeRaw('\n');
+            }
+        });
+    }
+
+    private static int readPage(JsonParser parser, int limit, Consumer<String> next, FeatureSink sink) throws IOException {
+        final Feature feature = new Feature();
+        int count = 0;
+
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+        while (count < limit && parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if ("features".equals(name) && token == JsonToken.START_ARRAY) {
+                while (count < limit && parser.nextToken() != JsonToken.END_ARRAY) {
+                    sink.accept(feature.read(parser) ? feature : null);
+                    count++;
+                }
+            }
+            else if ("_links".equals(name) && token == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String link = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("_next".equals(link) && parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+                        next.accept(parser.getText());
+                    }
+                    else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            else {
+                parser.skipChildren();
+            }
+        }
+        return count;
+    }
+
+    private interface FeatureSink {
+        void accept(Feature feature) throws IOException;
+    }
+
+    private static String text(JsonParser parser) throws IOException {
+        final String value = parser.getValueAsString();
+        parser.skipChildren();
+        return value;
+    }
+
+    private static int intValue(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return parser.getIntValue();
+            case VALUE_STRING:
+                return Integer.parseInt(parser.getText().trim());
+            case VALUE_NULL:
+                return 0;
+            default:
+                throw new JsonParseException(parser, "expected a number, got " + parser.getCurrentToken());
+        }
+    }
+
+    private static float floatValue(JsonParser parser) throws IOException {
+        return parser.getCurrentToken() == JsonToken.VALUE_STRING
+                ? Float.parseFloat(parser.getText().trim())
+                : (float) doubleValue(parser);
+    }
+
+    private static double doubleValue(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_NUMBER_INT:
+                return parser.getNumberType() == JsonParser.NumberType.BIG_INTEGER
+                        ? parser.getDoubleValue()
+                        : (double) parser.getLongValue();
+            case VALUE_NUMBER_FLOAT:
+                final double value = parseDouble(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                return Double.isNaN(value) ? parser.getDoubleValue() : value;
+            case VALUE_STRING:
+                return Double.parseDouble(parser.getText().trim());
+            case VALUE_NULL:
+                return 0;
+            default:
+                throw new JsonParseException(parser, "expected a number, got " + parser.getCurrentToken());
+        }
+    }
+
+    /**
+     * Parses a decimal without going through a String when it has at most 15 significant digits and a power of
+     * ten no larger than 10^22: both are then exact doubles, so one multiplication or division rounds the same way
+     * {@link Double#parseDouble} does.  Returns NaN for anything else.
+     */
+    static double parseDouble(char[] text, int offset, int length) {
+        final int end = offset + length;
+        int i = offset;
+        final boolean negative = i < end && text[i] == '-';
+        if (negative) {
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; i < end; i++) {
+            final char c = text[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0') {
+                    if (++digits > 15) {
+                        return Double.NaN;
+                    }
+                    mantissa = mantissa * 10 + (c - '0');
+                }
+                if (fraction) {
+                    scale++;
+                }
+            }
+            else if (c == '.' && !fraction) {
+                fraction = true;
+            }
+            else {
+                break;
+            }
+        }
+
+        if (i < end) {
+            if (text[i] != 'e' && text[i] != 'E' || ++i == end) {
+                return Double.NaN;
+            }
+            final boolean negativeExponent = text[i] == '-';
+            if (text[i] == '-' || text[i] == '+') {
+                i++;
+            }
+            int exponent = 0;
+            for (; i < end; i++) {
+                if (text[i] < '0' || text[i] > '9' || exponent > 1000) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (text[i] - '0');
+            }
+            scale += negativeExponent ? exponent : -exponent;
+        }
+
+        final double value;
+        if (mantissa == 0) {
+            value = 0;
+        }
+        else if (scale >= 0 && scale < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[scale];
+        }
+        else if (scale < 0 && -scale < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[-scale];
+        }
+        else {
+            return Double.NaN;
+        }
+        return negative ? -value : value;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, String.format("expected %s, got %s", expected, actual));
+        }
+    }
+
+    /**
+     * The projected fields of one feature.  Polygon rings are kept flat:
+     * {@code values} holds every ordinate, {@code pointSizes} the length
+     * of each point and {@code ringSizes} the number of points per ring,
+     * with -1 standing for a JSON null.
+     */
+    private static class Feature {
+        String id;
+        String type;
+
+        boolean hasGeometry;
+        String geometryType;
+        int rings;
+        int[] ringSizes = new int[4];
+        int points;
+        int[] pointSizes = new int[128];
+        int values;
+        double[] ordinates = new double[256];
+
+        boolean hasProperties;
+        String acquired;
+        float cloudCover;
+        int resolution;
+        int wrsPath;
+        int wrsRow;
+
+        /**
+         * Reads the feature at the parser's current token, returning false for a JSON null.
+         */
+        boolean read(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                return false;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+
+            id = null;
+            type = null;
+            hasGeometry = false;
+            hasProperties = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "id":
+                        id = text(parser);
+                        break;
+                    case "type":
+                        type = text(parser);
+                        break;
+                    case "geometry":
+                        readGeometry(parser);
+                        break;
+                    case "properties":
+                        readProperties(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+            return true;
+        }
+
+        private void readGeometry(JsonParser parser) throws IOException {
+            hasGeometry = parser.getCurrentToken() != JsonToken.VALUE_NULL;
+            if (!hasGeometry) {
+                return;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+
+            geometryType = null;
+            rings = -1;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                if ("type".equals(name)) {
+                    geometryType = text(parser);
+                }
+                else if ("coordinates".equals(name)) {
+                    readRings(parser);
+                }
+                else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        private void readRings(JsonParser parser) throws IOException {
+            rings = -1;
+            points = 0;
+            values = 0;
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                return;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+
+            rings = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (rings == ringSizes.length) {
+                    ringSizes = Arrays.copyOf(ringSizes, rings * 2);
+                }
+                ringSizes[rings++] = readPoints(parser);
+            }
+        }
+
+        private int readPoints(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                return -1;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+
+            int count = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (points == pointSizes.length) {
+                    pointSizes = Arrays.copyOf(pointSizes, points * 2);
+                }
+                pointSizes[points++] = readOrdinates(parser);
+                count++;
+            }
+            return count;
+        }
+
+        private int readOrdinates(JsonParser parser) throws IOException {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                return -1;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_ARRAY);
+
+            int count = 0;
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (values == ordinates.length) {
+                    ordinates = Arrays.copyOf(ordinates, values * 2);
+                }
+                ordinates[values++] = doubleValue(parser);
+                count++;
+            }
+            return count;
+        }
+
+        private void readProperties(JsonParser parser) throws IOException {
+            hasProperties = parser.getCurrentToken() != JsonToken.VALUE_NULL;
+            if (!hasProperties) {
+                return;
+            }
+            expect(parser, parser.getCurrentToken(), JsonToken.START_OBJECT);
+
+            acquired = null;
+            cloudCover = 0;
+            resolution = 0;
+            wrsPath = 0;
+            wrsRow = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "acquired":
+                        acquired = text(parser);
+                        break;
+                    case "cloud_cover":
+                        cloudCover = floatValue(parser);
+                        break;
+                    case "pixel_resolution":
+                        resolution = intValue(parser);
+                        break;
+                    case "wrs_path":
+                        wrsPath = intValue(parser);
+                        break;
+                    case "wrs_row":
+                        wrsRow = intValue(parser);
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+        }
+
+        Scene toScene() {
+            final Scene scene = new Scene();
+            scene.id = id;
+            scene.type = type;
+            if (hasGeometry) {
+                scene.geometry = new Scene.Geometry();
+                scene.geometry.type = geometryType;
+                scene.geometry.coordinates = toCoordinates();
+            }
+            if (hasProperties) {
+                scene.properties = new Scene.Properties(acquired, cloudCover, resolution, wrsPath, wrsRow);
+            }
+            return scene;
+        }
+
+        private double[][][] toCoordinates() {
+            if (rings < 0) {
+                return null;
+            }
+
+            final double[][][] coordinates = new double[rings][][];
+            int point = 0;
+            int value = 0;
+            for (int r = 0; r < rings; r++) {
+                if (ringSizes[r] < 0) {
+                    continue;
+                }
+                coordinates[r] = new double[ringSizes[r]][];
+                for (int p = 0; p < ringSizes[r]; p++, point++) {
+                    if (pointSizes[point] >= 0) {
+                        coordinates[r][p] = Arrays.copyOfRange(ordinates, value, value + pointSizes[point]);
+                        value += pointSizes[point];
+                    }
+                }
+            }
+            return coordinates;
+        }
+
+        void write(JsonGenerator generator) throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("id", id);
+
+            generator.writeFieldName("geometry");
+            if (hasGeometry) {
+                generator.writeStartObject();
+                generator.writeStringField("type", geometryType);
+                generator.writeFieldName("coordinates");
+                writeCoordinates(generator);
+                generator.writeEndObject();
+            }
+            else {
+                generator.writeNull();
+            }
+
+            generator.writeFieldName("properties");
+            if (hasProperties) {
+                generator.writeStartObject();
+                generator.writeStringField("acquiredOn", acquired);
+                generator.writeNumberField("resolution", resolution);
+                generator.writeNumberField("cloudCover", cloudCover);
+                generator.writeStringField("wrsPath", Scene.Properties.pad(wrsPath));
+                generator.writeStringField("wrsRow", Scene.Properties.pad(wrsRow));
+                generator.writeEndObject();
+            }
+            else {
+                generator.writeNull();
+            }
+
+            generator.writeStringField("type", type);
+            generator.writeEndObject();
+        }
+
+        private void writeCoordinates(JsonGenerator generator) throws IOException {
+            if (rings < 0) {
+                generator.writeNull();
+                return;
+            }
+
+            int point = 0;
+            int value = 0;
+            generator.writeStartArray();
+            for (int r = 0; r < rings; r++) {
+                if (ringSizes[r] < 0) {
+                    generator.writeNull();
+                    continue;
+                }
+                generator.writeStartArray();
+                for (int p = 0; p < ringSizes[r]; p++, point++) {
+                    if (pointSizes[point] < 0) {
+                        generator.writeNull();
+                        continue;
+                    }
+                    generator.writeArray(ordinates, value, pointSizes[point]);
+                    value += pointSizes[point];
+                }
+                generator.writeEndArray();
+            }
+            generator.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package landsatviewer.planet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An open search response.  Serializing it with Jackson copies the
+ * projected features to the output as they arrive from Planet, rather
+ * than binding the whole collection first; the stream is closed once
+ * written.
+ *
+ * Results spread over several pages are followed up to a maximum number
+ * of features.  Each page is requested as soon as its link is read, so it
+ * arrives while the page before it is still being written, and output is
+ * flushed after every page.
+ */
+@JsonSerialize(using = SceneStream.Serializer.class)
+public class SceneStream implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SceneStream.class);
+
+    interface Pages {
+        CompletableFuture<SceneStream> open(String url);
+    }
+
+    private final InputStream body;
+    private final Closeable response;
+    private final Pages pages;
+    private final int maxFeatures;
+
+    SceneStream(InputStream body, Closeable response) {
+        this(body, response, null, Integer.MAX_VALUE);
+    }
+
+    SceneStream(InputStream body, Closeable response, Pages pages, int maxFeatures) {
+        this.body = body;
+        this.response = response;
+        this.pages = pages;
+        this.maxFeatures = maxFeatures;
+    }
+
+    public SceneCollection read() throws IOException {
+        final SceneCollection scenes = new SceneCollection();
+        scenes.features = new ArrayList<>();
+        forEachPage((parser, limit, next) -> SceneParser.bindPage(parser, scenes.features, limit, next));
+        return scenes;
+    }
+
+    public void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+        generator.writeArrayFieldStart("features");
+        forEachPage((parser, limit, next) -> {
+            final int count = SceneParser.copyPage(parser, generator, false, limit, next);
+            generator.flush();
+            return count;
+        });
+        generator.writeEndArray();
+        generator.writeStringField("type", "FeatureCollection");
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the features as newline-delimited JSON, one feature per line.
+     */
+    public void writeLines(OutputStream out) throws IOException {
+        try (JsonGenerator generator = SceneParser.JSON.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            forEachPage((parser, limit, next) -> {
+                final int count = SceneParser.copyPage(parser, generator, true, limit, next);
+                generator.flush();
+                return count;
+            });
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            body.close();
+        }
+        finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private void forEachPage(PageReader reader) throws IOException {
+        final AtomicReference<CompletableFuture<SceneStream>> following = new AtomicReference<>();
+        int remaining = maxFeatures;
+        SceneStream page = this;
+
+        try {
+            while (true) {
+                final int count;
+                try (JsonParser parser = SceneParser.JSON.createParser(page.body)) {
+                    count = reader.read(parser, remaining, url -> {
+                        if (pages != null) {
+                            following.set(pages.open(url));
+                        }
+                    });
+                }
+                finally {
+                    page.close();
+                }
+
+                remaining -= count;
+                if (following.get() == null || remaining <= 0 || count == 0) {
+                    break;
+                }
+                page = await(following.getAndSet(null));
+            }
+        }
+        finally {
+            // A page requested ahead of time that will not be read still holds a connection
+            final CompletableFuture<SceneStream> unread = following.get();
+            if (unread != null) {
+                unread.thenAccept(SceneStream::closeQuietly);
+            }
+        }
+    }
+
+    private static SceneStream await(CompletableFuture<SceneStream> page) throws IOException {
+        try {
+            return page.join();
+        }
+        catch (CompletionException e) {
+            final Throwable cause = Client.unwrap(e);
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    private static void closeQuietly(SceneStream page) {
+        try {
+            page.close();
+        }
+        catch (IOException e) {
+            logger.debug("Could not close unread search page: {}", e.getMessage());
+        }
+    }
+
+    private interface PageReader {
+        int read(JsonParser parser, int limit, Consumer<String> next) throws IOException;
+    }
+
+    static class Serializer extends StdSerializer<SceneStream> {
+        Serializer() {
+            super(SceneStream.class);
+        }
+
+        @Override
+        public void serialize(SceneStream stream, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            stream.writeTo(generator);
+        }
+    }
+}
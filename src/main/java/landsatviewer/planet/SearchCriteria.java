@@ -1,5 +1,7 @@
 package landsatviewer.planet;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -8,21 +10,144 @@ import java.util.List;
 import java.util.Map;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 
+/**
+ * A quick-search request body.  Searches are written straight to a JSON
+ * generator rather than built up as filter objects for Jackson to walk;
+ * the output is the same as serializing {@link #toFilter()}, which is
+ * kept as the reference for the wire format.
+ */
+@JsonSerialize(using = SearchCriteria.Serializer.class)
 public class SearchCriteria {
+    public static final double BUFFER_SIZE = 1.0;
 
-    @JsonProperty("item_types")
-    public String[] itemTypes = {"Landsat8L1G"};
+    private static final String ITEM_TYPE = "Landsat8L1G";
+    private static final String DATE_FIELD = "acquired";
+    private static final String GEOMETRY_FIELD = "geometry";
 
-    public AndFilter filter = new AndFilter();
+    // JTS places each buffer vertex at centre + offset, so translating the buffer of the origin reproduces it exactly
+    private static final Coordinate[] BUFFER_TEMPLATE =
+            new GeometryFactory().createPoint(new Coordinate(0, 0)).buffer(BUFFER_SIZE).getCoordinates();
+
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final ThreadLocal<ByteArrayBuilder> BUFFERS = ThreadLocal.withInitial(() -> new ByteArrayBuilder(2048));
+
+    private final Instant since;
+    private final double x;
+    private final double y;
+    private final Coordinate[] polygon;
 
     public SearchCriteria(double x, double y, int daysSince) {
-        filter = new AndFilter();
-        filter.config.add(new DateRangeFilter("acquired", daysSince));
-        filter.config.add(new GeometryFilter("geometry", x, y));
+        this.since = Instant.now().minus(Duration.ofDays(daysSince));
+        this.x = x;
+        this.y = y;
+        this.polygon = null;
+    }
+
+    public SearchCriteria(Envelope bounds, Instant since) {
+        this.since = since;
+        this.x = 0;
+        this.y = 0;
+        this.polygon = new GeometryFactory().toGeometry(bounds).getCoordinates();
+    }
+
+    /**
+     * Serializes into a per-thread buffer, returning a copy of the bytes.
+     */
+    public byte[] toJson() {
+        final ByteArrayBuilder buffer = BUFFERS.get();
+        buffer.reset();
+        try (JsonGenerator generator = JSON.createGenerator(buffer)) {
+            writeTo(generator);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    void writeTo(JsonGenerator generator) throws IOException {
+        generator.writeStartObject();
+
+        generator.writeObjectFieldStart("filter");
+        generator.writeStringField("type", "AndFilter");
+        generator.writeArrayFieldStart("config");
+
+        generator.writeStartObject();
+        generator.writeStringField("type", "DateRangeFilter");
+        generator.writeObjectFieldStart("config");
+        generator.writeStringField("gte", since.toString());
+        generator.writeEndObject();
+        generator.writeStringField("field_name", DATE_FIELD);
+        generator.writeEndObject();
+
+        generator.writeStartObject();
+        generator.writeStringField("type", "GeometryFilter");
+        generator.writeObjectFieldStart("config");
+        generator.writeStringField("type", "Polygon");
+        generator.writeArrayFieldStart("coordinates");
+        generator.writeStartArray();
+        if (polygon != null) {
+            for (Coordinate c : polygon) {
+                writePoint(generator, c.x, c.y);
+            }
+        }
+        else {
+            for (Coordinate offset : BUFFER_TEMPLATE) {
+                writePoint(generator, x + offset.x, y + offset.y);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndArray();
+        generator.writeEndObject();
+        generator.writeStringField("field_name", GEOMETRY_FIELD);
+        generator.writeEndObject();
+
+        generator.writeEndArray();
+        generator.writeEndObject();
+
+        generator.writeArrayFieldStart("item_types");
+        generator.writeString(ITEM_TYPE);
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+    }
+
+    private static void writePoint(JsonGenerator generator, double x, double y) throws IOException {
+        generator.writeStartArray();
+        generator.writeNumber(x);
+        generator.writeNumber(y);
+        generator.writeEndArray();
+    }
+
+    AndFilter toFilter() {
+        final AndFilter filter = new AndFilter();
+        filter.config.add(new DateRangeFilter(DATE_FIELD, since));
+        filter.config.add(polygon != null
+                ? new GeometryFilter(GEOMETRY_FIELD, new GeometryFactory().createPolygon(polygon))
+                : new GeometryFilter(GEOMETRY_FIELD, x, y));
+        return filter;
+    }
+
+    static class Serializer extends StdSerializer<SearchCriteria> {
+        Serializer() {
+            super(SearchCriteria.class);
+        }
+
+        @Override
+        public void serialize(SearchCriteria criteria, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            criteria.writeTo(generator);
+        }
     }
 
     static class AndFilter {
@@ -39,14 +164,16 @@ public class SearchCriteria {
         public Map<String, String> config = new HashMap<>();
 
         public DateRangeFilter(String fieldName, int daysSince) {
+            this(fieldName, Instant.now().minus(Duration.ofDays(daysSince)));
+        }
+
+        public DateRangeFilter(String fieldName, Instant since) {
             this.fieldName = fieldName;
-            this.config.put("gte", Duration.ofDays(daysSince).subtractFrom(Instant.now()).toString());
+            this.config.put("gte", since.toString());
         }
     }
 
     static class GeometryFilter {
-        private static final double BUFFER_SIZE = 1.0;
-
         public String type = "GeometryFilter";
 
         @JsonProperty("field_name")
@@ -59,14 +186,20 @@ public class SearchCriteria {
             this.config = new ConfigGeometry(x, y);
         }
 
+        public GeometryFilter(String fieldName, Geometry polygon) {
+            this.fieldName = fieldName;
+            this.config = new ConfigGeometry(polygon);
+        }
+
         static class ConfigGeometry {
             public String type = "Polygon";
             public List<List<List<Double>>> coordinates;
 
             public ConfigGeometry(double x, double y) {
-                GeometryFactory factory = new GeometryFactory();
-                Geometry polygon = factory.createPoint(new Coordinate(x, y)).buffer(BUFFER_SIZE);
+                this(new GeometryFactory().createPoint(new Coordinate(x, y)).buffer(BUFFER_SIZE));
+            }
 
+            public ConfigGeometry(Geometry polygon) {
                 List<List<Double>> points = new ArrayList<>();
                 for (Coordinate c : polygon.getCoordinates()) {
                     List<Double> point = new ArrayList<>(2);
@@ -0,0 +1,96 @@
+package landsatviewer.planet;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    V execute(K key, Call<V> call) throws Client.Error {
+        final CompletableFuture<V> pending = new CompletableFuture<>();
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            final V value = call.call();
+            pending.complete(value);
+            return value;
+        }
+        catch (Client.Error | RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        final CompletableFuture<V> pending = new CompletableFuture<>();
+        final CompletableFuture<V> existing = lead(key, pending);
+        if (existing != null) {
+            return existing.copy();
+        }
+
+        try {
+            call.get().whenComplete((value, e) -> {
+                if (e != null) {
+                    pending.completeExceptionally(Client.unwrap(e));
+                }
+                else {
+                    pending.complete(value);
+                }
+            });
+        }
+        catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+        }
+        return pending.copy();
+    }
+
+    CompletableFuture<V> lead(K key, CompletableFuture<V> pending) {
+        final CompletableFuture<V> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+
+        pending.whenComplete((value, e) -> inFlight.remove(key, pending));
+        return null;
+    }
+
+    long coalesced() {
+        return coalesced.get();
+    }
+
+    static <V> V await(CompletableFuture<V> future) throws Client.Error {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Client.Error("interrupted while waiting for upstream");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Client.Error) {
+                throw (Client.Error) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new Client.Error(e.getCause());
+        }
+    }
+
+    interface Call<V> {
+        V call() throws Client.Error;
+    }
+}
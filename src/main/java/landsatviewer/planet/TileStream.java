@@ -0,0 +1,122 @@
+package landsatviewer.planet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+public class TileStream extends FilterInputStream {
+    private final Closeable response;
+    private final long contentLength;
+    private final String etag;
+
+    private final ByteArrayOutputStream copy;
+    private final CompletableFuture<byte[]> body;
+
+    private TileStream(InputStream in, Closeable response, long contentLength, String etag, boolean buffered) {
+        super(in);
+        this.response = response;
+        this.contentLength = contentLength;
+        this.etag = etag;
+        this.copy = buffered ? null : new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 8192);
+        this.body = new CompletableFuture<>();
+    }
+
+    public static TileStream buffered(byte[] data, String etag) {
+        final TileStream stream = new TileStream(new ByteArrayInputStream(data), null, data.length, etag, true);
+        stream.body.complete(data);
+        return stream;
+    }
+
+    static TileStream live(InputStream in, Closeable response, long contentLength, String etag) {
+        return new TileStream(in, response, contentLength, etag, false);
+    }
+
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Completes with the full tile once the stream has been read to the end,
+     * or exceptionally if it fails or is closed early.
+     */
+    public CompletableFuture<byte[]> body() {
+        return body;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b;
+        try {
+            b = super.read();
+        }
+        catch (IOException e) {
+            body.completeExceptionally(new Client.Error(e));
+            throw e;
+        }
+
+        if (b == -1) {
+            finish();
+        }
+        else if (copy != null) {
+            copy.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        final int count;
+        try {
+            count = super.read(buffer, offset, length);
+        }
+        catch (IOException e) {
+            body.completeExceptionally(new Client.Error(e));
+            throw e;
+        }
+
+        if (count == -1) {
+            finish();
+        }
+        else if (copy != null) {
+            copy.write(buffer, offset, count);
+        }
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        throw new IOException("skip not supported on tile streams");
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        body.completeExceptionally(new Client.Error("tile stream closed before it was fully read"));
+        try {
+            super.close();
+        }
+        finally {
+            if (response != null) {
+                response.close();
+            }
+        }
+    }
+
+    private void finish() {
+        if (copy != null) {
+            body.complete(copy.toByteArray());
+        }
+    }
+}
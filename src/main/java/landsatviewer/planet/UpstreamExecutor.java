@@ -0,0 +1,127 @@
+package landsatviewer.planet;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UpstreamExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamExecutor.class);
+
+    public enum Mode {
+        ASYNC,
+        PLATFORM,
+        VIRTUAL,
+    }
+
+    private final Mode mode;
+    private final int concurrency;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    @Autowired
+    public UpstreamExecutor(@Value("${EXECUTION_MODE:async}") String mode,
+                            @Value("${UPSTREAM_CONCURRENCY:200}") int concurrency) {
+        this(Mode.valueOf(mode.toUpperCase()), concurrency);
+    }
+
+    UpstreamExecutor(Mode mode, int concurrency) {
+        logger.info("Upstream execution mode: {} (concurrency={})", mode, concurrency);
+
+        this.mode = mode;
+        this.concurrency = concurrency;
+        this.permits = new Semaphore(concurrency, true);
+
+        switch (mode) {
+            case PLATFORM:
+                this.executor = Executors.newFixedThreadPool(concurrency);
+                break;
+            case VIRTUAL:
+                this.executor = newVirtualExecutor("upstream-");
+                break;
+            default:
+                this.executor = null;
+        }
+    }
+
+    public static UpstreamExecutor async() {
+        return new UpstreamExecutor(Mode.ASYNC, Integer.MAX_VALUE);
+    }
+
+    // Compiled for Java 11 (Spring 5.1 cannot scan newer class files), so virtual threads are looked up reflectively
+    public static ExecutorService newVirtualExecutor(String prefix) {
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            final ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later", e);
+        }
+    }
+
+    public static boolean supportsVirtualThreads() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }
+        catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    boolean isBlocking() {
+        return executor != null;
+    }
+
+    <T> CompletableFuture<T> submit(SingleFlight.Call<T> call) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final Executor target = executor;
+        target.execute(() -> {
+            try {
+                permits.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.completeExceptionally(new Client.Error("interrupted while waiting for upstream"));
+                return;
+            }
+
+            try {
+                result.complete(call.call());
+            }
+            catch (Client.Error | RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+            finally {
+                permits.release();
+            }
+        });
+        return result;
+    }
+
+    Map<String, Long> stats() {
+        if (!isBlocking()) {
+            return Map.of();
+        }
+        return Map.of(
+                "in_flight", (long) (concurrency - permits.availablePermits()),
+                "waiting", (long) permits.getQueueLength());
+    }
+}
@@ -0,0 +1,101 @@
+package landsatviewer.planet;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency, status and error metrics for calls to Planet, per operation.
+ *
+ * Timers are looked up once per operation and status and then kept in an
+ * array, so recording a call costs a clock read and a histogram update
+ * without building tags.
+ */
+@Component
+public class UpstreamMetrics {
+    public enum Operation {
+        TILE,
+        SCENE,
+        SEARCH;
+
+        final String tag = name().toLowerCase();
+    }
+
+    static final String REQUESTS = "planet.requests";
+    static final String ACTIVE = "planet.requests.active";
+    static final String ERRORS = "planet.errors";
+
+    // Index 0 is for calls that got no response
+    private static final int STATUSES = 600;
+
+    private final MeterRegistry registry;
+    private final Map<Operation, AtomicInteger> active = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicReferenceArray<Timer>> timers = new EnumMap<>(Operation.class);
+    private final Map<Operation, Map<Class<?>, Counter>> errors = new EnumMap<>(Operation.class);
+
+    @Autowired
+    public UpstreamMetrics(MeterRegistry registry) {
+        this.registry = registry;
+
+        for (Operation operation : Operation.values()) {
+            final AtomicInteger count = new AtomicInteger();
+            Gauge.builder(ACTIVE, count, AtomicInteger::get)
+                    .description("Calls to Planet awaiting a response")
+                    .tag("operation", operation.tag)
+                    .register(registry);
+            active.put(operation, count);
+            timers.put(operation, new AtomicReferenceArray<>(STATUSES));
+            errors.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Marks the start of a call, returning the start time to pass to {@link #completed} or {@link #failed}.
+     */
+    public long start(Operation operation) {
+        active.get(operation).incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void completed(Operation operation, long start, int status) {
+        final long elapsed = System.nanoTime() - start;
+        active.get(operation).decrementAndGet();
+        timer(operation, status > 0 && status < STATUSES ? status : 0).record(elapsed, TimeUnit.NANOSECONDS);
+    }
+
+    public void failed(Operation operation, long start, Throwable e) {
+        final long elapsed = System.nanoTime() - start;
+        active.get(operation).decrementAndGet();
+        timer(operation, 0).record(elapsed, TimeUnit.NANOSECONDS);
+        errors.get(operation).computeIfAbsent(e.getClass(), type -> Counter.builder(ERRORS)
+                .description("Calls to Planet that failed without a response")
+                .tag("operation", operation.tag)
+                .tag("exception", type.getSimpleName())
+                .register(registry))
+                .increment();
+    }
+
+    private Timer timer(Operation operation, int status) {
+        final AtomicReferenceArray<Timer> byStatus = timers.get(operation);
+        Timer timer = byStatus.get(status);
+        if (timer == null) {
+            timer = Timer.builder(REQUESTS)
+                    .description("Calls to Planet, until response headers for streamed responses")
+                    .tag("operation", operation.tag)
+                    .tag("status", status == 0 ? "none" : Integer.toString(status))
+                    .register(registry);
+            byStatus.set(status, timer);
+        }
+        return timer;
+    }
+}
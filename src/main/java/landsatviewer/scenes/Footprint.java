@@ -0,0 +1,77 @@
+package landsatviewer.scenes;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.LinearRing;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+
+import landsatviewer.planet.Scene;
+
+class Footprint {
+    static final GeometryFactory FACTORY = new GeometryFactory();
+
+    final Scene scene;
+    final PreparedGeometry geometry;
+    final Instant acquired;
+
+    Footprint(Scene scene) {
+        this.scene = scene;
+        this.geometry = toGeometry(scene);
+        this.acquired = toInstant(scene);
+    }
+
+    // Without a polygon only the date can be checked; the catalog decides which areas such a scene belongs to
+    boolean matches(Geometry area, Instant since) {
+        return (acquired == null || !acquired.isBefore(since)) && (geometry == null || geometry.intersects(area));
+    }
+
+    static Geometry buffer(double x, double y, double size) {
+        return FACTORY.createPoint(new Coordinate(x, y)).buffer(size);
+    }
+
+    private static PreparedGeometry toGeometry(Scene scene) {
+        if (scene.geometry == null || !"Polygon".equals(scene.geometry.type) || scene.geometry.coordinates == null
+                || scene.geometry.coordinates.length == 0) {
+            return null;
+        }
+
+        try {
+            final double[][][] rings = scene.geometry.coordinates;
+            final LinearRing shell = toRing(rings[0]);
+            final LinearRing[] holes = new LinearRing[rings.length - 1];
+            for (int i = 1; i < rings.length; i++) {
+                holes[i - 1] = toRing(rings[i]);
+            }
+            return PreparedGeometryFactory.prepare(FACTORY.createPolygon(shell, holes));
+        }
+        catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static LinearRing toRing(double[][] points) {
+        final Coordinate[] coordinates = new Coordinate[points.length];
+        for (int i = 0; i < points.length; i++) {
+            coordinates[i] = new Coordinate(points[i][0], points[i][1]);
+        }
+        return FACTORY.createLinearRing(coordinates);
+    }
+
+    private static Instant toInstant(Scene scene) {
+        if (scene.properties == null || scene.properties.acquiredOn == null) {
+            return null;
+        }
+
+        try {
+            return Instant.parse(scene.properties.acquiredOn);
+        }
+        catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package landsatviewer.scenes;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.Scene;
+
+/**
+ * Scene footprints in an STR-tree, so a point search is an envelope
+ * lookup plus an exact intersection test against a handful of
+ * candidates.  Footprints are held on behalf of regions (search cache
+ * cells) and shared between overlapping regions; a footprint is dropped
+ * once no region refers to it.
+ *
+ * Planet's search only returns a scene without a usable polygon (a
+ * missing or non-Polygon geometry) because of where it is, so such a
+ * scene is only returned for the region it was found for.
+ *
+ * STR-trees cannot be modified once built, so new or dropped footprints
+ * mark the index dirty and the next query rebuilds it.  Footprints are
+ * immutable upstream, so a scene seen again only has its properties
+ * swapped in place.
+ */
+@Component
+public class FootprintCatalog {
+    // Planet returns the newest acquisitions first
+    private static final Comparator<Footprint> NEWEST_FIRST =
+            Comparator.comparing((Footprint footprint) -> footprint.acquired, Comparator.nullsFirst(Comparator.naturalOrder())).reversed();
+
+    private final Map<Object, Set<String>> regions = new HashMap<>();
+    private final Map<String, Entry> footprints = new HashMap<>();
+    private final Map<Object, List<Entry>> unlocated = new ConcurrentHashMap<>();
+    private volatile Index index = new Index(List.of());
+    private volatile boolean dirty;
+
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    public synchronized void put(Object region, Collection<Scene> scenes) {
+        final Set<String> ids = new HashSet<>();
+        final List<Entry> withoutGeometry = new ArrayList<>();
+        for (Scene scene : scenes) {
+            if (scene.id == null || !ids.add(scene.id)) {
+                continue;
+            }
+
+            Entry entry = footprints.get(scene.id);
+            if (entry == null) {
+                entry = new Entry(new Footprint(scene));
+                footprints.put(scene.id, entry);
+                dirty = true;
+            }
+            else if (entry.footprint.scene != scene) {
+                entry.footprint = new Footprint(scene);
+            }
+            entry.references++;
+            if (entry.footprint.geometry == null) {
+                withoutGeometry.add(entry);
+            }
+        }
+
+        if (withoutGeometry.isEmpty()) {
+            unlocated.remove(region);
+        }
+        else {
+            unlocated.put(region, withoutGeometry);
+        }
+        release(regions.put(region, ids));
+    }
+
+    public synchronized void remove(Object region) {
+        unlocated.remove(region);
+        release(regions.remove(region));
+    }
+
+    /**
+     * Scenes whose footprint intersects the area, and scenes without one that were put for the given region, most
+     * recently acquired first.
+     */
+    public List<Scene> query(Object region, Geometry area, Instant since) {
+        queries.incrementAndGet();
+
+        final List<Footprint> matches = new ArrayList<>();
+        for (Entry entry : index().candidates(area)) {
+            final Footprint footprint = entry.footprint;
+            if (footprint.matches(area, since)) {
+                matches.add(footprint);
+            }
+        }
+        for (Entry entry : unlocated.getOrDefault(region, List.of())) {
+            final Footprint footprint = entry.footprint;
+            if (footprint.geometry == null && footprint.matches(area, since)) {
+                matches.add(footprint);
+            }
+        }
+        matches.sort(NEWEST_FIRST);
+
+        final List<Scene> scenes = new ArrayList<>(matches.size());
+        for (Footprint footprint : matches) {
+            scenes.add(footprint.scene);
+        }
+        return scenes;
+    }
+
+    public synchronized Map<String, Long> stats() {
+        return Map.of(
+                "queries", queries.get(),
+                "rebuilds", rebuilds.get(),
+                "regions", (long) regions.size(),
+                "footprints", (long) footprints.size());
+    }
+
+    private void release(Set<String> ids) {
+        if (ids == null) {
+            return;
+        }
+
+        for (String id : ids) {
+            final Entry entry = footprints.get(id);
+            if (--entry.references == 0) {
+                footprints.remove(id);
+                dirty = true;
+            }
+        }
+    }
+
+    private Index index() {
+        if (!dirty) {
+            return index;
+        }
+
+        synchronized (this) {
+            if (dirty) {
+                index = new Index(new ArrayList<>(footprints.values()));
+                dirty = false;
+                rebuilds.incrementAndGet();
+            }
+            return index;
+        }
+    }
+
+    private static class Entry {
+        volatile Footprint footprint;
+        int references;
+
+        Entry(Footprint footprint) {
+            this.footprint = footprint;
+        }
+    }
+
+    private static class Index {
+        final STRtree tree = new STRtree();
+
+        Index(List<Entry> entries) {
+            for (Entry entry : entries) {
+                if (entry.footprint.geometry != null) {
+                    tree.insert(entry.footprint.geometry.getGeometry().getEnvelopeInternal(), entry);
+                }
+            }
+            tree.build();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<Entry> candidates(Geometry area) {
+            return tree.query(area.getEnvelopeInternal());
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package landsatviewer.scenes;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.SceneDocument;
+
+/**
+ * Scene metadata held as the JSON served to clients, with a strong ETag
+ * over those bytes.  Entries older than the revalidation interval are
+ * still served while a conditional request checks them against Planet,
+ * and scenes Planet does not know are remembered briefly so repeated
+ * lookups do not reach it.
+ */
+@Component
+public class SceneCache {
+    private static final Logger logger = LoggerFactory.getLogger(SceneCache.class);
+
+    private final Client client;
+    private final ObjectMapper mapper;
+    private final Duration missingTtl;
+    private final AsyncLoadingCache<String, Entry> cache;
+
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    @Autowired
+    public SceneCache(Client client,
+                      ObjectMapper mapper,
+                      @Value("${SCENE_CACHE_MAX_ENTRIES:10000}") long maxEntries,
+                      @Value("${SCENE_CACHE_REVALIDATE:86400}") long revalidateSeconds,
+                      @Value("${SCENE_CACHE_MISSING_TTL:60}") long missingTtlSeconds) {
+        this(client, mapper, maxEntries, Duration.ofSeconds(revalidateSeconds), Duration.ofSeconds(missingTtlSeconds), Ticker.systemTicker());
+    }
+
+    SceneCache(Client client, ObjectMapper mapper, long maxEntries, Duration revalidate, Duration missingTtl, Ticker ticker) {
+        this.client = client;
+        this.mapper = mapper;
+        this.missingTtl = missingTtl;
+
+        if (maxEntries <= 0) {
+            logger.info("Scene cache disabled");
+            this.cache = null;
+            return;
+        }
+
+        logger.info("Scene cache enabled (max_entries={}, revalidate={}, missing_ttl={})", maxEntries, revalidate, missingTtl);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .refreshAfterWrite(revalidate)
+                .expireAfter(new MissingExpiry())
+                .ticker(ticker)
+                .executor(Runnable::run)
+                .recordStats()
+                .buildAsync(new Loader());
+    }
+
+    /**
+     * Completes with the cached entry, which is {@link Entry#isMissing()}
+     * when Planet reported the scene not found.
+     */
+    public CompletableFuture<Entry> get(String sceneId) {
+        if (cache == null) {
+            return load(sceneId, null);
+        }
+        return cache.get(sceneId);
+    }
+
+    /**
+     * The IDs of up to {@code limit} known scenes, those the cache would keep longest first.
+     */
+    public List<String> hottest(int limit) {
+        if (cache == null) {
+            return List.of();
+        }
+        return cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.hottest(limit).entrySet().stream()
+                        .filter(entry -> !entry.getValue().isMissing())
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+    }
+
+    public Map<String, Long> stats() {
+        if (cache == null) {
+            return Map.of();
+        }
+
+        final CacheStats stats = cache.synchronous().stats();
+        return Map.of(
+                "hits", stats.hitCount(),
+                "misses", stats.missCount(),
+                "evictions", stats.evictionCount(),
+                "revalidations", revalidations.get(),
+                "not_modified", notModified.get(),
+                "entries", cache.synchronous().estimatedSize());
+    }
+
+    private CompletableFuture<Entry> load(String sceneId, Entry previous) {
+        final SceneDocument document = previous != null ? previous.document : null;
+        return client.getSceneDocumentAsync(sceneId, document)
+                .handle((fetched, e) -> {
+                    if (e != null) {
+                        if (unwrap(e) instanceof Client.NotFound) {
+                            return Entry.MISSING;
+                        }
+                        throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                    }
+                    if (fetched == document) {
+                        notModified.incrementAndGet();
+                        return previous;
+                    }
+                    return serialize(fetched);
+                });
+    }
+
+    private Entry serialize(SceneDocument document) {
+        final byte[] json;
+        try {
+            json = mapper.writeValueAsBytes(document.scene);
+        }
+        catch (JsonProcessingException e) {
+            throw new CompletionException(e);
+        }
+        return new Entry(document, json, "\"" + DigestUtils.md5DigestAsHex(json) + "\"");
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    public static class Entry {
+        static final Entry MISSING = new Entry(null, null, null);
+
+        private final SceneDocument document;
+        private final byte[] json;
+        private final String etag;
+
+        Entry(SceneDocument document, byte[] json, String etag) {
+            this.document = document;
+            this.json = json;
+            this.etag = etag;
+        }
+
+        public boolean isMissing() {
+            return document == null;
+        }
+
+        public byte[] getJson() {
+            return json;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        /**
+         * Whether an If-None-Match header names this entry (weak comparison, as RFC 7232 requires for GET).
+         */
+        public boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null || etag == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                final String tag = candidate.trim();
+                if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private class Loader implements AsyncCacheLoader<String, Entry> {
+        @Override
+        public CompletableFuture<Entry> asyncLoad(String sceneId, Executor executor) {
+            return load(sceneId, null);
+        }
+
+        @Override
+        public CompletableFuture<Entry> asyncReload(String sceneId, Entry previous, Executor executor) {
+            revalidations.incrementAndGet();
+            return load(sceneId, previous.isMissing() ? null : previous);
+        }
+    }
+
+    private class MissingExpiry implements Expiry<String, Entry> {
+        @Override
+        public long expireAfterCreate(String sceneId, Entry entry, long currentTime) {
+            return entry.isMissing() ? missingTtl.toNanos() : Long.MAX_VALUE;
+        }
+
+        @Override
+        public long expireAfterUpdate(String sceneId, Entry entry, long currentTime, long currentDuration) {
+            return expireAfterCreate(sceneId, entry, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String sceneId, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package landsatviewer.scenes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneCollection;
+import landsatviewer.planet.SearchCriteria;
+
+/**
+ * Answers point searches from one upstream search per grid cell.  Each
+ * cell fetches every scene that could match a point inside it (the cell
+ * grown by the search buffer, from the start of the day) into the
+ * footprint catalog, and requests are then answered from the catalog
+ * against their exact buffer and time window.
+ *
+ * A cell can only gain scenes after Landsat passes over it, so once the
+ * cell's next overpass plus the time Planet takes to ingest new
+ * acquisitions has passed, the next request is answered from the
+ * catalog while the cell is refreshed in the background.  Cells not
+ * searched for a further day are dropped along with their footprints.
+ *
+ * A cell whose search reaches the most features a search reads is
+ * missing scenes, so it is not put in the catalog and searches in it go
+ * to Planet as they are until the cell is loaded again.
+ */
+@Component
+public class SearchCache {
+    private static final Logger logger = LoggerFactory.getLogger(SearchCache.class);
+
+    // Landsat 8 crosses the equator at about 10:11 local mean solar time
+    private static final long OVERPASS_SECOND_OF_DAY = Duration.ofHours(10).plusMinutes(11).getSeconds();
+    private static final long SECONDS_PER_DEGREE = 240;
+    private static final Duration IDLE_EXPIRY = Duration.ofDays(1);
+
+    private final Client client;
+    private final Clock clock;
+    private final double cellSize;
+    private final CellLoader loader;
+    private final AsyncLoadingCache<Cell, Instant> cache;
+    private final Set<Cell> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong refreshes = new AtomicLong();
+
+    @Autowired
+    public SearchCache(Client client,
+                       FootprintCatalog catalog,
+                       @Value("${SEARCH_CACHE_MAX_CELLS:10000}") long maxCells,
+                       @Value("${SEARCH_CACHE_CELL_SIZE:1.0}") double cellSize,
+                       @Value("${SEARCH_CACHE_INGEST_DELAY:21600}") long ingestDelaySeconds,
+                       @Value("${SEARCH_MAX_FEATURES:1000}") int maxFeatures) {
+        this(client, catalog, maxCells, cellSize, Duration.ofSeconds(ingestDelaySeconds), maxFeatures, Clock.systemUTC());
+    }
+
+    SearchCache(Client client, FootprintCatalog catalog, long maxCells, double cellSize, Duration ingestDelay,
+                int maxFeatures, Clock clock) {
+        // The cache's callbacks only capture the loader, so that this is not published before it is constructed
+        final CellLoader loader = new CellLoader(client, catalog, clock, cellSize, ingestDelay, maxFeatures);
+        this.client = client;
+        this.clock = clock;
+        this.cellSize = cellSize;
+        this.loader = loader;
+
+        if (maxCells <= 0) {
+            logger.info("Search cache disabled");
+            this.cache = null;
+            return;
+        }
+
+        logger.info("Search cache enabled (max_cells={}, cell_size={}, ingest_delay={})", maxCells, cellSize, ingestDelay);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxCells)
+                .expireAfter(new OverpassExpiry(clock))
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .executor(Runnable::run)
+                .removalListener((Cell cell, Instant refreshAt, RemovalCause cause) -> {
+                    if (cause != RemovalCause.REPLACED) {
+                        catalog.remove(cell);
+                        loader.truncated.remove(cell);
+                    }
+                })
+                .recordStats()
+                .buildAsync((cell, executor) -> loader.load(cell));
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    public CompletableFuture<SceneCollection> search(double x, double y, int daysAgo) {
+        if (cache == null) {
+            return client.searchAsync(x, y, daysAgo);
+        }
+
+        final Cell cell = new Cell((int) Math.floor(x / cellSize), (int) Math.floor(y / cellSize), daysAgo);
+        final Geometry area = Footprint.buffer(x, y, SearchCriteria.BUFFER_SIZE);
+        final Instant since = clock.instant().minus(Duration.ofDays(daysAgo));
+
+        return cache.get(cell).thenCompose(refreshAt -> {
+            if (!clock.instant().isBefore(refreshAt)) {
+                refresh(cell);
+            }
+            if (loader.truncated.contains(cell)) {
+                return client.searchAsync(x, y, daysAgo);
+            }
+
+            final SceneCollection scenes = new SceneCollection();
+            scenes.features = loader.catalog.query(cell, area, since);
+            return CompletableFuture.completedFuture(scenes);
+        });
+    }
+
+    /**
+     * Up to {@code limit} cached cells, those the cache would keep longest first, each as a search that loads it
+     * again: "x,y,days_ago" at the cell's centre, which stays valid if the cell size changes.
+     */
+    public List<String> hottest(int limit) {
+        if (cache == null) {
+            return List.of();
+        }
+        return cache.synchronous().policy().eviction()
+                .map(eviction -> eviction.hottest(limit).keySet().stream()
+                        .map(cell -> String.format(Locale.ROOT, "%s,%s,%d",
+                                (cell.x + 0.5) * cellSize, (cell.y + 0.5) * cellSize, cell.daysAgo))
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+    }
+
+    /**
+     * Loads the cell of a search returned by {@link #hottest}.
+     */
+    public CompletableFuture<?> restore(String search) {
+        final String[] parts = search.split(",");
+        if (cache == null || parts.length != 3) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return search(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Integer.parseInt(parts[2]));
+    }
+
+    public Map<String, Long> stats() {
+        if (cache == null) {
+            return Map.of();
+        }
+
+        final CacheStats stats = cache.synchronous().stats();
+        return Map.of(
+                "hits", stats.hitCount(),
+                "misses", stats.missCount(),
+                "evictions", stats.evictionCount(),
+                "refreshes", refreshes.get(),
+                "truncated", (long) loader.truncated.size(),
+                "entries", cache.synchronous().estimatedSize());
+    }
+
+    private void refresh(Cell cell) {
+        if (refreshing.add(cell)) {
+            refreshes.incrementAndGet();
+            loader.load(cell).whenComplete((refreshAt, e) -> {
+                refreshing.remove(cell);
+                if (e == null) {
+                    cache.put(cell, CompletableFuture.completedFuture(refreshAt));
+                }
+                else {
+                    logger.warn("Could not refresh search cell {}: {}", cell, e.getMessage());
+                }
+            });
+        }
+    }
+
+    Instant nextRefresh(Cell cell, Instant now) {
+        return loader.nextRefresh(cell, now);
+    }
+
+    /**
+     * Fetches cells into the catalog.
+     */
+    private static class CellLoader {
+        final Client client;
+        final FootprintCatalog catalog;
+        final Clock clock;
+        final double cellSize;
+        final Duration ingestDelay;
+        final int maxFeatures;
+        final Set<Cell> truncated = ConcurrentHashMap.newKeySet();
+
+        CellLoader(Client client, FootprintCatalog catalog, Clock clock, double cellSize, Duration ingestDelay, int maxFeatures) {
+            this.client = client;
+            this.catalog = catalog;
+            this.clock = clock;
+            this.cellSize = cellSize;
+            this.ingestDelay = ingestDelay;
+            this.maxFeatures = maxFeatures;
+        }
+
+        CompletableFuture<Instant> load(Cell cell) {
+            final double buffer = SearchCriteria.BUFFER_SIZE;
+            final Envelope bounds = new Envelope(
+                    cell.x * cellSize - buffer, (cell.x + 1) * cellSize + buffer,
+                    cell.y * cellSize - buffer, (cell.y + 1) * cellSize + buffer);
+            final Instant since = LocalDate.now(clock).minusDays(cell.daysAgo).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+            logger.debug("Search cache miss, fetching cell {} (bounds={}, since={})", cell, bounds, since);
+
+            return client.searchAsync(new SearchCriteria(bounds, since)).thenApply(scenes -> {
+                final List<Scene> features = scenes.features != null ? scenes.features : List.of();
+                if (features.size() >= maxFeatures) {
+                    logger.info("Search cell {} has at least {} scenes, not caching it", cell, maxFeatures);
+                    truncated.add(cell);
+                    catalog.remove(cell);
+                }
+                else {
+                    truncated.remove(cell);
+                    catalog.put(cell, features);
+                }
+                return nextRefresh(cell, clock.instant());
+            });
+        }
+
+        Instant nextRefresh(Cell cell, Instant now) {
+            final double longitude = (cell.x + 0.5) * cellSize;
+            final long overpass = OVERPASS_SECOND_OF_DAY - Math.round(longitude * SECONDS_PER_DEGREE);
+
+            Instant refresh = LocalDate.ofInstant(now, ZoneOffset.UTC).atStartOfDay(ZoneOffset.UTC).toInstant()
+                    .plusSeconds(Math.floorMod(overpass, 86400L))
+                    .plus(ingestDelay);
+            while (!refresh.isAfter(now)) {
+                refresh = refresh.plus(Duration.ofDays(1));
+            }
+            while (refresh.minus(Duration.ofDays(1)).isAfter(now)) {
+                refresh = refresh.minus(Duration.ofDays(1));
+            }
+            return refresh;
+        }
+    }
+
+    private static class OverpassExpiry implements Expiry<Cell, Instant> {
+        private final Clock clock;
+
+        OverpassExpiry(Clock clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public long expireAfterCreate(Cell cell, Instant refreshAt, long currentTime) {
+            return Duration.between(clock.instant(), refreshAt.plus(IDLE_EXPIRY)).toNanos();
+        }
+
+        @Override
+        public long expireAfterUpdate(Cell cell, Instant refreshAt, long currentTime, long currentDuration) {
+            return expireAfterCreate(cell, refreshAt, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Cell cell, Instant refreshAt, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    static class Cell {
+        final int x;
+        final int y;
+        final int daysAgo;
+
+        Cell(int x, int y, int daysAgo) {
+            this.x = x;
+            this.y = y;
+            this.daysAgo = daysAgo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Cell)) {
+                return false;
+            }
+            Cell other = (Cell) o;
+            return x == other.x && y == other.y && daysAgo == other.daysAgo;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(x, y, daysAgo);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d,%d (days_ago=%d)", x, y, daysAgo);
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package landsatviewer.tiles;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Append-only, memory-mapped segment files holding tile records of the
+ * form (magic, key length, data length, CRC, key, data).  The index is
+ * rebuilt by scanning segments on startup; the first record that fails
+ * its checks marks the end of a segment.  Over budget, the oldest
+ * segment is dropped after tiles read since they were written are
+ * copied forward.
+ */
+@Component
+public class DiskTileStore {
+    private static final Logger logger = LoggerFactory.getLogger(DiskTileStore.class);
+
+    private static final int MAGIC = 0x54494c45;
+    private static final int HEADER_SIZE = 14;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    private final Path directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+
+    private final Map<TileKey, Location> index = new ConcurrentHashMap<>();
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment active;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong compactions = new AtomicLong();
+
+    @Autowired
+    public DiskTileStore(@Value("${TILE_STORE_DIR:}") String directory,
+                         @Value("${TILE_STORE_MAX_BYTES:1073741824}") long maxBytes,
+                         @Value("${TILE_STORE_SEGMENT_BYTES:67108864}") int segmentBytes) throws IOException {
+        this.directory = directory.isEmpty() ? null : Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+
+        if (this.directory == null) {
+            logger.info("Disk tile store disabled");
+            return;
+        }
+
+        Files.createDirectories(this.directory);
+        recover();
+
+        logger.info("Disk tile store enabled (dir={}, max_bytes={}, segment_bytes={}, recovered={})",
+                this.directory, maxBytes, segmentBytes, index.size());
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public ByteBuffer get(TileKey key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        final Location location = index.get(key);
+        if (location == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        location.accessed = true;
+        return location.slice();
+    }
+
+    /**
+     * Returns a tile like {@link #get}, without counting a hit or miss or keeping the tile through compaction.
+     */
+    public ByteBuffer peek(TileKey key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        final Location location = index.get(key);
+        return location != null ? location.slice() : null;
+    }
+
+    public boolean contains(TileKey key) {
+        return isEnabled() && index.containsKey(key);
+    }
+
+    public synchronized void put(TileKey key, byte[] data) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        final byte[] encodedKey = key.toString().getBytes(StandardCharsets.UTF_8);
+        final int recordSize = HEADER_SIZE + encodedKey.length + data.length;
+        if (recordSize > segmentBytes) {
+            return;
+        }
+
+        try {
+            if (active == null || active.remaining() < recordSize) {
+                roll();
+            }
+        }
+        catch (IOException e) {
+            logger.error("Could not allocate tile segment: {}", e.getMessage(), e);
+            return;
+        }
+
+        append(key, encodedKey, data);
+    }
+
+    public synchronized Map<String, Long> stats() {
+        return Map.of(
+                "hits", hits.get(),
+                "misses", misses.get(),
+                "evictions", evictions.get(),
+                "compactions", compactions.get(),
+                "entries", (long) index.size(),
+                "segments", (long) segments.size(),
+                "max_bytes", maxBytes);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (active != null) {
+            active.buffer.force();
+        }
+    }
+
+    private void append(TileKey key, byte[] encodedKey, byte[] data) {
+        final CRC32 crc = new CRC32();
+        crc.update(encodedKey);
+        crc.update(data);
+
+        final ByteBuffer buffer = active.buffer;
+        final int offset = buffer.position();
+        buffer.putShort(offset + 4, (short) encodedKey.length);
+        buffer.putInt(offset + 6, data.length);
+        buffer.putInt(offset + 10, (int) crc.getValue());
+        buffer.position(offset + HEADER_SIZE);
+        buffer.put(encodedKey);
+        final int dataOffset = buffer.position();
+        buffer.put(data);
+
+        // Writing the magic last means a crash mid-record leaves a gap rather than a valid-looking header
+        buffer.putInt(offset, MAGIC);
+
+        index.put(key, new Location(active, dataOffset, data.length));
+    }
+
+    private void roll() throws IOException {
+        if (active != null) {
+            active.buffer.force();
+        }
+
+        final List<Map.Entry<TileKey, byte[]>> survivors = new ArrayList<>();
+        while (!segments.isEmpty() && (segments.size() + 1L) * segmentBytes > maxBytes) {
+            survivors.addAll(evict(segments.removeFirst()));
+        }
+
+        final long number = segments.isEmpty() ? 1 : segments.getLast().number + 1;
+        active = Segment.open(directory.resolve(String.format("segment-%06d.dat", number)), number, segmentBytes);
+        segments.addLast(active);
+
+        for (Map.Entry<TileKey, byte[]> survivor : survivors) {
+            final byte[] encodedKey = survivor.getKey().toString().getBytes(StandardCharsets.UTF_8);
+            if (active.remaining() < HEADER_SIZE + encodedKey.length + survivor.getValue().length) {
+                evictions.incrementAndGet();
+                continue;
+            }
+            append(survivor.getKey(), encodedKey, survivor.getValue());
+            compactions.incrementAndGet();
+        }
+    }
+
+    private List<Map.Entry<TileKey, byte[]>> evict(Segment segment) {
+        final List<Map.Entry<TileKey, byte[]>> survivors = new ArrayList<>();
+
+        index.entrySet().removeIf(entry -> {
+            final Location location = entry.getValue();
+            if (location.segment != segment) {
+                return false;
+            }
+            if (location.accessed) {
+                final byte[] data = new byte[location.length];
+                location.slice().get(data);
+                survivors.add(Map.entry(entry.getKey(), data));
+            }
+            else {
+                evictions.incrementAndGet();
+            }
+            return true;
+        });
+
+        // Readers may still hold slices of this segment; the mapping outlives the file until it is collected
+        try {
+            Files.deleteIfExists(segment.path);
+        }
+        catch (IOException e) {
+            logger.error("Could not delete tile segment {}: {}", segment.path, e.getMessage(), e);
+        }
+
+        return survivors;
+    }
+
+    private void recover() throws IOException {
+        final List<Path> paths;
+        try (Stream<Path> listing = Files.list(directory)) {
+            paths = listing
+                    .filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path path : paths) {
+            final Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+            matcher.matches();
+
+            final long size = Files.size(path);
+            if (size > Integer.MAX_VALUE || size < HEADER_SIZE) {
+                logger.warn("Discarding unusable tile segment {}", path);
+                Files.delete(path);
+                continue;
+            }
+
+            final Segment segment = Segment.open(path, Long.parseLong(matcher.group(1)), (int) size);
+            segment.buffer.position(scan(segment));
+            segments.addLast(segment);
+        }
+
+        if (!segments.isEmpty() && segments.getLast().buffer.capacity() == segmentBytes) {
+            active = segments.getLast();
+            clearTail(active);
+        }
+    }
+
+    private int scan(Segment segment) {
+        final ByteBuffer buffer = segment.buffer;
+
+        int offset = 0;
+        while (offset + HEADER_SIZE <= buffer.capacity() && buffer.getInt(offset) == MAGIC) {
+            final int keyLength = buffer.getShort(offset + 4);
+            final int dataLength = buffer.getInt(offset + 6);
+            final int checksum = buffer.getInt(offset + 10);
+            final int end = offset + HEADER_SIZE + keyLength + dataLength;
+            if (keyLength <= 0 || dataLength < 0 || end > buffer.capacity() || end < offset) {
+                break;
+            }
+
+            final byte[] encodedKey = new byte[keyLength];
+            buffer.position(offset + HEADER_SIZE);
+            buffer.get(encodedKey);
+
+            final CRC32 crc = new CRC32();
+            crc.update(encodedKey);
+            crc.update(buffer.duplicate().limit(end).position(offset + HEADER_SIZE + keyLength));
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            final TileKey key = TileKey.parse(new String(encodedKey, StandardCharsets.UTF_8));
+            if (key != null) {
+                index.put(key, new Location(segment, offset + HEADER_SIZE + keyLength, dataLength));
+            }
+            offset = end;
+        }
+
+        return offset;
+    }
+
+    private void clearTail(Segment segment) {
+        final ByteBuffer buffer = segment.buffer;
+
+        boolean torn = false;
+        for (int i = buffer.position(); i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+                torn = true;
+            }
+        }
+
+        if (torn) {
+            logger.warn("Discarded torn records in tile segment {} after offset {}", segment.path, buffer.position());
+        }
+    }
+
+    private static class Segment {
+        final Path path;
+        final long number;
+        final MappedByteBuffer buffer;
+
+        private Segment(Path path, long number, MappedByteBuffer buffer) {
+            this.path = path;
+            this.number = number;
+            this.buffer = buffer;
+        }
+
+        static Segment open(Path path, long number, int size) throws IOException {
+            final File file = path.toFile();
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                 FileChannel channel = raf.getChannel()) {
+                return new Segment(path, number, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+            }
+        }
+
+        int remaining() {
+            return buffer.remaining();
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final int offset;
+        final int length;
+        volatile boolean accessed;
+
+        Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        ByteBuffer slice() {
+            return segment.buffer.duplicate().limit(offset + length).position(offset).slice();
+        }
+    }
+}
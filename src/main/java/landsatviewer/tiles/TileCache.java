@@ -0,0 +1,139 @@
+package landsatviewer.tiles;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Recently served tiles.  Tiles older than the TTL are no longer served
+ * from {@link #get}, but are kept for a further stale period as a fallback
+ * for when Planet cannot be reached.
+ */
+@Component
+public class TileCache {
+    private static final Logger logger = LoggerFactory.getLogger(TileCache.class);
+
+    private final Cache<TileKey, Entry> cache;
+    private final long maxBytes;
+    private final long ttl;
+    private final Ticker ticker;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+
+    @Autowired
+    public TileCache(@Value("${TILE_CACHE_MAX_BYTES:67108864}") long maxBytes,
+                     @Value("${TILE_CACHE_TTL:86400}") long ttlSeconds,
+                     @Value("${TILE_CACHE_STALE_TTL:604800}") long staleTtlSeconds) {
+        this(maxBytes, Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(staleTtlSeconds), Ticker.systemTicker(), ForkJoinPool.commonPool());
+    }
+
+    TileCache(long maxBytes, Duration ttl, Duration staleTtl, Ticker ticker, Executor executor) {
+        logger.info("Tile cache enabled (max_bytes={}, ttl={}, stale_ttl={})", maxBytes, ttl, staleTtl);
+
+        this.maxBytes = maxBytes;
+        this.ttl = ttl.toNanos();
+        this.ticker = ticker;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((TileKey key, Entry entry) -> entry.data.length)
+                .expireAfterWrite(ttl.plus(staleTtl))
+                .ticker(ticker)
+                .executor(executor)
+                .recordStats()
+                .build();
+    }
+
+    public byte[] get(TileKey key) {
+        final Entry entry = cache.asMap().get(key);
+        if (entry == null || isStale(entry)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.data;
+    }
+
+    /**
+     * Returns a fresh tile like {@link #get}, without counting a hit or miss.
+     */
+    public byte[] peek(TileKey key) {
+        final Entry entry = cache.asMap().get(key);
+        return entry == null || isStale(entry) ? null : entry.data;
+    }
+
+    /**
+     * Returns a tile even if it is past its TTL, for serving while Planet is unavailable.
+     */
+    public byte[] getStale(TileKey key) {
+        final Entry entry = cache.asMap().get(key);
+        if (entry == null) {
+            return null;
+        }
+        staleHits.increment();
+        return entry.data;
+    }
+
+    public boolean contains(TileKey key) {
+        final Entry entry = cache.asMap().get(key);
+        return entry != null && !isStale(entry);
+    }
+
+    public void put(TileKey key, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+        cache.put(key, new Entry(data, ticker.read()));
+    }
+
+    /**
+     * The keys of up to {@code limit} fresh tiles, those the cache would keep longest first.
+     */
+    public List<TileKey> hottest(int limit) {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.hottest(limit).entrySet().stream()
+                        .filter(entry -> !isStale(entry.getValue()))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList()))
+                .orElse(List.of());
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of(
+                "hits", hits.sum(),
+                "misses", misses.sum(),
+                "stale_hits", staleHits.sum(),
+                "evictions", cache.stats().evictionCount(),
+                "entries", cache.estimatedSize(),
+                "bytes", cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L),
+                "max_bytes", maxBytes);
+    }
+
+    private boolean isStale(Entry entry) {
+        return ticker.read() - entry.written >= ttl;
+    }
+
+    private static class Entry {
+        final byte[] data;
+        final long written;
+
+        Entry(byte[] data, long written) {
+            this.data = data;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package landsatviewer.tiles;
+
+import java.util.Objects;
+
+public final class TileKey {
+    public final String sceneId;
+    public final int z;
+    public final int x;
+    public final int y;
+
+    public TileKey(String sceneId, int z, int x, int y) {
+        this.sceneId = sceneId;
+        this.z = z;
+        this.x = x;
+        this.y = y;
+    }
+
+    public static TileKey parse(String value) {
+        final String[] parts = value.split("/");
+        if (parts.length != 4) {
+            return null;
+        }
+
+        try {
+            return new TileKey(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) o;
+        return z == other.z && x == other.x && y == other.y && sceneId.equals(other.sceneId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sceneId, z, x, y);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s/%d/%d/%d", sceneId, z, x, y);
+    }
+}
@@ -0,0 +1,149 @@
+package landsatviewer.tiles;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.TileStream;
+
+/**
+ * Finds a tile wherever it is cheapest to get: the tile cache, the disk
+ * store, synthesis from tiles already held, the instance that owns it,
+ * and finally Planet.  Every endpoint that serves tiles goes through
+ * here, so they all share the caches, synthesis and ownership.
+ *
+ * Tiles fetched from Planet are kept in both caches once they have been
+ * read in full.  Tiles fetched from their owner are not kept at all: the
+ * owner holds them, and a copy on every instance that asks would
+ * multiply the cluster's tile memory by its size.
+ */
+@Component
+public class TileLoader {
+    private final Client client;
+    private final TileCache tileCache;
+    private final DiskTileStore tileStore;
+    private final TilePeers peers;
+    private final TileSynthesizer synthesizer;
+
+    @Autowired
+    public TileLoader(Client client,
+                      TileCache tileCache,
+                      DiskTileStore tileStore,
+                      TilePeers peers,
+                      TileSynthesizer synthesizer) {
+        this.client = client;
+        this.tileCache = tileCache;
+        this.tileStore = tileStore;
+        this.peers = peers;
+        this.synthesizer = synthesizer;
+    }
+
+    /**
+     * A tile from the tile cache or the disk store, or null if neither holds it.
+     */
+    public ByteBuffer getHeld(TileKey key) {
+        final byte[] tile = tileCache.get(key);
+        if (tile != null) {
+            return ByteBuffer.wrap(tile);
+        }
+        return tileStore.get(key);
+    }
+
+    /**
+     * Opens a tile that is not held, streaming it if it comes from Planet.  Fails with
+     * {@link TilePeers.OwnerError} if the instance that owns the tile could not get it either.
+     */
+    public CompletableFuture<TileStream> fetch(TileKey key) {
+        return fetch(key, false);
+    }
+
+    /**
+     * The whole tile, from wherever it is held or can be fetched.
+     */
+    public CompletableFuture<byte[]> load(TileKey key) {
+        final ByteBuffer held = getHeld(key);
+        if (held != null) {
+            final byte[] data = new byte[held.remaining()];
+            held.duplicate().get(data);
+            return CompletableFuture.completedFuture(data);
+        }
+        return fetch(key, true).thenCompose(TileStream::body);
+    }
+
+    /**
+     * Opens a tile straight from Planet.  Instances serve the tiles they own to their peers this way, so that a tile
+     * never passes through more than two instances.
+     */
+    public CompletableFuture<TileStream> fetchFromPlanet(TileKey key) {
+        return fetchFromPlanet(key, false);
+    }
+
+    private CompletableFuture<TileStream> fetch(TileKey key, boolean whole) {
+        if (synthesizer.isOverzoomed(key)) {
+            return load(synthesizer.ancestor(key))
+                    .thenCompose(data -> synthesizer.overzoom(key, data))
+                    .thenApply(data -> TileStream.buffered(data, null));
+        }
+
+        final CompletableFuture<byte[]> underzoomed = synthesizer.underzoom(key);
+        if (underzoomed != null) {
+            return underzoomed
+                    .handle((data, e) -> e == null
+                            ? CompletableFuture.completedFuture(TileStream.buffered(data, null))
+                            : fetchFromOwner(key, whole))
+                    .thenCompose(Function.identity());
+        }
+
+        return fetchFromOwner(key, whole);
+    }
+
+    private CompletableFuture<TileStream> fetchFromOwner(TileKey key, boolean whole) {
+        final String owner = peers.owner(key);
+        if (owner == null) {
+            return fetchFromPlanet(key, whole);
+        }
+
+        return peers.fetch(owner, key)
+                .handle((data, e) -> {
+                    if (e == null) {
+                        return CompletableFuture.completedFuture(TileStream.buffered(data, null));
+                    }
+                    if (unwrap(e) instanceof TilePeers.OwnerError) {
+                        return CompletableFuture.<TileStream>failedFuture(unwrap(e));
+                    }
+                    // The owner is down or unreachable, so this instance goes to Planet itself
+                    return fetchFromPlanet(key, whole);
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<TileStream> fetchFromPlanet(TileKey key, boolean whole) {
+        if (whole) {
+            return client.fetchTileDataAsync(key.sceneId, key.x, key.y, key.z)
+                    .thenApply(data -> {
+                        keep(key, data);
+                        return TileStream.buffered(data, null);
+                    });
+        }
+
+        return client.fetchTileAsync(key.sceneId, key.x, key.y, key.z)
+                .thenApply(stream -> {
+                    stream.body().thenAccept(data -> keep(key, data));
+                    return stream;
+                });
+    }
+
+    private void keep(TileKey key, byte[] data) {
+        tileCache.put(key, data);
+        tileStore.put(key, data);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
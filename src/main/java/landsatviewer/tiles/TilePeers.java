@@ -0,0 +1,260 @@
+package landsatviewer.tiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shares tiles between instances.  Every tile has an owner among the
+ * configured peers, chosen by consistent hashing so that adding or
+ * removing an instance only moves the tiles it owns.  An instance asks a
+ * tile's owner for it over {@code /internal/tiles} rather than going to
+ * Planet, so each tile is fetched from Planet and cached once across the
+ * cluster: only the owner keeps it.
+ *
+ * The JDK client used to reach peers shares the connection pool settings
+ * {@link landsatviewer.planet.PlanetTransport} sets for the whole JVM,
+ * so it is only built once they are in place.
+ */
+@Component
+@DependsOn("planetTransport")
+public class TilePeers {
+    private static final Logger logger = LoggerFactory.getLogger(TilePeers.class);
+
+    public static final String PATH = "/internal/tiles";
+    public static final String SECRET_HEADER = "X-Tile-Peer-Secret";
+
+    private static final int VIRTUAL_NODES = 128;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String self;
+    private final String secret;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+
+    // Ring positions, sorted, and the peer owning the arc ending at each
+    private final long[] positions;
+    private final String[] owners;
+
+    private final AtomicLong peerHits = new AtomicLong();
+    private final AtomicLong peerFailures = new AtomicLong();
+    private final AtomicLong served = new AtomicLong();
+
+    @Autowired
+    public TilePeers(@Value("${TILE_PEERS:}") String peers,
+                     @Value("${TILE_PEER_SELF:}") String self,
+                     @Value("${TILE_PEER_SECRET:}") String secret,
+                     @Value("${TILE_PEER_TIMEOUT:2000}") long timeoutMillis) {
+        this(parse(peers), self, secret, Duration.ofMillis(timeoutMillis));
+    }
+
+    TilePeers(List<String> peers, String self, String secret, Duration timeout) {
+        this.self = normalize(self);
+        this.secret = secret;
+        this.timeout = timeout;
+
+        if (peers.isEmpty()) {
+            logger.info("Tile peers disabled");
+            this.httpClient = null;
+            this.positions = new long[0];
+            this.owners = new String[0];
+            return;
+        }
+
+        if (!peers.contains(this.self)) {
+            throw new IllegalArgumentException(String.format("TILE_PEER_SELF '%s' is not one of TILE_PEERS %s", self, peers));
+        }
+        logger.info("Tile peers enabled (self={}, peers={}, timeout={})", this.self, peers, timeout);
+
+        this.httpClient = HttpClient.newBuilder().connectTimeout(timeout).build();
+
+        final long[][] nodes = new long[peers.size() * VIRTUAL_NODES][];
+        for (int p = 0; p < peers.size(); p++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                nodes[p * VIRTUAL_NODES + v] = new long[]{hash(peers.get(p) + "#" + v), p};
+            }
+        }
+        Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.positions = new long[nodes.length];
+        this.owners = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            positions[i] = nodes[i][0];
+            owners[i] = peers.get((int) nodes[i][1]);
+        }
+    }
+
+    public static TilePeers standalone() {
+        return new TilePeers(List.of(), "", "", Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return owners.length > 0;
+    }
+
+    /**
+     * The base URL of the instance that owns a tile, or null if it is this one.
+     */
+    public String owner(TileKey key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(positions, hash(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        final String owner = owners[index == positions.length ? 0 : index];
+        return owner.equals(self) ? null : owner;
+    }
+
+    public boolean isOwner(TileKey key) {
+        return owner(key) == null;
+    }
+
+    /**
+     * Asks a tile's owner for it.  Fails with {@link OwnerError} if the owner answered but could not get the tile
+     * from Planet either, and with any other exception if the owner could not be reached.
+     */
+    public CompletableFuture<byte[]> fetch(String owner, TileKey key) {
+        final HttpRequest.Builder request = HttpRequest
+                .newBuilder(URI.create(String.format("%s%s/%s/%d/%d/%d.png", owner, PATH, key.sceneId, key.z, key.x, key.y)))
+                .timeout(timeout)
+                .GET();
+        if (!secret.isEmpty()) {
+            request.header(SECRET_HEADER, secret);
+        }
+
+        return httpClient.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, e) -> {
+                    if (e != null) {
+                        peerFailures.incrementAndGet();
+                        logger.warn("Could not reach tile peer {}: {}", owner, e.getMessage());
+                        throw new CompletionException(e);
+                    }
+                    if (response.statusCode() == 200) {
+                        peerHits.incrementAndGet();
+                        return response.body();
+                    }
+                    if (response.statusCode() == 502 || response.statusCode() == 503) {
+                        throw new CompletionException(new OwnerError(response.statusCode()));
+                    }
+                    peerFailures.incrementAndGet();
+                    logger.warn("Tile peer {} answered HTTP {} for {}", owner, response.statusCode(), key);
+                    throw new CompletionException(new IllegalStateException("tile peer answered HTTP " + response.statusCode()));
+                });
+    }
+
+    /**
+     * Whether a request to the internal endpoint comes from a peer.
+     */
+    public boolean accepts(String presentedSecret) {
+        if (!isEnabled()) {
+            return false;
+        }
+        if (secret.isEmpty()) {
+            return true;
+        }
+        return presentedSecret != null
+                && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void served() {
+        served.incrementAndGet();
+    }
+
+    public Map<String, Long> stats() {
+        if (!isEnabled()) {
+            return Map.of();
+        }
+        return Map.of(
+                "peer_hits", peerHits.get(),
+                "peer_failures", peerFailures.get(),
+                "served_to_peers", served.get());
+    }
+
+    static long hash(TileKey key) {
+        long h = fnv(FNV_OFFSET, key.sceneId);
+        h = fnv(h, key.z);
+        h = fnv(h, key.x);
+        h = fnv(h, key.y);
+        return mix(h);
+    }
+
+    static long hash(String value) {
+        return mix(fnv(FNV_OFFSET, value));
+    }
+
+    private static long fnv(long h, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long fnv(long h, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            h = (h ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    // SplitMix64's finalizer, so that neighbouring tiles land far apart on the ring
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    private static List<String> parse(String peers) {
+        final Set<String> urls = new LinkedHashSet<>();
+        for (String peer : peers.split(",")) {
+            if (!peer.isBlank()) {
+                urls.add(normalize(peer));
+            }
+        }
+        return new ArrayList<>(urls);
+    }
+
+    private static String normalize(String url) {
+        final String trimmed = url.trim();
+        return trimmed.endsWith("/") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+    }
+
+    /**
+     * The owner was reached but could not get the tile from Planet.
+     */
+    public static class OwnerError extends Exception {
+        private final int status;
+
+        OwnerError(int status) {
+            super(String.format("tile owner answered HTTP %d", status));
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
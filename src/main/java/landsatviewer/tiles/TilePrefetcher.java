@@ -0,0 +1,339 @@
+package landsatviewer.tiles;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.TileStream;
+
+/**
+ * Warms the tile cache with the tiles a map client is likely to ask for
+ * next: the neighbours of each requested tile, and its children once the
+ * client has been seen zooming in on that scene.  Tiles beyond the maximum
+ * zoom are never fetched; their ancestor is prefetched instead.
+ *
+ * Prefetches run at low priority on a few threads of their own, newest
+ * first, within a per-scene budget per minute.  Their concurrency is
+ * halved whenever upstream latency exceeds the target and grows back by
+ * one per fast response; an upstream error pauses prefetching with
+ * exponential backoff.
+ */
+@Component
+public class TilePrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(TilePrefetcher.class);
+
+    private static final int MAX_QUEUED = 256;
+    private static final int MAX_ZOOM = 18;
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(1);
+
+    private final Client client;
+    private final TileCache tileCache;
+    private final DiskTileStore tileStore;
+    private final TilePeers peers;
+    private final TileSynthesizer synthesizer;
+    private final int maxConcurrency;
+    private final int sceneBudget;
+    private final long maxLatencyNanos;
+    private final Duration initialBackoff;
+    private final LongSupplier nanoTime;
+    private final ScheduledExecutorService executor;
+
+    private final Deque<TileKey> queue = new ArrayDeque<>();
+    private final Set<TileKey> pending = ConcurrentHashMap.newKeySet();
+    private final Cache<String, SceneActivity> scenes;
+    private final Cache<TileKey, Boolean> prefetched;
+    private int allowed;
+    private int active;
+    private Duration backoff;
+    private long pausedUntil;
+    private boolean drainScheduled;
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+
+    @Autowired
+    public TilePrefetcher(Client client,
+                          TileCache tileCache,
+                          DiskTileStore tileStore,
+                          TilePeers peers,
+                          TileSynthesizer synthesizer,
+                          @Value("${PREFETCH_CONCURRENCY:2}") int maxConcurrency,
+                          @Value("${PREFETCH_SCENE_BUDGET:64}") int sceneBudget,
+                          @Value("${PREFETCH_MAX_LATENCY:1000}") long maxLatencyMillis) {
+        this(client, tileCache, tileStore, peers, synthesizer, maxConcurrency, sceneBudget, Duration.ofMillis(maxLatencyMillis),
+                Duration.ofSeconds(1), System::nanoTime, maxConcurrency > 0 ? newExecutor(maxConcurrency) : null);
+    }
+
+    TilePrefetcher(Client client,
+                   TileCache tileCache,
+                   DiskTileStore tileStore,
+                   TilePeers peers,
+                   TileSynthesizer synthesizer,
+                   int maxConcurrency,
+                   int sceneBudget,
+                   Duration maxLatency,
+                   Duration initialBackoff,
+                   LongSupplier nanoTime,
+                   ScheduledExecutorService executor) {
+        this.client = client;
+        this.tileCache = tileCache;
+        this.tileStore = tileStore;
+        this.peers = peers;
+        this.synthesizer = synthesizer;
+        this.maxConcurrency = maxConcurrency;
+        this.sceneBudget = sceneBudget;
+        this.maxLatencyNanos = maxLatency.toNanos();
+        this.initialBackoff = initialBackoff;
+        this.nanoTime = nanoTime;
+        this.executor = executor;
+        this.allowed = maxConcurrency;
+        this.backoff = initialBackoff;
+        this.pausedUntil = nanoTime.getAsLong();
+        this.scenes = Caffeine.newBuilder().maximumSize(1000).expireAfterAccess(Duration.ofMinutes(10)).build();
+        this.prefetched = Caffeine.newBuilder().maximumSize(MAX_QUEUED * 16L).expireAfterWrite(Duration.ofMinutes(10)).build();
+
+        if (maxConcurrency <= 0) {
+            logger.info("Tile prefetch disabled");
+        }
+        else {
+            logger.info("Tile prefetch enabled (concurrency={}, scene_budget={}, max_latency={})",
+                    maxConcurrency, sceneBudget, maxLatency);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxConcurrency > 0;
+    }
+
+    /**
+     * Records a client request for a tile and queues the tiles expected to follow it.
+     */
+    public void observe(TileKey key) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        if (prefetched.asMap().remove(key) != null) {
+            hits.incrementAndGet();
+        }
+
+        final SceneActivity activity = scenes.get(key.sceneId, id -> new SceneActivity());
+        final List<TileKey> predicted = new ArrayList<>();
+        final boolean zoomingIn = activity.observe(key.z);
+        final int maxZoom = synthesizer.getMaxZoom() > 0 ? synthesizer.getMaxZoom() : MAX_ZOOM;
+
+        addNeighbours(key, predicted);
+        if (zoomingIn && key.z < maxZoom) {
+            addChildren(key, predicted);
+        }
+
+        // Overzoomed tiles are cropped from their ancestor, which neighbouring tiles mostly share
+        final Set<TileKey> candidates = new LinkedHashSet<>(predicted.size());
+        for (TileKey candidate : predicted) {
+            candidates.add(synthesizer.isOverzoomed(candidate) ? synthesizer.ancestor(candidate) : candidate);
+        }
+
+        final List<TileKey> accepted = new ArrayList<>(candidates.size());
+        for (TileKey candidate : candidates) {
+            // Another instance owns this tile and will fetch it if it is ever asked for
+            if (!peers.isOwner(candidate)) {
+                continue;
+            }
+            if (tileCache.contains(candidate) || tileStore.contains(candidate) || prefetched.asMap().containsKey(candidate)) {
+                continue;
+            }
+            if (!activity.spend(nanoTime.getAsLong(), sceneBudget)) {
+                break;
+            }
+            if (pending.add(candidate)) {
+                accepted.add(candidate);
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            enqueue(accepted);
+        }
+    }
+
+    public synchronized Map<String, Number> stats() {
+        final long total = completed.get();
+        return Map.of(
+                "queued", queue.size(),
+                "active", active,
+                "concurrency", allowed,
+                "completed", total,
+                "failed", failed.get(),
+                "dropped", dropped.get(),
+                "hits", hits.get(),
+                "hit_ratio", total == 0 ? 0.0 : (double) hits.get() / total);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private synchronized void enqueue(List<TileKey> keys) {
+        // Newest first: by the time older predictions are reached the client may have moved on
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            queue.addFirst(keys.get(i));
+        }
+        while (queue.size() > MAX_QUEUED) {
+            pending.remove(queue.removeLast());
+            dropped.incrementAndGet();
+        }
+        drain();
+    }
+
+    private synchronized void drain() {
+        final long now = nanoTime.getAsLong();
+        if (now - pausedUntil < 0) {
+            if (!drainScheduled) {
+                drainScheduled = true;
+                executor.schedule(this::resume, pausedUntil - now, TimeUnit.NANOSECONDS);
+            }
+            return;
+        }
+
+        while (active < allowed && !queue.isEmpty()) {
+            final TileKey key = queue.removeFirst();
+            active++;
+            executor.execute(() -> prefetch(key));
+        }
+    }
+
+    private synchronized void resume() {
+        drainScheduled = false;
+        drain();
+    }
+
+    private void prefetch(TileKey key) {
+        final long start = nanoTime.getAsLong();
+        boolean success = false;
+        try (TileStream stream = client.fetchTile(key.sceneId, key.x, key.y, key.z)) {
+            final byte[] data = stream.readAllBytes();
+            tileCache.put(key, data);
+            tileStore.put(key, data);
+            prefetched.put(key, Boolean.TRUE);
+            completed.incrementAndGet();
+            success = true;
+        }
+        catch (Exception e) {
+            failed.incrementAndGet();
+            logger.debug("Prefetch failed for tile {}: {}", key, e.getMessage());
+        }
+        finally {
+            pending.remove(key);
+            settle(success, nanoTime.getAsLong() - start);
+        }
+    }
+
+    private synchronized void settle(boolean success, long latencyNanos) {
+        active--;
+
+        if (!success) {
+            allowed = 1;
+            pausedUntil = nanoTime.getAsLong() + backoff.toNanos();
+            logger.debug("Pausing tile prefetch for {}", backoff);
+            backoff = backoff.multipliedBy(2).compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff.multipliedBy(2);
+        }
+        else if (latencyNanos > maxLatencyNanos) {
+            allowed = Math.max(1, allowed / 2);
+            backoff = initialBackoff;
+        }
+        else {
+            allowed = Math.min(maxConcurrency, allowed + 1);
+            backoff = initialBackoff;
+        }
+
+        drain();
+    }
+
+    private static void addNeighbours(TileKey key, List<TileKey> keys) {
+        final int size = 1 << key.z;
+        for (int dy = -1; dy <= 1; dy++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                final int x = key.x + dx;
+                final int y = key.y + dy;
+                if ((dx != 0 || dy != 0) && x >= 0 && y >= 0 && x < size && y < size) {
+                    keys.add(new TileKey(key.sceneId, key.z, x, y));
+                }
+            }
+        }
+    }
+
+    private static void addChildren(TileKey key, List<TileKey> keys) {
+        for (int dy = 0; dy <= 1; dy++) {
+            for (int dx = 0; dx <= 1; dx++) {
+                keys.add(new TileKey(key.sceneId, key.z + 1, key.x * 2 + dx, key.y * 2 + dy));
+            }
+        }
+    }
+
+    private static ScheduledExecutorService newExecutor(int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "prefetch-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private static class SceneActivity {
+        private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+        private int lastZoom = -1;
+        private boolean zoomingIn;
+        private long windowStart = Long.MIN_VALUE;
+        private int spent;
+
+        synchronized boolean observe(int zoom) {
+            if (lastZoom >= 0 && zoom != lastZoom) {
+                zoomingIn = zoom > lastZoom;
+            }
+            lastZoom = zoom;
+            return zoomingIn;
+        }
+
+        synchronized boolean spend(long now, int budget) {
+            if (windowStart == Long.MIN_VALUE || now - windowStart >= WINDOW_NANOS) {
+                windowStart = now;
+                spent = 0;
+            }
+            if (spent >= budget) {
+                return false;
+            }
+            spent++;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package landsatviewer.tiles;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Derives tiles from ones already held rather than fetching them from
+ * Planet.  Tiles beyond the maximum zoom are cropped from their ancestor
+ * at that zoom and scaled up, and a tile whose four children are all
+ * cached is scaled down from them.  Synthesized tiles are cached like
+ * fetched ones.  Tiles of several scenes can also be layered into one,
+ * each pixel taken from the first scene that covers it.
+ *
+ * Images are decoded, drawn and encoded on a small pool of threads with
+ * a bounded queue; work beyond it is rejected rather than queued.  The
+ * canvases drawn into and the buffers encoded into are reused.
+ */
+@Component
+public class TileSynthesizer {
+    private static final Logger logger = LoggerFactory.getLogger(TileSynthesizer.class);
+
+    private static final int TILE_SIZE = 256;
+
+    private final TileCache tileCache;
+    private final DiskTileStore tileStore;
+    private final int maxZoom;
+    private final ExecutorService executor;
+    private final BlockingQueue<Buffers> buffers;
+
+    private final AtomicLong overzoomed = new AtomicLong();
+    private final AtomicLong underzoomed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong layered = new AtomicLong();
+
+    @Autowired
+    public TileSynthesizer(TileCache tileCache,
+                           DiskTileStore tileStore,
+                           @Value("${TILE_MAX_ZOOM:0}") int maxZoom,
+                           @Value("${TILE_SYNTHESIS_THREADS:2}") int threads,
+                           @Value("${TILE_SYNTHESIS_QUEUE:64}") int queueSize) {
+        this(tileCache, tileStore, maxZoom, threads, threads > 0 ? newExecutor(threads, queueSize) : null);
+    }
+
+    TileSynthesizer(TileCache tileCache, DiskTileStore tileStore, int maxZoom, int threads, ExecutorService executor) {
+        this.tileCache = tileCache;
+        this.tileStore = tileStore;
+        this.maxZoom = maxZoom;
+        this.executor = executor;
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, threads));
+
+        logger.info("Tile synthesis {} (maxZoom={}, threads={})", executor != null ? "enabled" : "disabled", maxZoom, threads);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Whether a tile lies beyond the maximum zoom and must be cropped from its ancestor.
+     */
+    public boolean isOverzoomed(TileKey key) {
+        return executor != null && maxZoom > 0 && key.z > maxZoom;
+    }
+
+    /**
+     * The deepest zoom fetched from Planet, or 0 if tiles are never overzoomed.
+     */
+    public int getMaxZoom() {
+        return executor != null ? maxZoom : 0;
+    }
+
+    /**
+     * The ancestor at the maximum zoom that an overzoomed tile is cropped from.
+     */
+    public TileKey ancestor(TileKey key) {
+        final int levels = key.z - maxZoom;
+        return new TileKey(key.sceneId, maxZoom, key.x >> levels, key.y >> levels);
+    }
+
+    /**
+     * Crops a tile out of its ancestor's image and scales it up.
+     */
+    public CompletableFuture<byte[]> overzoom(TileKey key, byte[] ancestor) {
+        final int levels = key.z - maxZoom;
+        final int mask = (1 << levels) - 1;
+        return submit(key, overzoomed, buffers -> {
+            final BufferedImage source = buffers.decode(ancestor);
+            final double scale = (double) (1 << levels) * TILE_SIZE / source.getWidth();
+            final double size = (double) source.getWidth() / (1 << levels);
+
+            final AffineTransform transform = AffineTransform.getScaleInstance(scale, scale);
+            transform.translate(-(key.x & mask) * size, -(key.y & mask) * size);
+            buffers.graphics.drawImage(source, transform, null);
+            return buffers.encode();
+        });
+    }
+
+    /**
+     * Scales a tile down from its four children, or returns null if they are not all cached.
+     */
+    public CompletableFuture<byte[]> underzoom(TileKey key) {
+        if (executor == null) {
+            return null;
+        }
+
+        final byte[][] children = new byte[4][];
+        for (int i = 0; i < 4; i++) {
+            children[i] = getCached(new TileKey(key.sceneId, key.z + 1, key.x * 2 + (i & 1), key.y * 2 + (i >> 1)));
+            if (children[i] == null) {
+                return null;
+            }
+        }
+
+        return submit(key, underzoomed, buffers -> {
+            final int half = TILE_SIZE / 2;
+            for (int i = 0; i < 4; i++) {
+                buffers.graphics.drawImage(buffers.decode(children[i]), (i & 1) * half, (i >> 1) * half, half, half, null);
+            }
+            return buffers.encode();
+        });
+    }
+
+    /**
+     * Starts an empty composite tile.  Without a synthesis pool its work runs on the calling thread.
+     */
+    public Composite composite() {
+        return new Composite();
+    }
+
+    public Map<String, Long> stats() {
+        return Map.of(
+                "overzoomed", overzoomed.get(),
+                "underzoomed", underzoomed.get(),
+                "layered", layered.get(),
+                "rejected", rejected.get(),
+                "failed", failed.get());
+    }
+
+    private CompletableFuture<byte[]> submit(TileKey key, AtomicLong counter, Function<Buffers, byte[]> work) {
+        return run(work).whenComplete((data, e) -> {
+            if (e != null) {
+                failed.incrementAndGet();
+                logger.warn("Could not synthesize tile {}: {}", key, e.getMessage());
+                return;
+            }
+            counter.incrementAndGet();
+            tileCache.put(key, data);
+            tileStore.put(key, data);
+        });
+    }
+
+    private <T> CompletableFuture<T> run(Function<Buffers, T> work) {
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                Buffers pooled = buffers.poll();
+                if (pooled == null) {
+                    pooled = new Buffers();
+                }
+                try {
+                    return work.apply(pooled);
+                }
+                finally {
+                    buffers.offer(pooled);
+                }
+            }, executor != null ? executor : Runnable::run);
+        }
+        catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Looking for tiles to synthesize from is not a request for them, so it leaves the hit ratios alone
+    private byte[] getCached(TileKey key) {
+        final byte[] tile = tileCache.peek(key);
+        if (tile != null) {
+            return tile;
+        }
+
+        final ByteBuffer stored = tileStore.peek(key);
+        if (stored == null) {
+            return null;
+        }
+        final byte[] data = new byte[stored.remaining()];
+        stored.duplicate().get(data);
+        return data;
+    }
+
+    /**
+     * A tile built from layers in priority order, where each pixel comes from the first layer that is not transparent
+     * there.  Layers must be added one at a time.
+     */
+    public class Composite {
+        private final int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+        private int covered;
+
+        /**
+         * Fills the pixels no earlier layer covered, completing with whether every pixel is now covered.
+         */
+        public CompletableFuture<Boolean> add(byte[] tile) {
+            return run(buffers -> {
+                buffers.graphics.drawImage(buffers.decode(tile), 0, 0, TILE_SIZE, TILE_SIZE, null);
+                final int[] layer = buffers.pixels();
+                for (int i = 0; i < pixels.length; i++) {
+                    if (pixels[i] >>> 24 == 0 && layer[i] >>> 24 != 0) {
+                        pixels[i] = layer[i];
+                        covered++;
+                    }
+                }
+                layered.incrementAndGet();
+                return covered == pixels.length;
+            });
+        }
+
+        public boolean isEmpty() {
+            return covered == 0;
+        }
+
+        public CompletableFuture<byte[]> encode() {
+            return run(buffers -> {
+                System.arraycopy(pixels, 0, buffers.pixels(), 0, pixels.length);
+                return buffers.encode();
+            });
+        }
+    }
+
+    private static ExecutorService newExecutor(int threads, int queueSize) {
+        final AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "tile-synthesis-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // A canvas whose contents each draw replaces, the buffer it is encoded into, and a PNG reader and writer.
+    // Streams are cached in memory; ImageIO's default is a temporary file.
+    private static class Buffers {
+        final BufferedImage canvas = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = canvas.createGraphics();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        final ImageReader reader = ImageIO.getImageReadersByFormatName("png").next();
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+
+        Buffers() {
+            graphics.setComposite(AlphaComposite.Src);
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+
+        int[] pixels() {
+            return ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        }
+
+        BufferedImage decode(byte[] data) {
+            try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+                reader.setInput(in, true, true);
+                return reader.read(0);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            finally {
+                reader.setInput(null);
+            }
+        }
+
+        byte[] encode() {
+            out.reset();
+            try (ImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+                writer.setOutput(stream);
+                writer.write(canvas);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            finally {
+                writer.setOutput(null);
+            }
+            return out.toByteArray();
+        }
+    }
+}
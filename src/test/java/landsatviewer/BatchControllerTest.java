@@ -0,0 +1,313 @@
+package landsatviewer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.servlet.ServletContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneDocument;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TileLoader;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TileSynthesizer;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@WebMvcTest(BatchController.class)
+@Import({SceneCache.class, TileSynthesizer.class, TileLoader.class})
+@TestPropertySource(properties = {"SCENE_CACHE_MAX_ENTRIES=0", "BATCH_CONCURRENCY=2", "BATCH_MAX_ITEMS=4",
+        "TILE_SYNTHESIS_THREADS=0"})
+public class BatchControllerTest {
+    @MockBean
+    private Client client;
+
+    @MockBean
+    private ServletContext servletContext;
+
+    @MockBean
+    private TileCache tileCache;
+
+    @MockBean
+    private DiskTileStore tileStore;
+
+    @MockBean
+    private TilePeers tilePeers;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Before
+    public void setUp() {
+        when(client.getSceneDocumentAsync(anyString(), isNull()))
+                .thenAnswer(invocation -> completedFuture(document(invocation.getArgument(0))));
+        when(client.fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture("test-data".getBytes()));
+    }
+
+    @Test
+    public void getScenes__StreamsOneLinePerScene() throws Exception {
+        final String[] lines = perform("/scenes?ids=a,b,c").getResponse().getContentAsString().split("\n");
+
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("{\"id\":\"a\""));
+        assertEquals("application/x-ndjson", perform("/scenes?ids=a").getResponse().getContentType());
+    }
+
+    @Test
+    public void getScenes__ReportsItemErrorsInline() throws Exception {
+        when(client.getSceneDocumentAsync("missing", null)).thenReturn(failedFuture(mock(Client.NotFound.class)));
+        when(client.getSceneDocumentAsync("broken", null)).thenReturn(failedFuture(new Client.Error("test-error")));
+
+        final String content = perform("/scenes?ids=missing,broken").getResponse().getContentAsString();
+
+        assertTrue(content, content.contains("\"error\":\"Scene 'missing' not found\""));
+        assertTrue(content, content.contains("\"error\":\"Scene fetch error: test-error\""));
+    }
+
+    @Test
+    public void getScenes__WritesItemsAsTheyComplete() throws Exception {
+        final CompletableFuture<SceneDocument> slow = new CompletableFuture<>();
+        when(client.getSceneDocumentAsync("slow", null)).thenReturn(slow);
+
+        final MvcResult result = mvc.perform(get("/scenes?ids=slow,fast")).andReturn();
+        assertTrue(result.getResponse().getContentAsString().startsWith("{\"id\":\"fast\""));
+
+        slow.complete(document("slow"));
+        result.getAsyncResult(1000);
+        assertTrue(result.getResponse().getContentAsString().contains("{\"id\":\"slow\""));
+    }
+
+    @Test
+    public void getScenes__CapsConcurrency() throws Exception {
+        final CompletableFuture<SceneDocument> first = new CompletableFuture<>();
+        final CompletableFuture<SceneDocument> second = new CompletableFuture<>();
+        when(client.getSceneDocumentAsync("a", null)).thenReturn(first);
+        when(client.getSceneDocumentAsync("b", null)).thenReturn(second);
+
+        final MvcResult result = mvc.perform(get("/scenes?ids=a,b,c")).andReturn();
+        verify(client, never()).getSceneDocumentAsync("c", null);
+
+        first.complete(document("a"));
+        verify(client).getSceneDocumentAsync("c", null);
+        second.complete(document("b"));
+        result.getAsyncResult(1000);
+    }
+
+    @Test
+    public void getScenes__ReportsCompletedItemsWithoutNesting() throws Exception {
+        final List<Integer> depths = new CopyOnWriteArrayList<>();
+        when(client.getSceneDocumentAsync(anyString(), isNull())).thenAnswer(invocation -> {
+            depths.add(Thread.currentThread().getStackTrace().length);
+            return completedFuture(document(invocation.getArgument(0)));
+        });
+
+        perform("/scenes?ids=a,b,c,d");
+
+        assertEquals(4, depths.size());
+        assertEquals(1, new HashSet<>(depths).size());
+    }
+
+    @Test
+    public void getScenes__RejectsTooManyIds() throws Exception {
+        assertEquals(400, perform("/scenes?ids=a,b,c,d,e").getResponse().getStatus());
+    }
+
+    @Test
+    public void getTiles__StreamsFramesFromCacheAndUpstream() throws Exception {
+        when(tileCache.get(new TileKey("test-scene-id", 12, 34, 56))).thenReturn("cached".getBytes());
+
+        final Map<String, byte[]> frames = frames(perform("/tiles/test-scene-id/batch?tiles=12/34/56,12/35/56")
+                .getResponse().getContentAsByteArray());
+
+        assertArrayEquals("cached".getBytes(), frames.get("12/34/56 200"));
+        assertArrayEquals("test-data".getBytes(), frames.get("12/35/56 200"));
+        verify(tileCache).put(new TileKey("test-scene-id", 12, 35, 56), "test-data".getBytes());
+    }
+
+    @Test
+    public void getTiles__ReportsFailedTiles() throws Exception {
+        when(client.fetchTileDataAsync("test-scene-id", 34, 56, 12)).thenReturn(failedFuture(new Client.Error("test-error")));
+
+        final Map<String, byte[]> frames = frames(perform("/tiles/test-scene-id/batch?tiles=12/34/56")
+                .getResponse().getContentAsByteArray());
+
+        assertArrayEquals(new byte[0], frames.get("12/34/56 500"));
+    }
+
+    @Test
+    public void getTiles__FetchesFromOwner() throws Exception {
+        final TileKey owned = new TileKey("test-scene-id", 12, 34, 56);
+        final TileKey shed = new TileKey("test-scene-id", 12, 35, 56);
+        final TilePeers.OwnerError error = mock(TilePeers.OwnerError.class);
+        when(error.getStatus()).thenReturn(503);
+        when(tilePeers.owner(any(TileKey.class))).thenReturn("http://test-owner");
+        when(tilePeers.fetch("http://test-owner", owned)).thenReturn(completedFuture("owner-data".getBytes()));
+        when(tilePeers.fetch("http://test-owner", shed)).thenReturn(failedFuture(error));
+
+        final Map<String, byte[]> frames = frames(perform("/tiles/test-scene-id/batch?tiles=12/34/56,12/35/56")
+                .getResponse().getContentAsByteArray());
+
+        assertArrayEquals("owner-data".getBytes(), frames.get("12/34/56 200"));
+        assertArrayEquals(new byte[0], frames.get("12/35/56 503"));
+        verify(client, never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+        verify(tileCache, never()).put(any(TileKey.class), any(byte[].class));
+    }
+
+    @Test
+    public void getTiles__RejectsMalformedTiles() throws Exception {
+        assertEquals(400, perform("/tiles/test-scene-id/batch?tiles=12/34").getResponse().getStatus());
+    }
+
+    @Test
+    public void getComposite__TakesFirstOpaquePixel() throws Exception {
+        when(client.fetchTileDataAsync("right", 34, 56, 12)).thenReturn(completedFuture(png(Color.RED, 128, 256)));
+        when(client.fetchTileDataAsync("full", 34, 56, 12)).thenReturn(completedFuture(png(Color.BLUE, 0, 256)));
+
+        final MvcResult result = performAsync("/composite/12/34/56.png?scenes=right,full");
+        final BufferedImage tile = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+
+        assertEquals("image/png", result.getResponse().getContentType());
+        assertEquals("max-age=86400", result.getResponse().getHeader("Cache-Control"));
+        assertEquals(Color.BLUE.getRGB(), tile.getRGB(10, 10));
+        assertEquals(Color.RED.getRGB(), tile.getRGB(200, 10));
+    }
+
+    @Test
+    public void getComposite__StopsFetchingOnceCovered() throws Exception {
+        when(client.fetchTileDataAsync("full", 34, 56, 12)).thenReturn(completedFuture(png(Color.RED, 0, 256)));
+        when(client.fetchTileDataAsync("right", 34, 56, 12)).thenReturn(completedFuture(png(Color.BLUE, 128, 256)));
+
+        final BufferedImage tile = ImageIO.read(new ByteArrayInputStream(
+                performAsync("/composite/12/34/56.png?scenes=full,right,c,d").getResponse().getContentAsByteArray()));
+
+        assertEquals(Color.RED.getRGB(), tile.getRGB(200, 10));
+        verify(client, never()).fetchTileDataAsync("c", 34, 56, 12);
+        verify(client, never()).fetchTileDataAsync("d", 34, 56, 12);
+    }
+
+    @Test
+    public void getComposite__LeavesOutFailedScenes() throws Exception {
+        when(client.fetchTileDataAsync("broken", 34, 56, 12)).thenReturn(failedFuture(new Client.Error("test-error")));
+        when(client.fetchTileDataAsync("full", 34, 56, 12)).thenReturn(completedFuture(png(Color.BLUE, 0, 256)));
+
+        final MvcResult result = performAsync("/composite/12/34/56.png?scenes=broken,full");
+        final BufferedImage tile = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+
+        assertEquals(Color.BLUE.getRGB(), tile.getRGB(10, 10));
+        assertEquals("max-age=300", result.getResponse().getHeader("Cache-Control"));
+    }
+
+    @Test
+    public void getComposite__ReportsShedRequests() throws Exception {
+        when(client.fetchTileDataAsync("a", 34, 56, 12)).thenReturn(failedFuture(mock(Client.Overloaded.class)));
+
+        final MvcResult result = performAsync("/composite/12/34/56.png?scenes=a");
+
+        assertEquals(503, result.getResponse().getStatus());
+        assertEquals("1", result.getResponse().getHeader("Retry-After"));
+    }
+
+    @Test
+    public void getComposite__AddsCompletedLayersWithoutNesting() throws Exception {
+        final List<Integer> depths = new CopyOnWriteArrayList<>();
+        final byte[] strip = png(Color.RED, 0, 64);
+        when(client.fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            depths.add(Thread.currentThread().getStackTrace().length);
+            return completedFuture(strip);
+        });
+
+        performAsync("/composite/12/34/56.png?scenes=a,b,c,d");
+
+        assertEquals(4, depths.size());
+        assertEquals(1, new HashSet<>(depths).size());
+    }
+
+    @Test
+    public void getComposite__RejectsTooManyScenes() throws Exception {
+        assertEquals(400, performAsync("/composite/12/34/56.png?scenes=a,b,c,d,e").getResponse().getStatus());
+    }
+
+    private MvcResult performAsync(String url) throws Exception {
+        return mvc.perform(asyncDispatch(mvc.perform(get(url)).andReturn())).andReturn();
+    }
+
+    // A tile opaque from column `from` up to column `to`, transparent elsewhere
+    private static byte[] png(Color color, int from, int to) throws IOException {
+        final BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(from, 0, to - from, 256);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private MvcResult perform(String url) throws Exception {
+        final MvcResult result = mvc.perform(get(url)).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result.getAsyncResult(1000);
+        }
+        return result;
+    }
+
+    private static SceneDocument document(String id) {
+        final Scene scene = new Scene();
+        scene.id = id;
+        return new SceneDocument(scene, null, null);
+    }
+
+    private static Map<String, byte[]> frames(byte[] content) {
+        final Map<String, byte[]> frames = new HashMap<>();
+        final ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.hasRemaining()) {
+            final String key = String.format("%d/%d/%d %d", buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt());
+            final byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            frames.put(key, data);
+        }
+        return frames;
+    }
+}
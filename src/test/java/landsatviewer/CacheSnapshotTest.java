@@ -0,0 +1,141 @@
+package landsatviewer;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import landsatviewer.planet.Client;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.scenes.SearchCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TileSynthesizer;
+
+public class CacheSnapshotTest {
+    private static final TileKey STORED = new TileKey("test-scene-id", 12, 34, 56);
+    private static final TileKey FETCHED = new TileKey("test-scene-id", 12, 35, 56);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Client client;
+    private SceneCache sceneCache;
+    private SearchCache searchCache;
+    private DiskTileStore tileStore;
+    private TilePeers peers;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(Client.class);
+        sceneCache = mock(SceneCache.class);
+        searchCache = mock(SearchCache.class);
+        tileStore = new DiskTileStore(folder.newFolder("tiles").toString(), 4096, 1024);
+        peers = TilePeers.standalone();
+        file = folder.getRoot().toPath().resolve("snapshot.gz");
+
+        when(client.fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture("fetched-data".getBytes()));
+        when(sceneCache.get(anyString())).thenReturn(completedFuture(null));
+        when(searchCache.restore(anyString())).thenAnswer(invocation -> completedFuture(null));
+    }
+
+    @Test
+    public void start_restoresStoredTilesBeforeReturning() throws Exception {
+        writeSnapshot();
+
+        final TileCache tileCache = createTileCache();
+        final CacheSnapshot snapshot = createSnapshot(tileCache, 0);
+        snapshot.start();
+
+        assertArrayEquals("stored-data".getBytes(), tileCache.get(STORED));
+        assertEquals(1L, (long) snapshot.stats().get("restored_local"));
+        assertEquals(0L, (long) tileStore.stats().get("hits"));
+        verify(client, after(200).never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+        snapshot.stop();
+    }
+
+    @Test
+    public void start_fetchesOtherKeysInTheBackground() throws Exception {
+        writeSnapshot();
+
+        final TileCache tileCache = createTileCache();
+        final CacheSnapshot snapshot = createSnapshot(tileCache, 100);
+        snapshot.start();
+
+        verify(sceneCache, timeout(2000)).get("test-scene-id");
+        verify(searchCache, timeout(2000)).restore("10.5,10.5,14");
+        verify(client, timeout(2000)).fetchTileDataAsync("test-scene-id", 35, 56, 12);
+        verify(client, never()).fetchTileDataAsync("test-scene-id", 34, 56, 12);
+        snapshot.stop();
+    }
+
+    @Test
+    public void start_skipsTilesOwnedByPeers() throws Exception {
+        writeSnapshot();
+        peers = mock(TilePeers.class);
+
+        final CacheSnapshot snapshot = createSnapshot(createTileCache(), 100);
+        snapshot.start();
+
+        verify(sceneCache, timeout(2000)).get("test-scene-id");
+        verify(client, after(200).never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+        snapshot.stop();
+    }
+
+    @Test
+    public void stop_writesSnapshot() throws Exception {
+        final TileCache tileCache = createTileCache();
+        final CacheSnapshot snapshot = createSnapshot(tileCache, 0);
+        snapshot.start();
+        tileCache.put(STORED, "stored-data".getBytes());
+
+        snapshot.stop();
+
+        assertTrue(Files.exists(file));
+        assertEquals(1L, (long) snapshot.stats().get("keys"));
+    }
+
+    // A snapshot of one scene, one search cell, a tile in the disk store and a tile that is not
+    private void writeSnapshot() throws Exception {
+        when(sceneCache.hottest(anyInt())).thenReturn(List.of("test-scene-id"));
+        when(searchCache.hottest(anyInt())).thenReturn(List.of("10.5,10.5,14"));
+
+        final TileCache tileCache = createTileCache();
+        tileCache.put(STORED, "stored-data".getBytes());
+        tileCache.put(FETCHED, "fetched-data".getBytes());
+        tileStore.put(STORED, "stored-data".getBytes());
+
+        createSnapshot(tileCache, 0).snapshot();
+    }
+
+    private CacheSnapshot createSnapshot(TileCache tileCache, int rate) {
+        final TileSynthesizer synthesizer = new TileSynthesizer(tileCache, tileStore, 0, 0, 0);
+        return new CacheSnapshot(file.toString(), 0, 100, 100, rate,
+                client, sceneCache, searchCache, tileCache, tileStore, peers, synthesizer);
+    }
+
+    private static TileCache createTileCache() {
+        return new TileCache(1024, 60, 600);
+    }
+}
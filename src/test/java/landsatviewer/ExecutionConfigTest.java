@@ -0,0 +1,24 @@
+package landsatviewer;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.web.embedded.tomcat.TomcatConnectorCustomizer;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExecutionConfigTest {
+    private final ApplicationContextRunner runner = new ApplicationContextRunner().withUserConfiguration(ExecutionConfig.class);
+
+    @Test
+    public void virtualMode_ignoresCase() {
+        runner.withPropertyValues("EXECUTION_MODE=Virtual")
+                .run(context -> assertEquals(1, context.getBeansOfType(TomcatConnectorCustomizer.class).size()));
+    }
+
+    @Test
+    public void otherModes_keepTomcatThreads() {
+        runner.withPropertyValues("EXECUTION_MODE=platform")
+                .run(context -> assertEquals(0, context.getBeansOfType(TomcatConnectorCustomizer.class).size()));
+        runner.run(context -> assertEquals(0, context.getBeansOfType(TomcatConnectorCustomizer.class).size()));
+    }
+}
@@ -0,0 +1,182 @@
+package landsatviewer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import landsatviewer.planet.UpstreamExecutor;
+
+/**
+ * Compares the platform and virtual thread execution modes against an
+ * upstream stub that answers every request after a fixed delay.
+ *
+ * Platform mode gets the same 200 threads as Tomcat's default pool.
+ *
+ * Run with: mvn test -Dtest=ExecutionModeLoadTest -Dloadtest=true
+ * (optionally -Dloadtest.latency=ms -Dloadtest.users=n -Dloadtest.duration=s)
+ */
+public class ExecutionModeLoadTest {
+    private static final int UPSTREAM_LATENCY_MILLIS = Integer.getInteger("loadtest.latency", 500);
+    private static final int USERS = Integer.getInteger("loadtest.users", 300);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 10);
+
+    private HttpServer upstream;
+    private ExecutorService upstreamThreads;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("loadtest"));
+        assumeTrue(UpstreamExecutor.supportsVirtualThreads());
+
+        final byte[] scene = "{\"id\": \"test-scene-id\", \"type\": \"Feature\"}".getBytes();
+
+        upstreamThreads = Executors.newCachedThreadPool();
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1000);
+        upstream.setExecutor(upstreamThreads);
+        upstream.createContext("/", exchange -> {
+            try {
+                Thread.sleep(UPSTREAM_LATENCY_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, scene.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(scene);
+            }
+        });
+        upstream.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (upstream != null) {
+            upstream.stop(0);
+            upstreamThreads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void compareExecutionModes() throws Exception {
+        final Result platform = run("platform", 200);
+        final Result virtual = run("virtual", 2000);
+
+        System.out.println();
+        System.out.printf("Upstream latency %d ms, %d concurrent users, %d s per mode%n",
+                UPSTREAM_LATENCY_MILLIS, USERS, DURATION_SECONDS);
+        System.out.printf("%-10s %12s %10s %10s %8s%n", "mode", "requests/s", "p50 (ms)", "p99 (ms)", "errors");
+        System.out.println(platform);
+        System.out.println(virtual);
+
+        assertEquals(0, platform.errors);
+        assertEquals(0, virtual.errors);
+    }
+
+    private Result run(String mode, int concurrency) throws Exception {
+        final String upstreamUrl = "http://127.0.0.1:" + upstream.getAddress().getPort();
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=0",
+                        "PLANET_API_KEY=test-key",
+                        "PLANET_API_URL=" + upstreamUrl,
+                        "PLANET_TILES_URL=" + upstreamUrl,
+                        "EXECUTION_MODE=" + mode,
+                        "UPSTREAM_CONCURRENCY=" + concurrency)
+                .run()) {
+            final String baseUrl = "http://127.0.0.1:" + context.getEnvironment().getProperty("local.server.port");
+            return load(mode, baseUrl);
+        }
+    }
+
+    private static Result load(String mode, String baseUrl) throws InterruptedException {
+        final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger sequence = new AtomicInteger();
+        final AtomicLong errors = new AtomicLong();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        final ExecutorService users = UpstreamExecutor.newVirtualExecutor("load-");
+        for (int i = 0; i < USERS; i++) {
+            users.execute(() -> {
+                while (System.nanoTime() < deadline) {
+                    // Unique scene IDs keep request coalescing from hiding upstream calls
+                    final HttpRequest request = HttpRequest
+                            .newBuilder(URI.create(baseUrl + "/scenes/scene-" + sequence.incrementAndGet()))
+                            .build();
+                    final long start = System.nanoTime();
+                    try {
+                        if (http.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    catch (IOException e) {
+                        errors.incrementAndGet();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                    latencies.add(System.nanoTime() - start);
+                }
+            });
+        }
+        users.shutdown();
+        users.awaitTermination(DURATION_SECONDS + 30, TimeUnit.SECONDS);
+
+        return new Result(mode, latencies, errors.get());
+    }
+
+    private static class Result {
+        final String mode;
+        final double throughput;
+        final double p50;
+        final double p99;
+        final long errors;
+
+        Result(String mode, List<Long> latencies, long errors) {
+            final List<Long> sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+
+            this.mode = mode;
+            this.throughput = sorted.size() / (double) DURATION_SECONDS;
+            this.p50 = percentile(sorted, 0.50);
+            this.p99 = percentile(sorted, 0.99);
+            this.errors = errors;
+        }
+
+        private static double percentile(List<Long> sorted, double p) {
+            if (sorted.isEmpty()) {
+                return 0;
+            }
+            return sorted.get((int) Math.min(sorted.size() - 1, Math.ceil(p * sorted.size()) - 1)) / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %12.0f %10.1f %10.1f %8d", mode, throughput, p50, p99, errors);
+        }
+    }
+}
@@ -1,36 +1,73 @@
 package landsatviewer;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 import javax.servlet.ServletContext;
 
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
 import static org.hamcrest.Matchers.any;
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Mockito.anyDouble;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.isNull;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import landsatviewer.planet.Client;
+import landsatviewer.planet.PlanetTransport;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneCollection;
+import landsatviewer.planet.SceneDocument;
+import landsatviewer.planet.TileStream;
+import landsatviewer.scenes.FootprintCatalog;
+import landsatviewer.scenes.SceneCache;
+import landsatviewer.scenes.SearchCache;
+import landsatviewer.tiles.DiskTileStore;
+import landsatviewer.tiles.TileCache;
+import landsatviewer.tiles.TileKey;
+import landsatviewer.tiles.TileLoader;
+import landsatviewer.tiles.TilePeers;
+import landsatviewer.tiles.TilePrefetcher;
+import landsatviewer.tiles.TileSynthesizer;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @WebMvcTest(PlanetController.class)
+@Import({SearchCache.class, FootprintCatalog.class, SceneCache.class, TileLoader.class})
+@TestPropertySource(properties = {"SEARCH_CACHE_MAX_CELLS=0", "SEARCH_STREAMING=false", "SCENE_CACHE_MAX_ENTRIES=0"})
 public class PlanetControllerTest {
     @MockBean
     private Client client;
@@ -38,9 +75,40 @@ public class PlanetControllerTest {
     @MockBean
     private ServletContext servletContext;
 
+    @MockBean
+    private TileCache tileCache;
+
+    @MockBean
+    private DiskTileStore tileStore;
+
+    @MockBean
+    private TilePrefetcher tilePrefetcher;
+
+    @MockBean
+    private TilePeers tilePeers;
+
+    @MockBean
+    private TileSynthesizer tileSynthesizer;
+
+    @MockBean
+    private CacheSnapshot cacheSnapshot;
+
+    @MockBean
+    private PlanetTransport transport;
+
     @Autowired
     private MockMvc mvc;
 
+    @Before
+    public void setUp() {
+        when(client.searchAsync(anyDouble(), anyDouble(), anyInt()))
+                .thenReturn(completedFuture(new SceneCollection()));
+        when(client.getSceneDocumentAsync(anyString(), isNull()))
+                .thenReturn(completedFuture(new SceneDocument(new Scene(), null, null)));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
+    }
+
     @Test
     public void healthCheck__ResponseIncludesUptime() throws Exception {
         mvc.perform(get("/"))
@@ -55,7 +123,7 @@ public class PlanetControllerTest {
 
         mvc.perform(get("/scenes?x={x}&y={y}&days_ago=56", expectedX, expectedY));
 
-        verify(client).search(eq(expectedX), eq(expectedY), anyInt());
+        verify(client).searchAsync(eq(expectedX), eq(expectedY), anyInt());
     }
 
     @Test
@@ -64,19 +132,19 @@ public class PlanetControllerTest {
 
         mvc.perform(get("/scenes?x=12&y=34&days_ago={days_ago}", expectedDays));
 
-        verify(client).search(anyDouble(), anyDouble(), eq(expectedDays));
+        verify(client).searchAsync(anyDouble(), anyDouble(), eq(expectedDays));
     }
 
     @Test
     public void search__RequestsCorrectFallbackForNumberOfDays() throws Exception {
         mvc.perform(get("/scenes?x=12&y=34"));
 
-        verify(client).search(anyDouble(), anyDouble(), anyInt());
+        verify(client).searchAsync(anyDouble(), anyDouble(), anyInt());
     }
 
     @Test
     public void search__RejectsInvalidX() throws Exception {
-        mvc.perform(get("/scenes?x=&y=34&days_ago=56"))
+        perform(get("/scenes?x=&y=34&days_ago=56"))
                 .andExpect(status().is(400))
                 .andExpect(jsonPath("error", any(String.class)));
     }
@@ -85,12 +153,12 @@ public class PlanetControllerTest {
     public void search__DoesntRequestInvalidX() throws Exception {
         mvc.perform(get("/scenes?x=&y=34&days_ago=56"));
 
-        verify(client, never()).search(anyDouble(), anyDouble(), anyInt());
+        verify(client, never()).searchAsync(anyDouble(), anyDouble(), anyInt());
     }
 
     @Test
     public void search__RejectsInvalidY() throws Exception {
-        mvc.perform(get("/scenes?x=12&y=&days_ago=56"))
+        perform(get("/scenes?x=12&y=&days_ago=56"))
                 .andExpect(status().is(400))
                 .andExpect(jsonPath("error", any(String.class)));
     }
@@ -99,15 +167,15 @@ public class PlanetControllerTest {
     public void search__DoesntRequestInvalidY() throws Exception {
         mvc.perform(get("/scenes?x=12&y=&days_ago=56"));
 
-        verify(client, never()).search(anyDouble(), anyDouble(), anyInt());
+        verify(client, never()).searchAsync(anyDouble(), anyDouble(), anyInt());
     }
 
     @Test
     public void search__GracefullyHandlesSearchFailure() throws Exception {
-        when(client.search(anyDouble(), anyDouble(), anyInt()))
-                .thenThrow(new Client.Error("test-error"));
+        when(client.searchAsync(anyDouble(), anyDouble(), anyInt()))
+                .thenReturn(failedFuture(new Client.Error("test-error")));
 
-        mvc.perform(get("/scenes?x=12&y=34&days_ago=56"))
+        perform(get("/scenes?x=12&y=34&days_ago=56"))
                 .andExpect(status().is(500))
                 .andExpect(jsonPath("error", equalTo("Search error: test-error")));
     }
@@ -117,90 +185,367 @@ public class PlanetControllerTest {
     public void getScene__RequestsCorrectSceneId() throws Exception {
         mvc.perform(get("/scenes/test-scene-id"));
 
-        verify(client).getScene("test-scene-id");
+        verify(client).getSceneDocumentAsync("test-scene-id", null);
+    }
+
+    @Test
+    public void getScene__ServesStrongETag() throws Exception {
+        perform(get("/scenes/test-scene-id"))
+                .andExpect(status().isOk())
+                .andExpect(result -> assertTrue(result.getResponse().getHeader("ETag").matches("\"[0-9a-f]{32}\"")))
+                .andExpect(header().string("Cache-Control", "max-age=86400"));
+    }
+
+    @Test
+    public void getScene__AnswersMatchingIfNoneMatch() throws Exception {
+        final String etag = perform(get("/scenes/test-scene-id")).andReturn().getResponse().getHeader("ETag");
+
+        perform(get("/scenes/test-scene-id").header("If-None-Match", etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", etag))
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void getScene__IgnoresStaleIfNoneMatch() throws Exception {
+        perform(get("/scenes/test-scene-id").header("If-None-Match", "\"stale\""))
+                .andExpect(status().isOk());
     }
 
     @Test
     public void getScene__GracefullyHandlesSceneNotFound() throws Exception {
-        when(client.getScene("test-scene-id"))
-                .thenThrow(Client.NotFound.class);
+        when(client.getSceneDocumentAsync("test-scene-id", null))
+                .thenReturn(failedFuture(mock(Client.NotFound.class)));
 
-        mvc.perform(get("/scenes/test-scene-id"))
+        perform(get("/scenes/test-scene-id"))
                 .andExpect(status().is(404))
                 .andExpect(jsonPath("error", equalTo("Scene 'test-scene-id' not found")));
     }
 
     @Test
     public void getScene__GracefullyHandlesRetrievalFailure() throws Exception {
-        when(client.getScene("test-scene-id"))
-                .thenThrow(new Client.Error("test-error"));
+        when(client.getSceneDocumentAsync("test-scene-id", null))
+                .thenReturn(failedFuture(new Client.Error("test-error")));
 
-        mvc.perform(get("/scenes/test-scene-id"))
+        perform(get("/scenes/test-scene-id"))
                 .andExpect(status().is(500))
                 .andExpect(jsonPath("error", equalTo("Scene fetch error: test-error")));
     }
 
 
+    @Test
+    public void tiles__ReportsRequestToPrefetcher() throws Exception {
+        mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
+
+        verify(tilePrefetcher).observe(new TileKey("test-scene-id", 789, 123, 456));
+    }
+
     @Test
     public void tiles__RequestsCorrectSceneId() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
 
         mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
 
-        verify(client).fetchTile(eq("test-scene-id"), anyInt(), anyInt(), anyInt());
+        verify(client).fetchTileAsync(eq("test-scene-id"), anyInt(), anyInt(), anyInt());
     }
 
     @Test
     public void tiles__RequestsCorrectX() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
 
         mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
 
-        verify(client).fetchTile(anyString(), eq(123), anyInt(), anyInt());
+        verify(client).fetchTileAsync(anyString(), eq(123), anyInt(), anyInt());
     }
 
     @Test
     public void tiles__RequestsCorrectY() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
 
         mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
 
-        verify(client).fetchTile(anyString(), anyInt(), eq(456), anyInt());
+        verify(client).fetchTileAsync(anyString(), anyInt(), eq(456), anyInt());
     }
 
     @Test
     public void tiles__RequestsCorrectZ() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
+
+        mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
+
+        verify(client).fetchTileAsync(anyString(), anyInt(), anyInt(), eq(789));
+    }
+
+    @Test
+    public void tiles__ServesCachedTile() throws Exception {
+        when(tileCache.get(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn("test-data".getBytes());
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().is(200))
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__ServesStoredTile() throws Exception {
+        when(tileStore.get(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn(ByteBuffer.wrap("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().is(200))
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__CachesFetchedTile() throws Exception {
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
 
         mvc.perform(get("/tiles/test-scene-id/789/123/456.png"));
 
-        verify(client).fetchTile(anyString(), anyInt(), anyInt(), eq(789));
+        verify(tileCache).put(eq(new TileKey("test-scene-id", 789, 123, 456)), aryEq("test-data".getBytes()));
+        verify(tileStore).put(eq(new TileKey("test-scene-id", 789, 123, 456)), aryEq("test-data".getBytes()));
+    }
+
+    @Test
+    public void tiles__PassesThroughUpstreamHeaders() throws Exception {
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), "\"test-etag\"")));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(header().longValue("Content-Length", 9))
+                .andExpect(header().string("ETag", "\"test-etag\""));
     }
 
     @Test
     public void tiles__GracefullyHandlesProxyError() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenThrow(Client.Error.class);
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(failedFuture(mock(Client.Error.class)));
         when(servletContext.getResourceAsStream(anyString()))
                 .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
 
-        mvc.perform(get("/tiles/test-scene-id/123/456/789.png"))
+        perform(get("/tiles/test-scene-id/123/456/789.png"))
                 .andExpect(status().is(500));
     }
 
     @Test
     public void tiles__RendersPlaceholderOnError() throws Exception {
-        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
-                .thenThrow(Client.Error.class);
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(failedFuture(mock(Client.Error.class)));
         when(servletContext.getResourceAsStream(eq("/tile-error.png")))
                 .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
 
-        mvc.perform(get("/tiles/test-scene-id/123/456/789.png"))
+        perform(get("/tiles/test-scene-id/123/456/789.png"))
                 .andExpect(content().contentType(MediaType.IMAGE_PNG))
                 .andExpect(content().bytes("test-data".getBytes()));
     }
+
+    @Test
+    public void tiles__ServesStaleTileOnError() throws Exception {
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(failedFuture(mock(Client.Error.class)));
+        when(tileCache.getStale(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn("test-data".getBytes());
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=300"))
+                .andExpect(content().bytes("test-data".getBytes()));
+    }
+
+    @Test
+    public void tiles__ReportsShedRequests() throws Exception {
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(failedFuture(mock(Client.Overloaded.class)));
+        when(servletContext.getResourceAsStream(eq("/tile-error.png")))
+                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/123/456/789.png"))
+                .andExpect(status().is(503))
+                .andExpect(header().string("Retry-After", "1"));
+    }
+
+    @Test
+    public void tiles__FetchesFromOwner() throws Exception {
+        final TileKey key = new TileKey("test-scene-id", 789, 123, 456);
+        when(tilePeers.owner(key)).thenReturn("http://test-owner");
+        when(tilePeers.fetch("http://test-owner", key)).thenReturn(completedFuture("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(tileCache, never()).put(eq(key), aryEq("test-data".getBytes()));
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__FetchesFromPlanetWhenOwnerIsUnreachable() throws Exception {
+        final TileKey key = new TileKey("test-scene-id", 789, 123, 456);
+        when(tilePeers.owner(key)).thenReturn("http://test-owner");
+        when(tilePeers.fetch("http://test-owner", key)).thenReturn(failedFuture(new IOException("test-error")));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+    }
+
+    @Test
+    public void tiles__ReportsOwnerShedRequests() throws Exception {
+        final TileKey key = new TileKey("test-scene-id", 789, 123, 456);
+        final TilePeers.OwnerError error = mock(TilePeers.OwnerError.class);
+        when(error.getStatus()).thenReturn(503);
+        when(tilePeers.owner(key)).thenReturn("http://test-owner");
+        when(tilePeers.fetch("http://test-owner", key)).thenReturn(failedFuture(error));
+        when(servletContext.getResourceAsStream(eq("/tile-error.png")))
+                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().is(503))
+                .andExpect(header().string("Retry-After", "1"));
+
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__OverzoomsFromFetchedAncestor() throws Exception {
+        final TileKey key = new TileKey("test-scene-id", 14, 401, 803);
+        final TileKey ancestor = new TileKey("test-scene-id", 12, 100, 200);
+        when(tileSynthesizer.isOverzoomed(key)).thenReturn(true);
+        when(tileSynthesizer.ancestor(key)).thenReturn(ancestor);
+        when(client.fetchTileDataAsync("test-scene-id", 100, 200, 12)).thenReturn(completedFuture("test-ancestor".getBytes()));
+        when(tileSynthesizer.overzoom(eq(key), aryEq("test-ancestor".getBytes())))
+                .thenReturn(completedFuture("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/14/401/803.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(tileCache).put(eq(ancestor), aryEq("test-ancestor".getBytes()));
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__ReportsRejectedOverzoom() throws Exception {
+        final TileKey key = new TileKey("test-scene-id", 14, 401, 803);
+        when(tileSynthesizer.isOverzoomed(key)).thenReturn(true);
+        when(tileSynthesizer.ancestor(key)).thenReturn(new TileKey("test-scene-id", 12, 100, 200));
+        when(tileCache.get(new TileKey("test-scene-id", 12, 100, 200))).thenReturn("test-ancestor".getBytes());
+        when(tileSynthesizer.overzoom(eq(key), aryEq("test-ancestor".getBytes())))
+                .thenReturn(failedFuture(new RejectedExecutionException()));
+        when(servletContext.getResourceAsStream(eq("/tile-error.png")))
+                .thenReturn(new ByteArrayInputStream("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/14/401/803.png"))
+                .andExpect(status().is(503));
+    }
+
+    @Test
+    public void tiles__UnderzoomsFromCachedChildren() throws Exception {
+        when(tileSynthesizer.underzoom(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn(completedFuture("test-data".getBytes()));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void tiles__FetchesTileWhenUnderzoomFails() throws Exception {
+        when(tileSynthesizer.underzoom(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn(failedFuture(new RejectedExecutionException()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
+
+        perform(get("/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+    }
+
+    @Test
+    public void peerTiles__RejectsUnknownCallers() throws Exception {
+        when(tilePeers.accepts("test-secret")).thenReturn(false);
+
+        perform(get("/internal/tiles/test-scene-id/789/123/456.png").header(TilePeers.SECRET_HEADER, "test-secret"))
+                .andExpect(status().isForbidden());
+
+        verify(client, never()).fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void peerTiles__ServesOwnedTile() throws Exception {
+        when(tilePeers.accepts("test-secret")).thenReturn(true);
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture(TileStream.buffered("test-data".getBytes(), null)));
+
+        perform(get("/internal/tiles/test-scene-id/789/123/456.png").header(TilePeers.SECRET_HEADER, "test-secret"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes("test-data".getBytes()));
+
+        verify(tilePeers, never()).owner(new TileKey("test-scene-id", 789, 123, 456));
+        verify(tilePeers).served();
+    }
+
+    @Test
+    public void peerTiles__ReportsUpstreamErrorsToPeer() throws Exception {
+        when(tilePeers.accepts(isNull())).thenReturn(true);
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(failedFuture(mock(Client.Error.class)));
+        when(tileCache.getStale(new TileKey("test-scene-id", 789, 123, 456)))
+                .thenReturn("test-data".getBytes());
+
+        perform(get("/internal/tiles/test-scene-id/789/123/456.png"))
+                .andExpect(status().is(502));
+    }
+
+    @Test
+    public void search__WritesScenesAsLines() throws Exception {
+        final SceneCollection scenes = new SceneCollection();
+        scenes.features = List.of(new Scene(), new Scene());
+        scenes.features.get(0).id = "test-scene-a";
+        scenes.features.get(1).id = "test-scene-b";
+        when(client.searchAsync(anyDouble(), anyDouble(), anyInt()))
+                .thenReturn(completedFuture(scenes));
+
+        final MvcResult result = performStreaming(get("/scenes?x=12&y=34&format=ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn();
+
+        final String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].contains("\"id\":\"test-scene-a\""));
+        assertTrue(lines[1].contains("\"id\":\"test-scene-b\""));
+    }
+
+    @Test
+    public void search__RejectsMissingCoordinatesForLines() throws Exception {
+        performStreaming(get("/scenes?x=&y=34&format=ndjson"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("error", containsString("missing 'x'")));
+    }
+
+    private ResultActions perform(RequestBuilder request) throws Exception {
+        final MvcResult result = mvc.perform(request).andReturn();
+        return mvc.perform(asyncDispatch(result));
+    }
+
+    // Streamed bodies are written on another thread after the response is dispatched
+    private ResultActions performStreaming(RequestBuilder request) throws Exception {
+        final ResultActions actions = perform(request);
+        actions.andReturn().getAsyncResult(1000);
+        return actions;
+    }
 }
@@ -0,0 +1,195 @@
+package landsatviewer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Measures the time from launching a fresh JVM until it has served its
+ * first tile, proxied from a local Planet stub, for each startup mode.
+ * The CDS mode is measured when an archive has been built with the cds
+ * profile.
+ *
+ * Run with: mvn -P cds package -DskipTests && mvn test -Dtest=StartupTimeTest -Dstartup=true
+ * (optionally -Dstartup.runs=n)
+ */
+public class StartupTimeTest {
+    private static final int RUNS = Integer.getInteger("startup.runs", 3);
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+    private static final Path CDS_ARCHIVE = Paths.get("target", "app.jsa");
+
+    private HttpServer upstream;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(Boolean.getBoolean("startup"));
+
+        final byte[] tile = new byte[8192];
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        });
+        upstream.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (upstream != null) {
+            upstream.stop(0);
+        }
+    }
+
+    @Test
+    public void measureTimeToFirstTile() throws Exception {
+        final List<String> classpath = List.of("-cp", System.getProperty("java.class.path"));
+        final List<Result> results = new ArrayList<>();
+        results.add(run("default", classpath));
+        results.add(run("lazy", classpath, "--STARTUP_LAZY=true"));
+        results.add(run("lazy+warmup", classpath, "--STARTUP_LAZY=true", "--STARTUP_WARMUP=true"));
+
+        final Optional<Path> cdsJar = findCdsJar();
+        if (Files.exists(CDS_ARCHIVE) && cdsJar.isPresent()) {
+            final List<String> cds = List.of("-XX:SharedArchiveFile=" + CDS_ARCHIVE, "-Xlog:cds=off", "-jar", cdsJar.get().toString());
+            results.add(run("cds+lazy", cds, "--STARTUP_LAZY=true"));
+            results.add(run("cds+lazy+warmup", cds, "--STARTUP_LAZY=true", "--STARTUP_WARMUP=true"));
+        }
+
+        System.out.println();
+        System.out.printf("Median of %d runs%n", RUNS);
+        System.out.printf("%-16s %16s %16s%n", "mode", "first tile (ms)", "its latency (ms)");
+        for (Result result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private Result run(String mode, List<String> launch, String... args) throws Exception {
+        final List<Long> firstTiles = new ArrayList<>();
+        final List<Long> latencies = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            final long[] measured = launchAndRequestTile(launch, args);
+            firstTiles.add(measured[0]);
+            latencies.add(measured[1]);
+        }
+        return new Result(mode, median(firstTiles), median(latencies));
+    }
+
+    // Milliseconds from launch until the first tile was served, and how long that request itself took
+    private long[] launchAndRequestTile(List<String> launch, String... args) throws Exception {
+        final int port = freePort();
+        final String upstreamUrl = "http://127.0.0.1:" + upstream.getAddress().getPort();
+
+        final List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(launch);
+        if (!launch.contains("-jar")) {
+            command.add(Application.class.getName());
+        }
+        command.add("--server.port=" + port);
+        command.add("--PLANET_API_KEY=test-key");
+        command.add("--PLANET_API_URL=" + upstreamUrl);
+        command.add("--PLANET_TILES_URL=" + upstreamUrl);
+        command.addAll(Arrays.asList(args));
+
+        final HttpClient http = HttpClient.newHttpClient();
+        final HttpRequest request = HttpRequest
+                .newBuilder(URI.create("http://127.0.0.1:" + port + "/tiles/test-scene-id/12/34/56.png"))
+                .timeout(TIMEOUT)
+                .build();
+
+        final long launched = System.nanoTime();
+        final Process process = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        try {
+            while (System.nanoTime() - launched < TIMEOUT.toNanos()) {
+                final long sent = System.nanoTime();
+                try {
+                    final HttpResponse<Void> response = http.send(request, HttpResponse.BodyHandlers.discarding());
+                    final long served = System.nanoTime();
+                    assertEquals(200, response.statusCode());
+                    return new long[]{(served - launched) / 1_000_000, (served - sent) / 1_000_000};
+                }
+                catch (ConnectException e) {
+                    Thread.sleep(10);
+                }
+            }
+            throw new AssertionError("no tile served within " + TIMEOUT);
+        }
+        finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    private static Optional<Path> findCdsJar() throws IOException {
+        final Path lib = Paths.get("target", "lib");
+        if (!Files.isDirectory(lib)) {
+            return Optional.empty();
+        }
+        try (Stream<Path> files = Files.list(lib)) {
+            return files.filter(file -> file.getFileName().toString().endsWith("-cds.jar")).findFirst();
+        }
+    }
+
+    private static long median(List<Long> values) {
+        final List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted.get(sorted.size() / 2);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static class Result {
+        final String mode;
+        final long firstTile;
+        final long latency;
+
+        Result(String mode, long firstTile, long latency) {
+            this.mode = mode;
+            this.firstTile = firstTile;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-16s %16d %16d", mode, firstTile, latency);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package landsatviewer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import landsatviewer.tiles.TilePeers;
+
+/**
+ * Runs two instances in cluster mode on localhost against a Planet stub
+ * and checks that every tile is fetched from Planet once between them.
+ */
+public class TileClusterTest {
+    private static final int TILES = 40;
+
+    private HttpServer upstream;
+    private Map<String, Integer> upstreamRequests;
+    private ConfigurableApplicationContext first;
+    private ConfigurableApplicationContext second;
+
+    @Before
+    public void setUp() throws IOException {
+        upstreamRequests = new ConcurrentHashMap<>();
+        upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        upstream.createContext("/", exchange -> {
+            final byte[] tile = exchange.getRequestURI().getPath().getBytes();
+            upstreamRequests.merge(exchange.getRequestURI().getPath(), 1, Integer::sum);
+            exchange.getResponseHeaders().add("Content-Type", "image/png");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        });
+        upstream.start();
+
+        final int firstPort = freePort();
+        final int secondPort = freePort();
+        final String peers = "http://127.0.0.1:" + firstPort + ",http://127.0.0.1:" + secondPort;
+        first = start(firstPort, peers);
+        second = start(secondPort, peers);
+    }
+
+    @After
+    public void tearDown() {
+        if (first != null) {
+            first.close();
+        }
+        if (second != null) {
+            second.close();
+        }
+        upstream.stop(0);
+    }
+
+    @Test
+    public void tiles_areFetchedFromPlanetOnceAcrossInstances() throws Exception {
+        final HttpClient http = HttpClient.newHttpClient();
+
+        for (int x = 0; x < TILES; x++) {
+            final String path = "/tiles/test-scene-id/12/" + x + "/34.png";
+            final byte[] fromFirst = get(http, first, path);
+            final byte[] fromSecond = get(http, second, path);
+            assertArrayEquals(fromFirst, fromSecond);
+        }
+
+        assertEquals(TILES, upstreamRequests.size());
+        assertTrue(upstreamRequests.toString(), upstreamRequests.values().stream().allMatch(count -> count == 1));
+        assertTrue(served(first) > 0);
+        assertTrue(served(second) > 0);
+        assertEquals(TILES, served(first) + served(second));
+    }
+
+    private ConfigurableApplicationContext start(int port, String peers) {
+        final String upstreamUrl = "http://127.0.0.1:" + upstream.getAddress().getPort();
+        return new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "server.port=" + port,
+                        "PLANET_API_KEY=test-key",
+                        "PLANET_API_URL=" + upstreamUrl,
+                        "PLANET_TILES_URL=" + upstreamUrl,
+                        "PREFETCH_CONCURRENCY=0",
+                        "TILE_PEERS=" + peers,
+                        "TILE_PEER_SELF=http://127.0.0.1:" + port,
+                        "TILE_PEER_SECRET=test-secret")
+                .run();
+    }
+
+    private static byte[] get(HttpClient http, ConfigurableApplicationContext instance, String path) throws Exception {
+        final String baseUrl = "http://127.0.0.1:" + instance.getEnvironment().getProperty("local.server.port");
+        final HttpResponse<byte[]> response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + path)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    private static long served(ConfigurableApplicationContext instance) {
+        return instance.getBean(TilePeers.class).stats().get("served_to_peers");
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package landsatviewer.planet;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import landsatviewer.planet.CircuitBreaker.State;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CircuitBreakerTest {
+    private AtomicLong now;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong();
+        breaker = new CircuitBreaker(0.5, 4, Duration.ofSeconds(10), now::get);
+    }
+
+    @Test
+    public void record_opensWhenFailureRateReached() {
+        fail(2);
+        succeed(1);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        fail(1);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(1L, (long) breaker.stats().get("tile_breaker_rejected"));
+    }
+
+    @Test
+    public void record_staysClosedBelowFailureRate() {
+        for (int i = 0; i < 10; i++) {
+            fail(1);
+            succeed(3);
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void record_ignoresClientErrors() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(acquire(), new Client.NotFound());
+            breaker.record(acquire(), new Client.Error(404));
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void record_countsThrottlingAsFailure() {
+        for (int i = 0; i < 4; i++) {
+            breaker.record(acquire(), new Client.Error(429));
+        }
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void tryAcquire_allowsSingleProbeAfterOpenDuration() {
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        acquire();
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void record_closesAfterSuccessfulProbe() {
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        breaker.record(acquire(), null);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        acquire();
+    }
+
+    @Test
+    public void record_reopensAfterFailedProbe() {
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        breaker.record(acquire(), new Client.Error("test-error"));
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        assertEquals(2L, (long) breaker.stats().get("tile_breaker_opened"));
+    }
+
+    @Test
+    public void record_ignoresRequestsLetThroughBeforeOpening() {
+        final long stale = acquire();
+        fail(4);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        final long probe = acquire();
+
+        breaker.record(stale, null);
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+
+        breaker.record(probe, new Client.Error("test-error"));
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void disabled_neverOpens() {
+        breaker = CircuitBreaker.disabled();
+
+        for (int i = 0; i < 100; i++) {
+            breaker.record(acquire(), new Client.Error("test-error"));
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    private long acquire() {
+        final long permit = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, permit);
+        return permit;
+    }
+
+    private void fail(int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.record(acquire(), new Client.Error("test-error"));
+        }
+    }
+
+    private void succeed(int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.record(acquire(), null);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package landsatviewer.planet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import landsatviewer.planet.UpstreamMetrics.Operation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientAsyncTest {
+    private HttpServer server;
+    private Map<String, String> requests;
+
+    @Before
+    public void setUp() throws IOException {
+        requests = new ConcurrentHashMap<>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/v1/Landsat8L1G/test-scene-id/56/12/34.png", exchange -> {
+            requests.put("tile", exchange.getRequestHeaders().getFirst("Authorization"));
+            exchange.getResponseHeaders().add("ETag", "\"test-etag\"");
+            respond(exchange, 200, "test-data");
+        });
+        server.createContext("/data/v1/Landsat8L1G/missing-scene-id", exchange -> respond(exchange, 500, ""));
+        server.createContext("/data/v1/item-types/Landsat8L1G/items/test-scene-id", exchange -> {
+            if ("\"test-etag\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            exchange.getResponseHeaders().add("ETag", "\"test-etag\"");
+            respond(exchange, 200, "{\"id\": \"test-scene-id\", \"properties\": {\"wrs_path\": 7, \"wrs_row\": 42}}");
+        });
+        server.createContext("/data/v1/item-types/Landsat8L1G/items/missing-scene-id", exchange -> respond(exchange, 404, ""));
+        server.createContext("/data/v1/item-types/Landsat8L1G/items/slow-scene-id", exchange -> {
+            requests.merge("slow-scene", "x", String::concat);
+            try {
+                Thread.sleep(200);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "{\"id\": \"slow-scene-id\"}");
+        });
+        server.createContext("/data/v1/quick-search", exchange -> {
+            requests.put("search", new String(exchange.getRequestBody().readAllBytes()));
+            requests.put("search-content-type", exchange.getRequestHeaders().getFirst("Content-Type"));
+            respond(exchange, 200, "{\"features\": [{\"id\": \"test-scene-id\"}]}");
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetchTileAsync_streamsTile() throws Exception {
+        final TileStream stream = createClient().fetchTileAsync("test-scene-id", 12, 34, 56).get();
+
+        assertArrayEquals("test-data".getBytes(), stream.readAllBytes());
+        assertEquals("\"test-etag\"", stream.getETag());
+        assertEquals(9, stream.getContentLength());
+    }
+
+    @Test
+    public void fetchTileDataAsync_buffersTile() throws Exception {
+        assertArrayEquals("test-data".getBytes(), createClient().fetchTileDataAsync("test-scene-id", 12, 34, 56).get());
+    }
+
+    @Test
+    public void fetchTileAsync_sendsCredentials() throws Exception {
+        createClient().fetchTileAsync("test-scene-id", 12, 34, 56).get().close();
+
+        assertEquals("Basic dGVzdC1rZXk6", requests.get("tile"));
+    }
+
+    @Test
+    public void fetchTileAsync_gracefullyHandlesPlanetAPIError() throws Exception {
+        assertFailsWith(Client.Error.class, () -> createClient().fetchTileAsync("missing-scene-id", 12, 34, 56).get());
+    }
+
+    @Test
+    public void getSceneAsync_parsesScene() throws Exception {
+        final Scene scene = createClient().getSceneAsync("test-scene-id").get();
+
+        assertEquals("test-scene-id", scene.id);
+        assertEquals("007", scene.properties.wrsPath);
+        assertEquals("042", scene.properties.wrsRow);
+    }
+
+    @Test
+    public void getSceneAsync_reportsSceneNotFound() throws Exception {
+        assertFailsWith(Client.NotFound.class, () -> createClient().getSceneAsync("missing-scene-id").get());
+    }
+
+    @Test
+    public void getSceneDocumentAsync_revalidatesConditionally() throws Exception {
+        final Client client = createClient();
+        final SceneDocument document = client.getSceneDocumentAsync("test-scene-id", null).get();
+
+        assertEquals("\"test-etag\"", document.etag);
+        assertSame(document, client.getSceneDocumentAsync("test-scene-id", document).get());
+    }
+
+    @Test
+    public void getSceneDocumentAsync_coalescesConcurrentRequests() throws Exception {
+        final Client client = createClient();
+
+        final CompletableFuture<SceneDocument> first = client.getSceneDocumentAsync("slow-scene-id", null);
+        final CompletableFuture<SceneDocument> second = client.getSceneDocumentAsync("slow-scene-id", null);
+
+        assertSame(first.get(), second.get());
+        assertEquals("x", requests.get("slow-scene"));
+        assertEquals(1L, (long) client.stats().get("scene_coalesced"));
+    }
+
+    @Test
+    public void getSceneDocumentAsync_reportsSceneNotFound() throws Exception {
+        assertFailsWith(Client.NotFound.class, () -> createClient().getSceneDocumentAsync("missing-scene-id", null).get());
+    }
+
+    @Test
+    public void searchAsync_sendsCriteria() throws Exception {
+        final SceneCollection scenes = createClient().searchAsync(12.34, 45.56, 789).get();
+
+        assertEquals("test-scene-id", scenes.features.get(0).id);
+        assertEquals("application/json", requests.get("search-content-type"));
+        assertTrue(requests.get("search").contains("\"item_types\":[\"Landsat8L1G\"]"));
+    }
+
+    @Test
+    public void searchAsync_gracefullyHandlesConnectionFailure() throws Exception {
+        server.stop(0);
+
+        assertFailsWith(Client.Error.class, () -> createClient().searchAsync(12.34, 45.56, 789).get());
+    }
+
+    @Test
+    public void openSearchAsync_readsFeaturesFromStream() throws Exception {
+        try (SceneStream stream = createClient().openSearchAsync(12.34, 45.56, 789).get()) {
+            assertEquals("test-scene-id", stream.read().features.get(0).id);
+        }
+        assertTrue(requests.get("search").contains("\"item_types\":[\"Landsat8L1G\"]"));
+    }
+
+    @Test
+    public void fetchTileAsync_failsFastWhileCircuitOpen() throws Exception {
+        final Client client = createClient(new CircuitBreaker(1.0, 1, Duration.ofMinutes(1), System::nanoTime),
+                ConcurrencyLimiter.unlimited());
+
+        try {
+            client.fetchTileAsync("missing-scene-id", 12, 34, 56).get();
+            fail("expected upstream error");
+        }
+        catch (ExecutionException e) {
+            assertEquals(500, ((Client.Error) e.getCause()).getStatus());
+        }
+
+        try {
+            client.fetchTileAsync("test-scene-id", 12, 34, 56).get();
+            fail("expected circuit to be open");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Client.Unavailable);
+        }
+        assertEquals(null, requests.get("tile"));
+    }
+
+    @Test
+    public void searchAsync_shedsOverConcurrencyLimit() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(Map.of(Operation.SEARCH, 1), 1, 1, 2.0);
+        final Client client = createClient(CircuitBreaker.disabled(), limiter);
+        assertTrue(limiter.tryAcquire(Operation.SEARCH));
+
+        try {
+            client.searchAsync(-80.0, 40.0, 14).get();
+            fail("expected search to be shed");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Client.Overloaded);
+        }
+        assertEquals(null, requests.get("search"));
+
+        assertEquals("test-scene-id", client.getSceneAsync("test-scene-id").get().id);
+    }
+
+    private Client createClient() {
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new Client(new RestTemplate(), HttpClient.newHttpClient(), "test-key", url, url, true, UpstreamExecutor.async());
+    }
+
+    private Client createClient(CircuitBreaker breaker, ConcurrencyLimiter limiter) {
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new Client(new RestTemplate(), HttpClient.newHttpClient(), "test-key", url, url, true,
+                UpstreamExecutor.async(), null, new UpstreamMetrics(new SimpleMeterRegistry()), HedgePolicy.disabled(), breaker, limiter,
+                1000);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes();
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void assertFailsWith(Class<? extends Throwable> type, Call call) throws Exception {
+        try {
+            call.call();
+            fail("expected " + type.getSimpleName());
+        }
+        catch (ExecutionException e) {
+            assertTrue("unexpected " + e.getCause(), type.isInstance(e.getCause()));
+        }
+    }
+
+    private interface Call {
+        void call() throws Exception;
+    }
+}
@@ -3,14 +3,21 @@ package landsatviewer.planet;
 import java.io.InputStream;
 import java.util.Scanner;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.anything;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
@@ -18,6 +25,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 public class ClientTest {
@@ -53,6 +61,59 @@ public class ClientTest {
         assertEquals("test-data", new Scanner(inputStream).next());
     }
 
+    @Test
+    public void fetchTile_passesThroughUpstreamHeaders() throws Exception {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"test-etag\"");
+        headers.setContentLength(9);
+        server
+                .expect(anything())
+                .andRespond(withSuccess("test-data".getBytes(), MediaType.IMAGE_PNG).headers(headers));
+
+        final TileStream stream = createClient().fetchTile("test-scene-id", 12, 34, 56);
+
+        assertEquals("\"test-etag\"", stream.getETag());
+        assertEquals(9, stream.getContentLength());
+    }
+
+    @Test
+    public void fetchTile_completesBodyOnceStreamIsRead() throws Exception {
+        server
+                .expect(anything())
+                .andRespond(withSuccess("test-data".getBytes(), MediaType.IMAGE_PNG));
+
+        final TileStream stream = createClient().fetchTile("test-scene-id", 12, 34, 56);
+
+        assertFalse(stream.body().isDone());
+        stream.readAllBytes();
+        assertArrayEquals("test-data".getBytes(), stream.body().get());
+    }
+
+    @Test
+    public void fetchTile_failsBodyIfStreamIsClosedEarly() throws Exception {
+        server
+                .expect(anything())
+                .andRespond(withSuccess("test-data".getBytes(), MediaType.IMAGE_PNG));
+
+        final TileStream stream = createClient().fetchTile("test-scene-id", 12, 34, 56);
+        stream.read();
+        stream.close();
+
+        assertTrue(stream.body().isCompletedExceptionally());
+    }
+
+    @Test
+    public void fetchTile_buffersWhenStreamingIsDisabled() throws Exception {
+        server
+                .expect(anything())
+                .andRespond(withSuccess("test-data".getBytes(), MediaType.IMAGE_PNG));
+
+        final TileStream stream = new Client(restTemplate, false).fetchTile("test-scene-id", 12, 34, 56);
+
+        assertArrayEquals("test-data".getBytes(), stream.body().get());
+        assertEquals("test-data", new Scanner(stream).next());
+    }
+
     @Test(expected = Client.Error.class)
     public void fetchTile_gracefullyHandlesPlanetAPIError() throws Exception {
         server
@@ -87,6 +148,43 @@ public class ClientTest {
         server.verify();
     }
 
+    @Test
+    public void getSceneDocument_keepsValidators() throws Exception {
+        final HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"test-etag\"");
+        headers.set(HttpHeaders.LAST_MODIFIED, "Fri, 20 Sep 2019 12:00:00 GMT");
+        server
+                .expect(requestTo("https://api.planet.com/data/v1/item-types/Landsat8L1G/items/test-scene-id"))
+                .andRespond(withSuccess("{\"id\": \"test-scene-id\"}", MediaType.APPLICATION_JSON).headers(headers));
+
+        final SceneDocument document = createClient().getSceneDocument("test-scene-id", null);
+
+        assertEquals("test-scene-id", document.scene.id);
+        assertEquals("\"test-etag\"", document.etag);
+        assertEquals("Fri, 20 Sep 2019 12:00:00 GMT", document.lastModified);
+    }
+
+    @Test
+    public void getSceneDocument_revalidatesConditionally() throws Exception {
+        final SceneDocument previous = new SceneDocument(new Scene(), "\"test-etag\"", "Fri, 20 Sep 2019 12:00:00 GMT");
+        server
+                .expect(header(HttpHeaders.IF_NONE_MATCH, "\"test-etag\""))
+                .andExpect(header(HttpHeaders.IF_MODIFIED_SINCE, "Fri, 20 Sep 2019 12:00:00 GMT"))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+
+        assertSame(previous, createClient().getSceneDocument("test-scene-id", previous));
+        server.verify();
+    }
+
+    @Test(expected = Client.NotFound.class)
+    public void getSceneDocument_reportsSceneNotFound() throws Exception {
+        server
+                .expect(anything())
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+        createClient().getSceneDocument("test-scene-id", null);
+    }
+
     @Test
     public void search_callsCorrectURL() throws Exception {
         server
@@ -131,6 +229,28 @@ public class ClientTest {
         server.verify();
     }
 
+    @Test
+    public void openSearch_copiesProjectedFeatures() throws Exception {
+        server
+                .expect(jsonPath("item_types").value("Landsat8L1G"))
+                .andRespond(withSuccess("{\"features\": [{\"id\": \"test-scene-id\", \"_links\": {}}]}", MediaType.APPLICATION_JSON));
+
+        final String json = new ObjectMapper().writeValueAsString(createClient().openSearch(12.34, 45.56, 789));
+
+        assertEquals("{\"features\":[{\"id\":\"test-scene-id\",\"geometry\":null,\"properties\":null,\"type\":null}],"
+                + "\"type\":\"FeatureCollection\"}", json);
+        server.verify();
+    }
+
+    @Test(expected = Client.Error.class)
+    public void openSearch_gracefullyHandlesPlanetAPIError() throws Exception {
+        server
+                .expect(anything())
+                .andRespond(withServerError());
+
+        createClient().openSearch(12.34, 45.56, 789);
+    }
+
     private Client createClient() {
         return new Client(restTemplate);
     }
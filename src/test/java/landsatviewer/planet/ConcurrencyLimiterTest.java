@@ -0,0 +1,114 @@
+package landsatviewer.planet;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import landsatviewer.planet.UpstreamMetrics.Operation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+    private ConcurrencyLimiter limiter;
+
+    @Before
+    public void setUp() {
+        limiter = new ConcurrencyLimiter(Map.of(Operation.TILE, 20, Operation.SEARCH, 20), 4, 2, 2.0);
+    }
+
+    @Test
+    public void tryAcquire_shedsOverLimit() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(Operation.TILE));
+        }
+
+        assertFalse(limiter.tryAcquire(Operation.TILE));
+        assertEquals(1L, (long) limiter.stats().get("tile_shed"));
+        assertEquals(4L, (long) limiter.stats().get("tile_in_flight"));
+    }
+
+    @Test
+    public void tryAcquire_keepsOperationsApart() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(Operation.TILE));
+        }
+
+        assertTrue(limiter.tryAcquire(Operation.SEARCH));
+    }
+
+    @Test
+    public void tryAcquire_leavesUnconfiguredOperationsUnlimited() {
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(limiter.tryAcquire(Operation.SCENE));
+        }
+    }
+
+    @Test
+    public void release_growsLimitWhileBusyAndFast() {
+        for (int round = 0; round < 10; round++) {
+            fill(Operation.TILE);
+            final int inFlight = limiter.getLimit(Operation.TILE);
+            for (int i = 0; i < inFlight; i++) {
+                limiter.release(Operation.TILE, started(10), 200);
+            }
+        }
+
+        assertEquals(20, limiter.getLimit(Operation.TILE));
+    }
+
+    @Test
+    public void release_shrinksLimitOnFailures() {
+        grow(Operation.TILE);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(Operation.TILE));
+            limiter.release(Operation.TILE, started(10), 503);
+        }
+
+        assertEquals(6, limiter.getLimit(Operation.TILE));
+    }
+
+    @Test
+    public void release_shrinksLimitOnSlowCalls() {
+        grow(Operation.TILE);
+
+        assertTrue(limiter.tryAcquire(Operation.TILE));
+        limiter.release(Operation.TILE, started(100), 200);
+
+        assertEquals(18, limiter.getLimit(Operation.TILE));
+    }
+
+    @Test
+    public void release_neverShrinksBelowMinimum() {
+        for (int i = 0; i < 50; i++) {
+            assertTrue(limiter.tryAcquire(Operation.TILE));
+            limiter.release(Operation.TILE, started(10), 0);
+        }
+
+        assertEquals(2, limiter.getLimit(Operation.TILE));
+    }
+
+    private void grow(Operation operation) {
+        for (int round = 0; round < 10; round++) {
+            fill(operation);
+            final int inFlight = limiter.getLimit(operation);
+            for (int i = 0; i < inFlight; i++) {
+                limiter.release(operation, started(10), 200);
+            }
+        }
+        assertEquals(20, limiter.getLimit(operation));
+    }
+
+    private void fill(Operation operation) {
+        while (limiter.tryAcquire(operation)) {
+        }
+    }
+
+    private static long started(long millisAgo) {
+        return System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(millisAgo);
+    }
+}
@@ -0,0 +1,147 @@
+package landsatviewer.planet;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HedgePolicyTest {
+    @Test
+    public void delay_followsPercentileOfRecordedLatencies() {
+        final HedgePolicy hedging = new HedgePolicy(0.9, 0.05, Duration.ofMillis(1));
+
+        assertEquals(-1, hedging.delay());
+        for (int i = 1; i <= 128; i++) {
+            hedging.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(116), hedging.delay());
+    }
+
+    @Test
+    public void delay_isAtLeastMinimum() {
+        final HedgePolicy hedging = new HedgePolicy(0.9, 0.05, Duration.ofMillis(50));
+
+        for (int i = 0; i < 128; i++) {
+            hedging.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), hedging.delay());
+    }
+
+    @Test
+    public void run_hedgesSlowAttemptAndClosesLoser() throws Exception {
+        final HedgePolicy hedging = warmedUp(1.0);
+        final List<CompletableFuture<Attempt>> attempts = new ArrayList<>();
+
+        final CompletableFuture<Attempt> result = hedging.run(() -> {
+            final CompletableFuture<Attempt> attempt = new CompletableFuture<>();
+            synchronized (attempts) {
+                attempts.add(attempt);
+                attempts.notifyAll();
+            }
+            return attempt;
+        });
+        awaitAttempts(attempts, 2);
+
+        final Attempt hedge = new Attempt();
+        final Attempt primary = new Attempt();
+        attempts.get(1).complete(hedge);
+        assertSame(hedge, result.get(5, TimeUnit.SECONDS));
+        attempts.get(0).complete(primary);
+
+        assertTrue(primary.closed.get());
+        assertEquals(1L, (long) hedging.stats().get("tile_hedged"));
+        // The winner is counted on whichever thread completed it
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (hedging.stats().get("tile_hedge_wins") == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1L, (long) hedging.stats().get("tile_hedge_wins"));
+    }
+
+    @Test
+    public void run_waitsForHedgeWhenFirstAttemptFails() throws Exception {
+        final HedgePolicy hedging = warmedUp(1.0);
+        final List<CompletableFuture<Attempt>> attempts = new ArrayList<>();
+
+        final CompletableFuture<Attempt> result = hedging.run(() -> {
+            final CompletableFuture<Attempt> attempt = new CompletableFuture<>();
+            synchronized (attempts) {
+                attempts.add(attempt);
+                attempts.notifyAll();
+            }
+            return attempt;
+        });
+        awaitAttempts(attempts, 2);
+
+        final Attempt hedge = new Attempt();
+        attempts.get(0).completeExceptionally(new Client.Error("test-error"));
+        attempts.get(1).complete(hedge);
+
+        assertSame(hedge, result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void run_staysWithinBudget() throws Exception {
+        final HedgePolicy hedging = warmedUp(0.1);
+
+        for (int i = 0; i < 50; i++) {
+            final CompletableFuture<Attempt> result = hedging.run(CompletableFuture::new);
+            Thread.sleep(5);
+            result.complete(new Attempt());
+        }
+
+        assertEquals(5L, (long) hedging.stats().get("tile_hedged"));
+    }
+
+    @Test
+    public void run_sendsOneAttemptWhenDisabled() throws Exception {
+        final List<Integer> attempts = new ArrayList<>();
+        final Attempt only = new Attempt();
+
+        final CompletableFuture<Attempt> result = HedgePolicy.disabled().run(() -> {
+            attempts.add(1);
+            return CompletableFuture.completedFuture(only);
+        });
+
+        assertSame(only, result.get());
+        assertEquals(1, attempts.size());
+    }
+
+    private static HedgePolicy warmedUp(double budget) {
+        final HedgePolicy hedging = new HedgePolicy(0.5, budget, Duration.ofMillis(1));
+        for (int i = 0; i < 128; i++) {
+            hedging.record(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return hedging;
+    }
+
+    private static void awaitAttempts(List<CompletableFuture<Attempt>> attempts, int count) throws InterruptedException {
+        synchronized (attempts) {
+            final long deadline = System.currentTimeMillis() + 5000;
+            while (attempts.size() < count && System.currentTimeMillis() < deadline) {
+                attempts.wait(100);
+            }
+        }
+        assertEquals(count, attempts.size());
+    }
+
+    private static class Attempt implements Closeable {
+        final AtomicBoolean closed = new AtomicBoolean();
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+}
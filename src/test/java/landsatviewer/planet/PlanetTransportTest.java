@@ -0,0 +1,138 @@
+package landsatviewer.planet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlanetTransportTest {
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ok", exchange -> {
+            exchange.getResponseHeaders().add("ETag", "\"test-etag\"");
+            respond(exchange, 200, "test-data");
+        });
+        server.createContext("/missing", exchange -> respond(exchange, 404, ""));
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1000);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, "late");
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void pooled_reusesConnections() {
+        final PlanetTransport transport = createTransport(PlanetTransport.Mode.POOLED);
+        final RestTemplate restTemplate = new RestTemplate(transport.getRequestFactory());
+
+        restTemplate.getForEntity(url + "/ok", String.class);
+        restTemplate.getForEntity(url + "/ok", String.class);
+
+        assertEquals(1L, (long) transport.stats().get("available"));
+        assertEquals(0L, (long) transport.stats().get("leased"));
+        assertEquals(4L, (long) transport.stats().get("max"));
+        transport.close();
+    }
+
+    @Test
+    public void pooled_appliesReadTimeout() {
+        assertTimesOut(createTransport(PlanetTransport.Mode.POOLED));
+    }
+
+    @Test
+    public void http2_exchangesRequests() {
+        final RestTemplate restTemplate = new RestTemplate(createTransport(PlanetTransport.Mode.HTTP2).getRequestFactory());
+
+        final ResponseEntity<String> response = restTemplate.getForEntity(url + "/ok", String.class);
+
+        assertEquals("test-data", response.getBody());
+        assertEquals("\"test-etag\"", response.getHeaders().getETag());
+    }
+
+    @Test(expected = HttpClientErrorException.NotFound.class)
+    public void http2_reportsErrorStatus() {
+        new RestTemplate(createTransport(PlanetTransport.Mode.HTTP2).getRequestFactory()).getForEntity(url + "/missing", String.class);
+    }
+
+    @Test
+    public void http2_appliesReadTimeout() {
+        assertTimesOut(createTransport(PlanetTransport.Mode.HTTP2));
+    }
+
+    @Test
+    public void simple_appliesReadTimeout() {
+        assertTimesOut(createTransport(PlanetTransport.Mode.SIMPLE));
+    }
+
+    @Test
+    public void async_followsTransportMode() throws Exception {
+        final PlanetTransport pooled = createTransport(PlanetTransport.Mode.POOLED);
+        final PlanetTransport http2 = createTransport(PlanetTransport.Mode.HTTP2);
+        assertEquals(HttpClient.Version.HTTP_1_1, pooled.getHttpClient().version());
+        assertEquals(HttpClient.Version.HTTP_2, http2.getHttpClient().version());
+
+        final HttpResponse<String> response = pooled.getHttpClient()
+                .sendAsync(HttpRequest.newBuilder(URI.create(url + "/ok")).build(), HttpResponse.BodyHandlers.ofString())
+                .get();
+
+        assertEquals("test-data", response.body());
+        assertTrue(pooled.stats().get("async_threads") > 0);
+        pooled.close();
+        http2.close();
+    }
+
+    private void assertTimesOut(PlanetTransport transport) {
+        try {
+            new RestTemplate(transport.getRequestFactory()).getForEntity(url + "/slow", String.class);
+            fail("expected a timeout");
+        }
+        catch (ResourceAccessException e) {
+            assertTrue(e.getMessage(), e.getMessage().toLowerCase().contains("timed out"));
+        }
+    }
+
+    private static PlanetTransport createTransport(PlanetTransport.Mode mode) {
+        return new PlanetTransport(mode, 4, 2, Duration.ofSeconds(1), Duration.ofMillis(200), Duration.ofSeconds(30));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes();
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package landsatviewer.planet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Compares the bytes allocated and time taken to turn a large search
+ * response into our JSON: binding it with Jackson and writing it back out,
+ * binding it with {@link SceneParser}, and copying it with the parser.
+ *
+ * Run with: mvn test -Dtest=SceneParserAllocationTest -Dbenchmark=true
+ * (optionally -Dbenchmark.features=n -Dbenchmark.iterations=n)
+ */
+public class SceneParserAllocationTest {
+    private static final int FEATURES = Integer.getInteger("benchmark.features", 250);
+    private static final int ITERATIONS = Integer.getInteger("benchmark.iterations", 200);
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private byte[] response;
+
+    @Before
+    public void setUp() {
+        assumeTrue(Boolean.getBoolean("benchmark"));
+        response = searchResponse(FEATURES);
+    }
+
+    @Test
+    public void compareParsers() throws Exception {
+        final Result jackson = measure("jackson", () ->
+                mapper.writeValue(NullOutputStream.INSTANCE, mapper.readValue(response, SceneCollection.class)));
+        final Result bind = measure("bind", () ->
+                mapper.writeValue(NullOutputStream.INSTANCE, SceneParser.parse(response)));
+        final Result copy = measure("copy", () -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(NullOutputStream.INSTANCE)) {
+                SceneParser.copy(new ByteArrayInputStream(response), generator);
+            }
+        });
+
+        System.out.println();
+        System.out.printf("%d features (%d KB) per response, %d iterations%n", FEATURES, response.length / 1024, ITERATIONS);
+        System.out.printf("%-10s %16s %12s%n", "parser", "KB/response", "us/response");
+        System.out.println(jackson);
+        System.out.println(bind);
+        System.out.println(copy);
+
+        assertTrue(copy.bytes < jackson.bytes);
+    }
+
+    private static Result measure(String name, Task task) throws Exception {
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+
+        final long allocated = threads.getThreadAllocatedBytes(thread);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            task.run();
+        }
+        final long elapsed = System.nanoTime() - start;
+        return new Result(name, (threads.getThreadAllocatedBytes(thread) - allocated) / ITERATIONS, elapsed / ITERATIONS);
+    }
+
+    static byte[] searchResponse(int features) {
+        final StringBuilder json = new StringBuilder("{\"_links\": {\"_first\": \"https://api.planet.com/data/v1/searches/1/results\","
+                + " \"_next\": \"https://api.planet.com/data/v1/searches/1/results?_page=2\"}, \"features\": [");
+        for (int i = 0; i < features; i++) {
+            final double x = -120 + i % 50 * 0.7;
+            final double y = 30 + i / 50 * 0.9;
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"_links\": {\"_self\": \"https://api.planet.com/data/v1/item-types/Landsat8L1G/items/scene-").append(i)
+                    .append("\", \"assets\": \"https://api.planet.com/data/v1/item-types/Landsat8L1G/items/scene-").append(i).append("/assets/\"},")
+                    .append(" \"_permissions\": [\"assets.analytic_b1:download\", \"assets.analytic_b2:download\", \"assets.visual:download\"],")
+                    .append(" \"geometry\": {\"coordinates\": [[")
+                    .append(String.format(Locale.ROOT, "[%.6f, %.6f], [%.6f, %.6f], [%.6f, %.6f], [%.6f, %.6f], [%.6f, %.6f]",
+                            x, y, x + 2.3, y + 0.4, x + 1.9, y + 2.4, x - 0.4, y + 2.0, x, y))
+                    .append("]], \"type\": \"Polygon\"},")
+                    .append(" \"id\": \"LC8").append(String.format("%03d%03d", 40 + i % 50, 30 + i / 50)).append("2019250LGN00\",")
+                    .append(" \"properties\": {\"acquired\": \"2019-09-07T18:52:47.").append(100 + i % 900).append("Z\",")
+                    .append(" \"anomalous_pixels\": 0, \"cloud_cover\": 0.").append(i % 100).append(",")
+                    .append(" \"collection\": \"PRE\", \"columns\": 7731, \"data_type\": \"uint16\", \"epsg_code\": 32610,")
+                    .append(" \"gsd\": 30, \"instrument\": \"OLI_TIRS\", \"item_type\": \"Landsat8L1G\", \"origin_x\": 466800,")
+                    .append(" \"origin_y\": 4212000, \"pixel_resolution\": 30, \"processed\": \"2019-09-07T23:14:51Z\",")
+                    .append(" \"product_id\": \"LC08_L1TP_044034_20190907_20190907_01_RT\", \"provider\": \"usgs\",")
+                    .append(" \"published\": \"2019-09-08T01:02:03Z\", \"quality_category\": \"standard\", \"rows\": 7871,")
+                    .append(" \"satellite_id\": \"Landsat8\", \"sun_azimuth\": 140.2, \"sun_elevation\": 54.1,")
+                    .append(" \"updated\": \"2019-09-08T01:02:03Z\", \"usable_data\": 0, \"view_angle\": 0,")
+                    .append(" \"wrs_path\": ").append(40 + i % 50).append(", \"wrs_row\": ").append(30 + i / 50).append("},")
+                    .append(" \"type\": \"Feature\"}");
+        }
+        return json.append("], \"type\": \"FeatureCollection\"}").toString().getBytes();
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    private static class Result {
+        final String name;
+        final long bytes;
+        final long nanos;
+
+        Result(String name, long bytes, long nanos) {
+            this.name = name;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-10s %16.1f %12.1f", name, bytes / 1024.0, nanos / 1000.0);
+        }
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        static final NullOutputStream INSTANCE = new NullOutputStream();
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
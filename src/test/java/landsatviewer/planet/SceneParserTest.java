@@ -0,0 +1,97 @@
+package landsatviewer.planet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SceneParserTest {
+    private static final String RESPONSE = "{\"_links\": {\"_first\": \"a\", \"_next\": \"b\"}, \"type\": \"FeatureCollection\", \"features\": ["
+            + "{\"_links\": {\"_self\": \"c\", \"assets\": \"d\"}, \"_permissions\": [\"assets.visual:download\"],"
+            + " \"geometry\": {\"coordinates\": [[[-122.5, 37.1], [-121, 37.25], [-121.75, 38.5e0], [-122.5, 37.1]]], \"type\": \"Polygon\"},"
+            + " \"id\": \"LC80440342019250LGN00\", \"properties\": {\"acquired\": \"2019-09-07T18:52:47.123Z\", \"anomalous_pixels\": 0,"
+            + " \"cloud_cover\": 0.05, \"pixel_resolution\": 30, \"wrs_path\": 44, \"wrs_row\": 34, \"sun_azimuth\": 140.2,"
+            + " \"item_type\": \"Landsat8L1G\"}, \"type\": \"Feature\"},"
+            + "{\"id\": \"no-geometry\", \"geometry\": null, \"properties\": {\"wrs_path\": 7}, \"type\": \"Feature\"},"
+            + "{\"id\": \"odd-shapes\", \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [null, [null, [1, 2, 3]]]}},"
+            + "{\"properties\": null},"
+            + "null"
+            + "]}";
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @Test
+    public void parse_bindsSameScenesAsJackson() throws Exception {
+        final SceneCollection scenes = SceneParser.parse(RESPONSE.getBytes());
+
+        assertEquals(bound(RESPONSE), mapper.writeValueAsString(scenes));
+        assertEquals("044", scenes.features.get(0).properties.wrsPath);
+        assertEquals("034", scenes.features.get(0).properties.wrsRow);
+    }
+
+    @Test
+    public void parse_keepsMissingFeaturesNull() throws Exception {
+        assertNull(SceneParser.parse("{}".getBytes()).features);
+        assertEquals(bound("{\"type\": null}"), mapper.writeValueAsString(SceneParser.parse("{\"type\": null}".getBytes())));
+    }
+
+    @Test
+    public void copy_writesSameJsonAsBindingAndSerializing() throws Exception {
+        assertEquals(bound(RESPONSE), copied(RESPONSE));
+        assertEquals(bound("{}"), copied("{}"));
+        assertEquals(bound("{\"features\": [], \"type\": \"Other\"}"), copied("{\"features\": [], \"type\": \"Other\"}"));
+    }
+
+    @Test(expected = com.fasterxml.jackson.core.JsonParseException.class)
+    public void parse_rejectsMalformedFeatures() throws Exception {
+        SceneParser.parse("{\"features\": [1]}".getBytes());
+    }
+
+    @Test
+    public void pad_matchesFormat() {
+        for (int value : new int[]{0, 7, 44, 233, 999, 1000, 12345, -1, -9, -10, -123, Integer.MIN_VALUE}) {
+            assertEquals(String.format("%03d", value), Scene.Properties.pad(value));
+        }
+    }
+
+    @Test
+    public void parseDouble_roundsLikeDoubleParseDouble() {
+        final Random random = new Random(42);
+        final List<String> values = new ArrayList<>(List.of("0.0", "-0.0", "1e22", "1.5E-3", "-122.123456789012", "0.1e+1", "5e-324"));
+        for (int i = 0; i < 100000; i++) {
+            final double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 4);
+            values.add(Double.toString(value));
+            values.add(String.format(Locale.ROOT, "%." + random.nextInt(12) + "f", value));
+            values.add(String.format(Locale.ROOT, "%." + random.nextInt(12) + "e", value));
+        }
+
+        for (String value : values) {
+            final double parsed = SceneParser.parseDouble(value.toCharArray(), 0, value.length());
+            if (!Double.isNaN(parsed)) {
+                assertEquals(value, Double.doubleToRawLongBits(Double.parseDouble(value)), Double.doubleToRawLongBits(parsed));
+            }
+        }
+    }
+
+    private String bound(String json) throws Exception {
+        return mapper.writeValueAsString(mapper.readValue(json, SceneCollection.class));
+    }
+
+    private String copied(String json) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            SceneParser.copy(new ByteArrayInputStream(json.getBytes()), generator);
+        }
+        return out.toString("UTF-8");
+    }
+}
@@ -0,0 +1,63 @@
+package landsatviewer.planet;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SearchCriteriaTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    public void toJson_matchesFilterModelForPoints() throws Exception {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; i++) {
+            final double x = random.nextDouble() * 360 - 180;
+            final double y = random.nextDouble() * 180 - 90;
+            final SearchCriteria criteria = new SearchCriteria(x, y, 14);
+
+            assertArrayEquals(String.format("(%s, %s)", x, y), reference(criteria), criteria.toJson());
+        }
+    }
+
+    @Test
+    public void toJson_matchesFilterModelForEnvelopes() throws Exception {
+        final SearchCriteria criteria = new SearchCriteria(new Envelope(9, 12, -3.5, 0.25), Instant.parse("2019-09-06T00:00:00Z"));
+
+        assertArrayEquals(reference(criteria), criteria.toJson());
+    }
+
+    @Test
+    public void toJson_writesWireFormat() {
+        final SearchCriteria criteria = new SearchCriteria(new Envelope(9, 12, 9, 12), Instant.parse("2019-09-06T00:00:00Z"));
+
+        assertEquals("{\"filter\":{\"type\":\"AndFilter\",\"config\":["
+                        + "{\"type\":\"DateRangeFilter\",\"config\":{\"gte\":\"2019-09-06T00:00:00Z\"},\"field_name\":\"acquired\"},"
+                        + "{\"type\":\"GeometryFilter\",\"config\":{\"type\":\"Polygon\",\"coordinates\":"
+                        + "[[[9.0,9.0],[9.0,12.0],[12.0,12.0],[12.0,9.0],[9.0,9.0]]]},\"field_name\":\"geometry\"}]},"
+                        + "\"item_types\":[\"Landsat8L1G\"]}",
+                new String(criteria.toJson()));
+    }
+
+    @Test
+    public void serializer_writesSameBytesAsToJson() throws Exception {
+        final SearchCriteria criteria = new SearchCriteria(-122.4, 37.8, 30);
+
+        assertArrayEquals(criteria.toJson(), mapper.writeValueAsBytes(criteria));
+    }
+
+    private byte[] reference(SearchCriteria criteria) throws Exception {
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("filter", criteria.toFilter());
+        body.put("item_types", List.of("Landsat8L1G"));
+        return mapper.writeValueAsBytes(body);
+    }
+}
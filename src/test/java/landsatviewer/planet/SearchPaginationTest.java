@@ -0,0 +1,150 @@
+package landsatviewer.planet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SearchPaginationTest {
+    private HttpServer server;
+    private Map<String, Integer> requests;
+    private String nextLink;
+
+    @Before
+    public void setUp() throws IOException {
+        requests = new ConcurrentHashMap<>();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        nextLink = "http://127.0.0.1:" + server.getAddress().getPort() + "/data/v1/searches/test-search/results?_page=";
+        server.createContext("/data/v1/quick-search", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            respond(exchange, page(1, nextLink + 2));
+        });
+        server.createContext("/data/v1/searches/test-search/results", exchange -> {
+            final int page = Integer.parseInt(exchange.getRequestURI().getQuery().substring("_page=".length()));
+            respond(exchange, page(page, page < 3 ? nextLink + (page + 1) : null));
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void searchAsync_followsPages() throws Exception {
+        final SceneCollection scenes = createClient(UpstreamExecutor.async(), 1000).searchAsync(12.34, 45.56, 789).get();
+
+        assertEquals(List.of("1-a", "1-b", "2-a", "2-b", "3-a", "3-b"), ids(scenes));
+        assertEquals(Integer.valueOf(1), requests.get("page-3"));
+    }
+
+    @Test
+    public void search_followsPages() throws Exception {
+        final SceneCollection scenes = createClient(UpstreamExecutor.async(), 1000).search(12.34, 45.56, 789);
+
+        assertEquals(List.of("1-a", "1-b", "2-a", "2-b", "3-a", "3-b"), ids(scenes));
+    }
+
+    @Test
+    public void searchAsync_stopsAtMaxFeatures() throws Exception {
+        final SceneCollection scenes = createClient(UpstreamExecutor.async(), 3).searchAsync(12.34, 45.56, 789).get();
+
+        assertEquals(List.of("1-a", "1-b", "2-a"), ids(scenes));
+        assertFalse(requests.containsKey("page-3"));
+    }
+
+    @Test
+    public void openSearchAsync_writesAllPagesAsOneCollection() throws Exception {
+        final StringWriter out = new StringWriter();
+        try (JsonGenerator generator = SceneParser.JSON.createGenerator(out)) {
+            createClient(UpstreamExecutor.async(), 1000).openSearchAsync(12.34, 45.56, 789).get().writeTo(generator);
+        }
+
+        final JsonNode collection = new ObjectMapper().readTree(out.toString());
+        assertEquals("FeatureCollection", collection.get("type").asText());
+        assertEquals(6, collection.get("features").size());
+        assertEquals("3-b", collection.get("features").get(5).get("id").asText());
+    }
+
+    @Test
+    public void openSearchAsync_writesLines() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        createClient(UpstreamExecutor.async(), 4).openSearchAsync(12.34, 45.56, 789).get().writeLines(out);
+
+        final String[] lines = out.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(out.toString().endsWith("}\n"));
+        assertEquals("2-b", new ObjectMapper().readTree(lines[3]).get("id").asText());
+    }
+
+    @Test
+    public void openSearch_stopsAtMaxFeaturesInBlockingMode() throws Exception {
+        final SceneCollection scenes = createClient(new UpstreamExecutor(UpstreamExecutor.Mode.PLATFORM, 4), 5)
+                .openSearchAsync(12.34, 45.56, 789).get().read();
+
+        assertEquals(List.of("1-a", "1-b", "2-a", "2-b", "3-a"), ids(scenes));
+    }
+
+    @Test
+    public void searchAsync_refusesLinksToOtherHosts() throws Exception {
+        nextLink = "http://example.invalid/data/v1/searches/test-search/results?_page=";
+
+        try {
+            createClient(UpstreamExecutor.async(), 1000).searchAsync(12.34, 45.56, 789).get();
+            fail("expected search to fail");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Client.Error);
+        }
+    }
+
+    private Client createClient(UpstreamExecutor executor, int maxFeatures) {
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new Client(new RestTemplate(), HttpClient.newHttpClient(), "test-key", url, url, true, executor, null,
+                new UpstreamMetrics(new SimpleMeterRegistry()), HedgePolicy.disabled(), CircuitBreaker.disabled(),
+                ConcurrencyLimiter.unlimited(), maxFeatures);
+    }
+
+    private String page(int page, String next) {
+        requests.merge("page-" + page, 1, Integer::sum);
+        return "{\"_links\": {\"_self\": \"self\"" + (next != null ? ", \"_next\": \"" + next + "\"" : "") + "}, "
+                + "\"features\": [{\"id\": \"" + page + "-a\"}, {\"id\": \"" + page + "-b\"}], "
+                + "\"type\": \"FeatureCollection\"}";
+    }
+
+    private static List<String> ids(SceneCollection scenes) {
+        return scenes.features.stream().map(scene -> scene.id).collect(Collectors.toList());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        final byte[] bytes = body.getBytes();
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package landsatviewer.planet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+    private ExecutorService executor;
+    private SingleFlight<String, String> flights;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+        flights = new SingleFlight<>();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void execute_returnsValue() throws Exception {
+        assertEquals("test-value", flights.execute("test-key", () -> "test-value"));
+    }
+
+    @Test
+    public void execute_coalescesConcurrentCalls() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        final List<Future<String>> results = runConcurrently(8, () -> {
+            calls.incrementAndGet();
+            await(release);
+            return "test-value";
+        });
+        waitForCoalesced(7);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("test-value", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(7, flights.coalesced());
+    }
+
+    @Test
+    public void execute_sharesErrorWithConcurrentCalls() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Client.Error error = new Client.Error("test-error");
+
+        final List<Future<String>> results = runConcurrently(4, () -> {
+            await(release);
+            throw error;
+        });
+        waitForCoalesced(3);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                fail("expected error");
+            }
+            catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+    }
+
+    @Test
+    public void execute_doesNotCoalesceSequentialCalls() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+
+        flights.execute("test-key", () -> "test-value-" + calls.incrementAndGet());
+        flights.execute("test-key", () -> "test-value-" + calls.incrementAndGet());
+
+        assertEquals(2, calls.get());
+        assertEquals(0, flights.coalesced());
+    }
+
+    private List<Future<String>> runConcurrently(int count, SingleFlight.Call<String> call) {
+        final List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            results.add(executor.submit(() -> flights.execute("test-key", call)));
+        }
+        return results;
+    }
+
+    private void waitForCoalesced(long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (flights.coalesced() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
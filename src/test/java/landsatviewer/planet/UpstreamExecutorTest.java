@@ -0,0 +1,91 @@
+package landsatviewer.planet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class UpstreamExecutorTest {
+
+    @Test
+    public void async_isNotBlocking() {
+        assertFalse(UpstreamExecutor.async().isBlocking());
+    }
+
+    @Test
+    public void submit_returnsValue() throws Exception {
+        final UpstreamExecutor executor = new UpstreamExecutor(UpstreamExecutor.Mode.PLATFORM, 2);
+
+        assertEquals("test-value", executor.submit(() -> "test-value").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void submit_propagatesErrors() throws Exception {
+        final UpstreamExecutor executor = new UpstreamExecutor(UpstreamExecutor.Mode.PLATFORM, 2);
+        final Client.Error error = new Client.Error("test-error");
+
+        try {
+            executor.submit(() -> {
+                throw error;
+            }).get(5, TimeUnit.SECONDS);
+            fail("expected error");
+        }
+        catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+    }
+
+    @Test
+    public void submit_limitsConcurrency() throws Exception {
+        assertMaxConcurrency(new UpstreamExecutor(UpstreamExecutor.Mode.PLATFORM, 3), 3);
+    }
+
+    @Test
+    public void submit_limitsConcurrencyOnVirtualThreads() throws Exception {
+        assumeTrue(UpstreamExecutor.supportsVirtualThreads());
+
+        assertMaxConcurrency(new UpstreamExecutor(UpstreamExecutor.Mode.VIRTUAL, 3), 3);
+    }
+
+    @Test
+    public void submit_runsOnVirtualThreads() throws Exception {
+        assumeTrue(UpstreamExecutor.supportsVirtualThreads());
+
+        final UpstreamExecutor executor = new UpstreamExecutor(UpstreamExecutor.Mode.VIRTUAL, 3);
+
+        assertTrue(executor.submit(() -> Thread.currentThread().toString()).get(5, TimeUnit.SECONDS).startsWith("VirtualThread"));
+    }
+
+    private static void assertMaxConcurrency(UpstreamExecutor executor, int expected) throws Exception {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+
+        final List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(executor.submit(() -> {
+                peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return active.decrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+        assertEquals(expected, peak.get());
+    }
+}
@@ -0,0 +1,67 @@
+package landsatviewer.planet;
+
+import java.io.IOException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+
+import landsatviewer.planet.UpstreamMetrics.Operation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class UpstreamMetricsTest {
+    private SimpleMeterRegistry registry;
+    private UpstreamMetrics metrics;
+
+    @Before
+    public void setUp() {
+        registry = new SimpleMeterRegistry();
+        metrics = new UpstreamMetrics(registry);
+    }
+
+    @Test
+    public void start_countsActiveCalls() {
+        final long first = metrics.start(Operation.TILE);
+        metrics.start(Operation.TILE);
+        metrics.start(Operation.SEARCH);
+
+        assertEquals(2.0, registry.get(UpstreamMetrics.ACTIVE).tag("operation", "tile").gauge().value(), 0.0);
+        assertEquals(1.0, registry.get(UpstreamMetrics.ACTIVE).tag("operation", "search").gauge().value(), 0.0);
+
+        metrics.completed(Operation.TILE, first, 200);
+        assertEquals(1.0, registry.get(UpstreamMetrics.ACTIVE).tag("operation", "tile").gauge().value(), 0.0);
+    }
+
+    @Test
+    public void completed_recordsTimerPerStatus() {
+        metrics.completed(Operation.TILE, metrics.start(Operation.TILE), 200);
+        metrics.completed(Operation.TILE, metrics.start(Operation.TILE), 200);
+        metrics.completed(Operation.TILE, metrics.start(Operation.TILE), 429);
+
+        assertEquals(2, registry.get(UpstreamMetrics.REQUESTS).tags("operation", "tile", "status", "200").timer().count());
+        assertEquals(1, registry.get(UpstreamMetrics.REQUESTS).tags("operation", "tile", "status", "429").timer().count());
+        assertNull(registry.find(UpstreamMetrics.REQUESTS).tag("operation", "scene").timer());
+    }
+
+    @Test
+    public void completed_reusesTimer() {
+        metrics.completed(Operation.SCENE, metrics.start(Operation.SCENE), 304);
+        final Object timer = registry.get(UpstreamMetrics.REQUESTS).tag("status", "304").timer();
+        metrics.completed(Operation.SCENE, metrics.start(Operation.SCENE), 304);
+
+        assertSame(timer, registry.get(UpstreamMetrics.REQUESTS).tag("status", "304").timer());
+        assertEquals(1, registry.get(UpstreamMetrics.REQUESTS).timers().size());
+    }
+
+    @Test
+    public void failed_countsErrorsByException() {
+        metrics.failed(Operation.SEARCH, metrics.start(Operation.SEARCH), new IOException());
+        metrics.failed(Operation.SEARCH, metrics.start(Operation.SEARCH), new IOException());
+
+        assertEquals(2.0, registry.get(UpstreamMetrics.ERRORS).tags("operation", "search", "exception", "IOException").counter().count(), 0.0);
+        assertEquals(2, registry.get(UpstreamMetrics.REQUESTS).tags("operation", "search", "status", "none").timer().count());
+    }
+}
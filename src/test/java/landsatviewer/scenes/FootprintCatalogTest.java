@@ -0,0 +1,121 @@
+package landsatviewer.scenes;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import landsatviewer.planet.Scene;
+
+public class FootprintCatalogTest {
+    private static final Instant SINCE = Instant.parse("2019-09-01T00:00:00Z");
+
+    @Test
+    public void query_matchesIntersectingFootprints() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(scene("inside", 10, 10), scene("edge", 11.5, 10), scene("outside", 13, 13)));
+
+        assertEquals(List.of("edge", "inside"), ids(catalog.query("a", Footprint.buffer(10.5, 10, 1.0), SINCE)));
+    }
+
+    @Test
+    public void query_filtersByDate() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(scene("recent", 10, 10, "2019-09-10T10:00:00Z"), scene("old", 10, 10, "2019-08-01T10:00:00Z")));
+
+        assertEquals(List.of("recent"), ids(catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE)));
+    }
+
+    @Test
+    public void query_returnsMostRecentlyAcquiredFirst() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(
+                scene("middle", 10, 10, "2019-09-10T10:00:00Z"),
+                scene("oldest", 10, 10, "2019-09-02T10:00:00Z"),
+                scene("newest", 10, 10, "2019-09-18T10:00:00Z")));
+
+        assertEquals(List.of("newest", "middle", "oldest"),
+                catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE).stream().map(s -> s.id).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void query_includesScenesWithoutGeometryOfTheSameRegion() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        final Scene scene = scene("unlocated", 0, 0);
+        scene.geometry = null;
+        catalog.put("a", List.of(scene));
+
+        assertEquals(List.of("unlocated"), ids(catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE)));
+    }
+
+    @Test
+    public void query_excludesScenesWithoutGeometryOfOtherRegions() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        final Scene scene = scene("unlocated", 0, 0);
+        scene.geometry.type = "MultiPolygon";
+        catalog.put("a", List.of(scene));
+        catalog.put("b", List.of(scene("located", 50, 50)));
+
+        assertEquals(List.of("located"), ids(catalog.query("b", Footprint.buffer(50, 50, 1.0), SINCE)));
+
+        catalog.remove("a");
+        catalog.put("b", List.of(scene("located", 50, 50), scene));
+        assertEquals(List.of("located", "unlocated"), ids(catalog.query("b", Footprint.buffer(50, 50, 1.0), SINCE)));
+        assertEquals(List.of(), ids(catalog.query("c", Footprint.buffer(10, 10, 1.0), SINCE)));
+    }
+
+    @Test
+    public void remove_keepsFootprintsSharedWithOtherRegions() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(scene("shared", 10, 10), scene("only-a", 10, 10)));
+        catalog.put("b", List.of(scene("shared", 10, 10)));
+
+        catalog.remove("a");
+
+        assertEquals(List.of("shared"), ids(catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE)));
+        assertEquals(1L, (long) catalog.stats().get("footprints"));
+    }
+
+    @Test
+    public void put_replacesRegionFootprints() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(scene("first", 10, 10)));
+        catalog.put("a", List.of(scene("second", 10, 10)));
+
+        assertEquals(List.of("second"), ids(catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE)));
+    }
+
+    @Test
+    public void query_rebuildsIndexOnlyAfterChanges() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        catalog.put("a", List.of(scene("first", 10, 10)));
+
+        catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE);
+        catalog.put("b", List.of(scene("first", 10, 10)));
+        catalog.query("a", Footprint.buffer(10, 10, 1.0), SINCE);
+
+        assertEquals(1L, (long) catalog.stats().get("rebuilds"));
+    }
+
+    private static List<String> ids(List<Scene> scenes) {
+        return scenes.stream().map(s -> s.id).sorted().collect(Collectors.toList());
+    }
+
+    private static Scene scene(String id, double x, double y) {
+        return scene(id, x, y, "2019-09-10T10:00:00Z");
+    }
+
+    private static Scene scene(String id, double x, double y, String acquired) {
+        final Scene scene = new Scene();
+        scene.id = id;
+        scene.geometry = new Scene.Geometry();
+        scene.geometry.type = "Polygon";
+        scene.geometry.coordinates = new double[][][]{{
+                {x - 0.1, y - 0.1}, {x + 0.1, y - 0.1}, {x + 0.1, y + 0.1}, {x - 0.1, y + 0.1}, {x - 0.1, y - 0.1}}};
+        scene.properties = new Scene.Properties(acquired, 0, 30, 1, 1);
+        return scene;
+    }
+}
@@ -0,0 +1,115 @@
+package landsatviewer.scenes;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneDocument;
+
+public class SceneCacheTest {
+    private Client client;
+    private AtomicLong ticker;
+    private SceneDocument document;
+
+    @Before
+    public void setUp() {
+        client = mock(Client.class);
+        ticker = new AtomicLong();
+
+        final Scene scene = new Scene();
+        scene.id = "test-scene-id";
+        document = new SceneDocument(scene, "\"upstream-etag\"", null);
+        when(client.getSceneDocumentAsync("test-scene-id", null)).thenReturn(completedFuture(document));
+    }
+
+    @Test
+    public void get_servesSerializedSceneWithETag() throws Exception {
+        final SceneCache.Entry entry = createCache().get("test-scene-id").join();
+
+        assertArrayEquals(new ObjectMapper().writeValueAsBytes(document.scene), entry.getJson());
+        assertTrue(entry.getETag().matches("\"[0-9a-f]{32}\""));
+    }
+
+    @Test
+    public void get_fetchesOnce() {
+        final SceneCache cache = createCache();
+
+        final SceneCache.Entry first = cache.get("test-scene-id").join();
+        final SceneCache.Entry second = cache.get("test-scene-id").join();
+
+        assertSame(first, second);
+        verify(client, times(1)).getSceneDocumentAsync("test-scene-id", null);
+    }
+
+    @Test
+    public void get_revalidatesWithPreviousDocument() {
+        when(client.getSceneDocumentAsync("test-scene-id", document)).thenReturn(completedFuture(document));
+        final SceneCache cache = createCache();
+        final SceneCache.Entry first = cache.get("test-scene-id").join();
+
+        ticker.addAndGet(TimeUnit.HOURS.toNanos(2));
+        cache.get("test-scene-id").join();
+
+        verify(client).getSceneDocumentAsync(same("test-scene-id"), same(document));
+        assertSame(first, cache.get("test-scene-id").join());
+    }
+
+    @Test
+    public void get_remembersMissingScenesBriefly() {
+        when(client.getSceneDocumentAsync("missing-scene-id", null)).thenReturn(failedFuture(mock(Client.NotFound.class)));
+        final SceneCache cache = createCache();
+
+        assertTrue(cache.get("missing-scene-id").join().isMissing());
+        assertTrue(cache.get("missing-scene-id").join().isMissing());
+        verify(client, times(1)).getSceneDocumentAsync("missing-scene-id", null);
+
+        ticker.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        cache.get("missing-scene-id").join();
+        verify(client, times(2)).getSceneDocumentAsync("missing-scene-id", null);
+    }
+
+    @Test
+    public void get_doesNotCacheFailures() {
+        when(client.getSceneDocumentAsync("test-scene-id", null))
+                .thenReturn(failedFuture(new Client.Error("test-error")))
+                .thenReturn(completedFuture(document));
+        final SceneCache cache = createCache();
+
+        assertTrue(cache.get("test-scene-id").isCompletedExceptionally());
+        assertFalse(cache.get("test-scene-id").join().isMissing());
+    }
+
+    @Test
+    public void matches_comparesIfNoneMatchWeakly() {
+        final SceneCache.Entry entry = createCache().get("test-scene-id").join();
+
+        assertTrue(entry.matches(entry.getETag()));
+        assertTrue(entry.matches("\"other\", W/" + entry.getETag()));
+        assertTrue(entry.matches("*"));
+        assertFalse(entry.matches("\"other\""));
+        assertFalse(entry.matches(null));
+    }
+
+    private SceneCache createCache() {
+        return new SceneCache(client, new ObjectMapper(), 100, Duration.ofHours(1), Duration.ofMinutes(1), ticker::get);
+    }
+}
@@ -0,0 +1,231 @@
+package landsatviewer.scenes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.Scene;
+import landsatviewer.planet.SceneCollection;
+import landsatviewer.planet.SearchCriteria;
+
+public class SearchCacheTest {
+    private static final Instant NOW = Instant.parse("2019-09-20T12:00:00Z");
+
+    private Client client;
+    private MutableClock clock;
+
+    @Before
+    public void setUp() {
+        client = mock(Client.class);
+        clock = new MutableClock(NOW);
+        when(client.searchAsync(any(SearchCriteria.class)))
+                .thenReturn(completedFuture(collection(
+                        scene("near-recent", 10.0, 10.0, "2019-09-18T10:00:00Z"),
+                        scene("near-old", 10.0, 10.0, "2019-08-01T10:00:00Z"),
+                        scene("far-recent", 11.5, 10.5, "2019-09-17T10:00:00Z"))));
+    }
+
+    @Test
+    public void search_fetchesEachCellOnce() {
+        final SearchCache cache = createCache();
+
+        cache.search(10.2, 10.3, 14).join();
+        cache.search(10.7, 10.9, 14).join();
+
+        verify(client, times(1)).searchAsync(any(SearchCriteria.class));
+    }
+
+    @Test
+    public void search_fetchesCellGrownByBuffer() throws Exception {
+        final SearchCache cache = createCache();
+
+        cache.search(10.2, 10.3, 14).join();
+
+        final ArgumentCaptor<SearchCriteria> criteria = ArgumentCaptor.forClass(SearchCriteria.class);
+        verify(client).searchAsync(criteria.capture());
+        final String json = new ObjectMapper().writeValueAsString(criteria.getValue());
+        assertTrue(json, json.contains("[[[9.0,9.0],[9.0,12.0],[12.0,12.0],[12.0,9.0],[9.0,9.0]]]"));
+        assertTrue(json, json.contains("\"gte\":\"2019-09-06T00:00:00Z\""));
+    }
+
+    @Test
+    public void search_filtersByExactBuffer() {
+        final SearchCache cache = createCache();
+
+        assertEquals(List.of("near-recent"), ids(cache.search(10.1, 10.1, 14).join()));
+        assertEquals(List.of("near-recent", "far-recent"), ids(cache.search(10.95, 10.5, 14).join()));
+    }
+
+    @Test
+    public void search_filtersByExactDate() {
+        final SearchCache cache = createCache();
+
+        assertEquals(List.of("near-recent", "near-old"), ids(cache.search(10.1, 10.1, 60).join()));
+        assertEquals(List.of("near-recent"), ids(cache.search(10.1, 10.1, 14).join()));
+    }
+
+    @Test
+    public void search_refetchesAfterNextOverpass() {
+        final SearchCache cache = createCache();
+
+        cache.search(10.2, 10.3, 14).join();
+        clock.advance(Duration.ofDays(1));
+        cache.search(10.2, 10.3, 14).join();
+
+        verify(client, times(2)).searchAsync(any(SearchCriteria.class));
+    }
+
+    @Test
+    public void search_servesCatalogWhileRefreshing() {
+        final SearchCache cache = createCache();
+        cache.search(10.2, 10.3, 14).join();
+
+        when(client.searchAsync(any(SearchCriteria.class))).thenReturn(new CompletableFuture<>());
+        clock.advance(Duration.ofDays(1));
+
+        assertEquals(List.of("near-recent"), ids(cache.search(10.1, 10.1, 14).join()));
+        assertEquals(List.of("near-recent"), ids(cache.search(10.1, 10.1, 14).join()));
+        verify(client, times(2)).searchAsync(any(SearchCriteria.class));
+    }
+
+    @Test
+    public void search_dropsIdleCells() {
+        final FootprintCatalog catalog = new FootprintCatalog();
+        final SearchCache cache = new SearchCache(client, catalog, 100, 1.0, Duration.ofHours(6), 100, clock);
+        cache.search(10.2, 10.3, 14).join();
+
+        clock.advance(Duration.ofDays(3));
+        cache.search(50.0, 50.0, 14).join();
+
+        verify(client, times(2)).searchAsync(any(SearchCriteria.class));
+        assertEquals(1L, (long) catalog.stats().get("regions"));
+    }
+
+    @Test
+    public void search_delegatesCellsWithTruncatedResults() {
+        when(client.searchAsync(anyDouble(), anyDouble(), anyInt()))
+                .thenReturn(completedFuture(collection(scene("point", 10.1, 10.1, "2019-09-18T10:00:00Z"))));
+        final FootprintCatalog catalog = new FootprintCatalog();
+        final SearchCache cache = new SearchCache(client, catalog, 100, 1.0, Duration.ofHours(6), 3, clock);
+
+        assertEquals(List.of("point"), ids(cache.search(10.1, 10.1, 14).join()));
+        assertEquals(List.of("point"), ids(cache.search(10.2, 10.2, 14).join()));
+
+        verify(client, times(1)).searchAsync(any(SearchCriteria.class));
+        verify(client).searchAsync(10.1, 10.1, 14);
+        verify(client).searchAsync(10.2, 10.2, 14);
+        assertEquals(0L, (long) catalog.stats().get("regions"));
+        assertEquals(1L, (long) cache.stats().get("truncated"));
+    }
+
+    @Test
+    public void search_delegatesWhenDisabled() {
+        when(client.searchAsync(anyDouble(), anyDouble(), anyInt())).thenReturn(completedFuture(collection()));
+        final SearchCache cache = new SearchCache(client, new FootprintCatalog(), 0, 1.0, Duration.ofHours(6), 100, clock);
+
+        cache.search(10.2, 10.3, 14).join();
+
+        verify(client).searchAsync(10.2, 10.3, 14);
+    }
+
+    @Test
+    public void nextRefresh_followsOverpassAtCellLongitude() {
+        final SearchCache cache = createCache();
+
+        // 10:11 local solar time at the 90.5W cell centre is 16:13 UTC, plus six hours to ingest
+        assertEquals(Instant.parse("2019-09-20T22:13:00Z"), cache.nextRefresh(new SearchCache.Cell(-91, 0, 14), NOW));
+        // 10:11 local solar time at the 89.5E cell centre is 04:13 UTC, and 10:13 with ingest has already passed today
+        assertEquals(Instant.parse("2019-09-21T10:13:00Z"), cache.nextRefresh(new SearchCache.Cell(89, 0, 14), NOW));
+    }
+
+    @Test
+    public void hottest_returnsSearchesThatRestoreTheSameCells() {
+        final SearchCache cache = createCache();
+        cache.search(10.2, 10.3, 14).join();
+
+        final List<String> hottest = cache.hottest(10);
+        assertEquals(List.of("10.5,10.5,14"), hottest);
+
+        final SearchCache restored = createCache();
+        restored.restore(hottest.get(0)).join();
+        restored.search(10.7, 10.9, 14).join();
+
+        verify(client, times(2)).searchAsync(any(SearchCriteria.class));
+        assertEquals(1L, (long) restored.stats().get("hits"));
+    }
+
+    private SearchCache createCache() {
+        return new SearchCache(client, new FootprintCatalog(), 100, 1.0, Duration.ofHours(6), 100, clock);
+    }
+
+    private static List<String> ids(SceneCollection scenes) {
+        return scenes.features.stream().map(s -> s.id).collect(Collectors.toList());
+    }
+
+    private static SceneCollection collection(Scene... scenes) {
+        final SceneCollection collection = new SceneCollection();
+        collection.features = new ArrayList<>(List.of(scenes));
+        return collection;
+    }
+
+    private static Scene scene(String id, double x, double y, String acquired) {
+        final Scene scene = new Scene();
+        scene.id = id;
+        scene.geometry = new Scene.Geometry();
+        scene.geometry.type = "Polygon";
+        scene.geometry.coordinates = new double[][][]{{
+                {x - 0.1, y - 0.1}, {x + 0.1, y - 0.1}, {x + 0.1, y + 0.1}, {x - 0.1, y + 0.1}, {x - 0.1, y - 0.1}}};
+        scene.properties = new Scene.Properties(acquired, 0, 30, 1, 1);
+        return scene;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package landsatviewer.tiles;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DiskTileStoreTest {
+    private static final TileKey KEY = new TileKey("test-scene-id", 12, 34, 56);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void get_returnsStoredTile() throws Exception {
+        DiskTileStore store = createStore(4096, 1024);
+
+        store.put(KEY, "test-data".getBytes());
+
+        assertEquals("test-data", read(store.get(KEY)));
+    }
+
+    @Test
+    public void get_returnsNullForUnknownTile() throws Exception {
+        DiskTileStore store = createStore(4096, 1024);
+
+        assertNull(store.get(KEY));
+    }
+
+    @Test
+    public void peek_doesNotCountHitsOrMisses() throws Exception {
+        DiskTileStore store = createStore(4096, 1024);
+
+        store.peek(KEY);
+        store.put(KEY, "test-data".getBytes());
+
+        assertEquals("test-data", read(store.peek(KEY)));
+        assertEquals(0L, (long) store.stats().get("hits"));
+        assertEquals(0L, (long) store.stats().get("misses"));
+    }
+
+    @Test
+    public void get_returnsNullWhenDisabled() throws Exception {
+        DiskTileStore store = new DiskTileStore("", 4096, 1024);
+
+        store.put(KEY, "test-data".getBytes());
+
+        assertFalse(store.isEnabled());
+        assertNull(store.get(KEY));
+    }
+
+    @Test
+    public void recoversTilesAfterRestart() throws Exception {
+        DiskTileStore store = createStore(4096, 1024);
+        store.put(KEY, "test-data".getBytes());
+        store.put(new TileKey("test-scene-id", 1, 2, 3), "other-data".getBytes());
+        store.close();
+
+        DiskTileStore reopened = createStore(4096, 1024);
+
+        assertEquals("test-data", read(reopened.get(KEY)));
+        assertEquals("other-data", read(reopened.get(new TileKey("test-scene-id", 1, 2, 3))));
+    }
+
+    @Test
+    public void recoversFromTornLastRecord() throws Exception {
+        DiskTileStore store = createStore(4096, 1024);
+        store.put(KEY, "test-data".getBytes());
+        store.put(new TileKey("test-scene-id", 1, 2, 3), "torn-data".getBytes());
+        store.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(segment(1).toFile(), "rw")) {
+            final long offset = indexOf(file, "torn-data");
+            file.seek(offset);
+            file.write("XXXX".getBytes());
+        }
+
+        DiskTileStore reopened = createStore(4096, 1024);
+        reopened.put(new TileKey("test-scene-id", 7, 8, 9), "new-data".getBytes());
+        reopened.close();
+
+        DiskTileStore recovered = createStore(4096, 1024);
+
+        assertEquals("test-data", read(recovered.get(KEY)));
+        assertNull(recovered.get(new TileKey("test-scene-id", 1, 2, 3)));
+        assertEquals("new-data", read(recovered.get(new TileKey("test-scene-id", 7, 8, 9))));
+    }
+
+    @Test
+    public void evictsOldestSegmentOverBudget() throws Exception {
+        DiskTileStore store = createStore(2048, 1024);
+
+        for (int i = 0; i < 12; i++) {
+            store.put(new TileKey("test-scene-id", 12, i, 56), new byte[200]);
+        }
+
+        assertNull(store.get(new TileKey("test-scene-id", 12, 0, 56)));
+        assertNotNull(store.get(new TileKey("test-scene-id", 12, 11, 56)));
+        assertEquals(2L, (long) store.stats().get("segments"));
+    }
+
+    @Test
+    public void compactsRecentlyReadTilesForward() throws Exception {
+        DiskTileStore store = createStore(2048, 1024);
+        store.put(KEY, "test-data".getBytes());
+        store.get(KEY);
+
+        for (int i = 0; i < 12; i++) {
+            store.put(new TileKey("test-scene-id", 12, i, 56), new byte[200]);
+        }
+
+        assertEquals("test-data", read(store.get(KEY)));
+        assertEquals(1L, (long) store.stats().get("compactions"));
+    }
+
+    private DiskTileStore createStore(long maxBytes, int segmentBytes) throws Exception {
+        return new DiskTileStore(folder.getRoot().getPath(), maxBytes, segmentBytes);
+    }
+
+    private Path segment(int number) {
+        return folder.getRoot().toPath().resolve(String.format("segment-%06d.dat", number));
+    }
+
+    private static long indexOf(RandomAccessFile file, String needle) throws Exception {
+        final byte[] contents = new byte[(int) file.length()];
+        file.readFully(contents);
+        return new String(contents, "ISO-8859-1").indexOf(needle);
+    }
+
+    private static String read(ByteBuffer buffer) {
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return new String(data);
+    }
+}
@@ -0,0 +1,138 @@
+package landsatviewer.tiles;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class TileCacheTest {
+    private static final TileKey KEY = new TileKey("test-scene-id", 12, 34, 56);
+
+    private AtomicLong now;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong();
+    }
+
+    @Test
+    public void get_returnsStoredTile() {
+        TileCache cache = createCache(1024);
+
+        cache.put(KEY, "test-data".getBytes());
+
+        assertArrayEquals("test-data".getBytes(), cache.get(KEY));
+    }
+
+    @Test
+    public void get_returnsNullForUnknownTile() {
+        TileCache cache = createCache(1024);
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void get_expiresTilesAfterTTL() {
+        TileCache cache = createCache(1024);
+
+        cache.put(KEY, "test-data".getBytes());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void getStale_returnsTilesPastTTL() {
+        TileCache cache = createCache(1024);
+
+        cache.put(KEY, "test-data".getBytes());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertFalse(cache.contains(KEY));
+        assertArrayEquals("test-data".getBytes(), cache.getStale(KEY));
+        assertEquals(1L, (long) cache.stats().get("stale_hits"));
+    }
+
+    @Test
+    public void getStale_expiresTilesAfterStalePeriod() {
+        TileCache cache = createCache(1024);
+
+        cache.put(KEY, "test-data".getBytes());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(661));
+
+        assertNull(cache.getStale(KEY));
+    }
+
+    @Test
+    public void peek_doesNotCountHitsOrMisses() {
+        TileCache cache = createCache(1024);
+
+        cache.peek(KEY);
+        cache.put(KEY, "test-data".getBytes());
+
+        assertArrayEquals("test-data".getBytes(), cache.peek(KEY));
+        assertEquals(0L, (long) cache.stats().get("hits"));
+        assertEquals(0L, (long) cache.stats().get("misses"));
+    }
+
+    @Test
+    public void put_ignoresTilesLargerThanBudget() {
+        TileCache cache = createCache(4);
+
+        cache.put(KEY, "test-data".getBytes());
+
+        assertNull(cache.get(KEY));
+    }
+
+    @Test
+    public void put_evictsToStayWithinByteBudget() {
+        TileCache cache = createCache(100);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(new TileKey("test-scene-id", 12, i, 56), new byte[30]);
+        }
+
+        assertEquals(3L, (long) cache.stats().get("entries"));
+        assertEquals(90L, (long) cache.stats().get("bytes"));
+        assertEquals(7L, (long) cache.stats().get("evictions"));
+    }
+
+    @Test
+    public void hottest_returnsFreshTilesUpToLimit() {
+        TileCache cache = createCache(1024);
+
+        cache.put(new TileKey("test-scene-id", 12, 1, 56), "stale-data".getBytes());
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        for (int i = 2; i < 5; i++) {
+            cache.put(new TileKey("test-scene-id", 12, i, 56), "test-data".getBytes());
+        }
+
+        assertEquals(2, cache.hottest(2).size());
+        assertFalse(cache.hottest(10).contains(new TileKey("test-scene-id", 12, 1, 56)));
+        assertEquals(3, cache.hottest(10).size());
+    }
+
+    @Test
+    public void stats_countsHitsAndMisses() {
+        TileCache cache = createCache(1024);
+
+        cache.get(KEY);
+        cache.put(KEY, "test-data".getBytes());
+        cache.get(KEY);
+        cache.get(KEY);
+
+        assertEquals(2L, (long) cache.stats().get("hits"));
+        assertEquals(1L, (long) cache.stats().get("misses"));
+    }
+
+    private TileCache createCache(long maxBytes) {
+        return new TileCache(maxBytes, Duration.ofSeconds(60), Duration.ofSeconds(600), now::get, Runnable::run);
+    }
+}
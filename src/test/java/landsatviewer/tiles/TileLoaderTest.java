@@ -0,0 +1,117 @@
+package landsatviewer.tiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.failedFuture;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.TileStream;
+
+public class TileLoaderTest {
+    private static final TileKey KEY = new TileKey("test-scene-id", 16, 803, 800);
+    private static final TileKey ANCESTOR = new TileKey("test-scene-id", 14, 200, 200);
+
+    private Client client;
+    private TileCache tileCache;
+    private DiskTileStore tileStore;
+    private TilePeers peers;
+    private TileSynthesizer synthesizer;
+    private TileLoader loader;
+
+    @Before
+    public void setUp() {
+        client = mock(Client.class);
+        tileCache = mock(TileCache.class);
+        tileStore = mock(DiskTileStore.class);
+        peers = mock(TilePeers.class);
+        synthesizer = mock(TileSynthesizer.class);
+        loader = new TileLoader(client, tileCache, tileStore, peers, synthesizer);
+
+        when(client.fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenReturn(completedFuture("planet-data".getBytes()));
+        when(client.fetchTileAsync(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> completedFuture(TileStream.buffered("planet-data".getBytes(), null)));
+    }
+
+    @Test
+    public void load_usesStoredTile() throws Exception {
+        when(tileStore.get(KEY)).thenReturn(ByteBuffer.wrap("stored-data".getBytes()));
+
+        assertArrayEquals("stored-data".getBytes(), loader.load(KEY).get());
+        verify(client, never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void load_overzoomsFromAncestor() throws Exception {
+        when(synthesizer.isOverzoomed(KEY)).thenReturn(true);
+        when(synthesizer.ancestor(KEY)).thenReturn(ANCESTOR);
+        when(synthesizer.overzoom(eq(KEY), aryEq("planet-data".getBytes()))).thenReturn(completedFuture("cropped-data".getBytes()));
+
+        assertArrayEquals("cropped-data".getBytes(), loader.load(KEY).get());
+        verify(client).fetchTileDataAsync("test-scene-id", 200, 200, 14);
+        verify(client, never()).fetchTileDataAsync("test-scene-id", 803, 800, 16);
+    }
+
+    @Test
+    public void load_fetchesFromOwner() throws Exception {
+        when(peers.owner(KEY)).thenReturn("http://owner");
+        when(peers.fetch("http://owner", KEY)).thenReturn(completedFuture("owner-data".getBytes()));
+
+        assertArrayEquals("owner-data".getBytes(), loader.load(KEY).get());
+        verify(client, never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+        verify(tileCache, never()).put(any(TileKey.class), any(byte[].class));
+        verify(tileStore, never()).put(any(TileKey.class), any(byte[].class));
+    }
+
+    @Test
+    public void load_fetchesFromPlanetWhenOwnerIsUnreachable() throws Exception {
+        when(peers.owner(KEY)).thenReturn("http://owner");
+        when(peers.fetch("http://owner", KEY)).thenReturn(failedFuture(new IOException("test-error")));
+
+        assertArrayEquals("planet-data".getBytes(), loader.load(KEY).get());
+        verify(tileStore).put(eq(KEY), aryEq("planet-data".getBytes()));
+    }
+
+    @Test
+    public void load_reportsOwnerErrors() throws Exception {
+        when(peers.owner(KEY)).thenReturn("http://owner");
+        when(peers.fetch("http://owner", KEY)).thenReturn(failedFuture(new TilePeers.OwnerError(503)));
+
+        try {
+            loader.load(KEY).get();
+            fail("expected the owner's error");
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TilePeers.OwnerError);
+        }
+        verify(client, never()).fetchTileDataAsync(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void fetchFromPlanet_keepsTileOnceRead() throws Exception {
+        try (TileStream stream = loader.fetchFromPlanet(KEY).get()) {
+            stream.readAllBytes();
+        }
+
+        verify(tileCache).put(eq(KEY), aryEq("planet-data".getBytes()));
+        verify(tileStore).put(eq(KEY), aryEq("planet-data".getBytes()));
+    }
+}
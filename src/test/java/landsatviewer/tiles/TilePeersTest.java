@@ -0,0 +1,162 @@
+package landsatviewer.tiles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TilePeersTest {
+    private static final List<String> PEERS = List.of("http://a:8080", "http://b:8080", "http://c:8080");
+
+    private HttpServer server;
+    private String serverUrl;
+    private String presentedSecret;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        serverUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        server.createContext(TilePeers.PATH, exchange -> {
+            presentedSecret = exchange.getRequestHeaders().getFirst(TilePeers.SECRET_HEADER);
+            final String path = exchange.getRequestURI().getPath();
+            final int status = path.contains("/busy-scene/") ? 503 : 200;
+            final byte[] body = status == 200 ? path.getBytes() : new byte[0];
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void owner_isTheSameOnEveryInstance() {
+        final TilePeers a = new TilePeers(PEERS, "http://a:8080", "", Duration.ofSeconds(1));
+        final TilePeers b = new TilePeers(PEERS, "http://b:8080/", "", Duration.ofSeconds(1));
+
+        for (int x = 0; x < 100; x++) {
+            final TileKey key = new TileKey("test-scene-id", 12, x, 34);
+            final String ownerSeenByA = a.isOwner(key) ? "http://a:8080" : a.owner(key);
+            final String ownerSeenByB = b.isOwner(key) ? "http://b:8080" : b.owner(key);
+            assertEquals(ownerSeenByA, ownerSeenByB);
+        }
+    }
+
+    @Test
+    public void owner_spreadsTilesAcrossPeers() {
+        final TilePeers peers = new TilePeers(PEERS, "http://a:8080", "", Duration.ofSeconds(1));
+        final Map<String, Integer> counts = new HashMap<>();
+
+        for (int x = 0; x < 100; x++) {
+            for (int y = 0; y < 30; y++) {
+                final TileKey key = new TileKey("test-scene-id", 12, x, y);
+                counts.merge(peers.isOwner(key) ? "self" : peers.owner(key), 1, Integer::sum);
+            }
+        }
+
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue("unbalanced ring: " + counts, count > 600 && count < 1400);
+        }
+    }
+
+    @Test
+    public void owner_onlyMovesTilesOfRemovedPeer() {
+        final TilePeers before = new TilePeers(PEERS, "http://a:8080", "", Duration.ofSeconds(1));
+        final TilePeers after = new TilePeers(PEERS.subList(0, 2), "http://a:8080", "", Duration.ofSeconds(1));
+
+        for (int x = 0; x < 1000; x++) {
+            final TileKey key = new TileKey("test-scene-id", 12, x, 34);
+            if (!"http://c:8080".equals(before.owner(key))) {
+                assertEquals(before.owner(key), after.owner(key));
+            }
+        }
+    }
+
+    @Test
+    public void owner_isSelfWhenStandalone() {
+        final TilePeers peers = TilePeers.standalone();
+
+        assertNull(peers.owner(new TileKey("test-scene-id", 12, 34, 56)));
+        assertFalse(peers.accepts(null));
+        assertTrue(peers.stats().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsSelfMissingFromPeers() {
+        new TilePeers(PEERS, "http://d:8080", "", Duration.ofSeconds(1));
+    }
+
+    @Test
+    public void accepts_checksSecret() {
+        final TilePeers peers = new TilePeers(PEERS, "http://a:8080", "test-secret", Duration.ofSeconds(1));
+
+        assertTrue(peers.accepts("test-secret"));
+        assertFalse(peers.accepts("other-secret"));
+        assertFalse(peers.accepts(null));
+    }
+
+    @Test
+    public void fetch_requestsTileFromOwner() throws Exception {
+        final TilePeers peers = new TilePeers(List.of(serverUrl, "http://self:8080"), "http://self:8080", "test-secret",
+                Duration.ofSeconds(1));
+
+        final byte[] tile = peers.fetch(serverUrl, new TileKey("test-scene-id", 12, 34, 56)).get();
+
+        assertArrayEquals((TilePeers.PATH + "/test-scene-id/12/34/56.png").getBytes(), tile);
+        assertEquals("test-secret", presentedSecret);
+        assertEquals(Long.valueOf(1), peers.stats().get("peer_hits"));
+    }
+
+    @Test
+    public void fetch_reportsOwnerErrors() throws Exception {
+        final TilePeers peers = new TilePeers(List.of(serverUrl, "http://self:8080"), "http://self:8080", "",
+                Duration.ofSeconds(1));
+
+        try {
+            peers.fetch(serverUrl, new TileKey("busy-scene", 12, 34, 56)).get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TilePeers.OwnerError);
+            assertEquals(503, ((TilePeers.OwnerError) e.getCause()).getStatus());
+        }
+    }
+
+    @Test
+    public void fetch_failsWhenOwnerIsUnreachable() throws Exception {
+        server.stop(0);
+        final TilePeers peers = new TilePeers(List.of(serverUrl, "http://self:8080"), "http://self:8080", "",
+                Duration.ofSeconds(1));
+
+        try {
+            peers.fetch(serverUrl, new TileKey("test-scene-id", 12, 34, 56)).get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertFalse(e.getCause() instanceof TilePeers.OwnerError);
+            assertEquals(Long.valueOf(1), peers.stats().get("peer_failures"));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package landsatviewer.tiles;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.intThat;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import landsatviewer.planet.Client;
+import landsatviewer.planet.TileStream;
+
+public class TilePrefetcherTest {
+    private Client client;
+    private TileCache tileCache;
+    private DiskTileStore tileStore;
+    private TileSynthesizer synthesizer;
+    private ScheduledExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        client = mock(Client.class);
+        tileCache = mock(TileCache.class);
+        tileStore = mock(DiskTileStore.class);
+        executor = new ScheduledThreadPoolExecutor(2);
+        synthesizer = new TileSynthesizer(tileCache, tileStore, 0, 0, null);
+        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> TileStream.buffered("test-data".getBytes(), null));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void observe_prefetchesNeighboursIntoCache() throws Exception {
+        createPrefetcher(64).observe(new TileKey("test-scene-id", 4, 5, 6));
+
+        verify(tileCache, timeout(1000).times(8)).put(any(TileKey.class), any(byte[].class));
+        verify(client, timeout(1000)).fetchTile("test-scene-id", 4, 5, 4);
+        verify(client, timeout(1000)).fetchTile("test-scene-id", 6, 7, 4);
+        verify(client, never()).fetchTile("test-scene-id", 5, 6, 4);
+    }
+
+    @Test
+    public void observe_staysInsideTileGrid() throws Exception {
+        createPrefetcher(64).observe(new TileKey("test-scene-id", 0, 0, 0));
+
+        verify(client, after(200).never()).fetchTile(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void observe_prefetchesChildrenWhenZoomingIn() throws Exception {
+        final TilePrefetcher prefetcher = createPrefetcher(64);
+        prefetcher.observe(new TileKey("test-scene-id", 3, 2, 3));
+        prefetcher.observe(new TileKey("test-scene-id", 4, 5, 6));
+
+        verify(client, timeout(1000)).fetchTile("test-scene-id", 10, 12, 5);
+        verify(client, timeout(1000)).fetchTile("test-scene-id", 11, 13, 5);
+    }
+
+    @Test
+    public void observe_neverFetchesPastMaxZoom() throws Exception {
+        synthesizer = new TileSynthesizer(tileCache, tileStore, 14, 1, executor);
+        final TilePrefetcher prefetcher = createPrefetcher(64);
+        prefetcher.observe(new TileKey("test-scene-id", 13, 100, 100));
+        prefetcher.observe(new TileKey("test-scene-id", 14, 200, 200));
+        prefetcher.observe(new TileKey("test-scene-id", 16, 803, 800));
+
+        verify(client, timeout(1000)).fetchTile("test-scene-id", 201, 199, 14);
+        verify(client, after(200).never()).fetchTile(anyString(), anyInt(), anyInt(), intThat(z -> z > 14));
+    }
+
+    @Test
+    public void observe_skipsCachedTiles() throws Exception {
+        when(tileCache.contains(any(TileKey.class))).thenReturn(true);
+
+        createPrefetcher(64).observe(new TileKey("test-scene-id", 4, 5, 6));
+
+        verify(client, after(200).never()).fetchTile(anyString(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void observe_respectsSceneBudget() throws Exception {
+        final TilePrefetcher prefetcher = createPrefetcher(3);
+        prefetcher.observe(new TileKey("test-scene-id", 4, 5, 6));
+        prefetcher.observe(new TileKey("test-scene-id", 4, 9, 9));
+
+        verify(client, after(200).times(3)).fetchTile(eq("test-scene-id"), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void observe_countsPrefetchHits() throws Exception {
+        final TilePrefetcher prefetcher = createPrefetcher(64);
+        prefetcher.observe(new TileKey("test-scene-id", 4, 5, 6));
+        verify(tileCache, timeout(1000).times(8)).put(any(TileKey.class), any(byte[].class));
+
+        prefetcher.observe(new TileKey("test-scene-id", 4, 6, 6));
+        prefetcher.observe(new TileKey("test-scene-id", 4, 6, 6));
+
+        assertEquals(1L, prefetcher.stats().get("hits"));
+    }
+
+    @Test
+    public void observe_backsOffAfterUpstreamError() throws Exception {
+        when(client.fetchTile(anyString(), anyInt(), anyInt(), anyInt()))
+                .thenThrow(new Client.Error("test-error"));
+        final TilePrefetcher prefetcher = new TilePrefetcher(client, tileCache, tileStore, TilePeers.standalone(), synthesizer, 1, 64,
+                Duration.ofSeconds(1), Duration.ofMinutes(1), System::nanoTime, executor);
+
+        prefetcher.observe(new TileKey("test-scene-id", 4, 5, 6));
+
+        verify(client, after(300).times(1)).fetchTile(anyString(), anyInt(), anyInt(), anyInt());
+        assertEquals(7, prefetcher.stats().get("queued"));
+    }
+
+    private TilePrefetcher createPrefetcher(int sceneBudget) {
+        return new TilePrefetcher(client, tileCache, tileStore, TilePeers.standalone(), synthesizer, 2, sceneBudget,
+                Duration.ofSeconds(1), Duration.ofSeconds(1), System::nanoTime, executor);
+    }
+}
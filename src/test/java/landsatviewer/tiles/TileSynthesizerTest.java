@@ -0,0 +1,187 @@
+package landsatviewer.tiles;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TileSynthesizerTest {
+    private static final Color[] QUADRANTS = {Color.RED, Color.GREEN, Color.BLUE, Color.YELLOW};
+
+    private TileCache tileCache;
+    private DiskTileStore tileStore;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        tileCache = mock(TileCache.class);
+        tileStore = mock(DiskTileStore.class);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void isOverzoomed_onlyBeyondMaxZoom() {
+        final TileSynthesizer synthesizer = createSynthesizer(12);
+
+        assertFalse(synthesizer.isOverzoomed(new TileKey("test-scene-id", 12, 1, 2)));
+        assertTrue(synthesizer.isOverzoomed(new TileKey("test-scene-id", 13, 1, 2)));
+        assertFalse(createSynthesizer(0).isOverzoomed(new TileKey("test-scene-id", 13, 1, 2)));
+    }
+
+    @Test
+    public void ancestor_isAtMaxZoom() {
+        assertEquals(new TileKey("test-scene-id", 12, 100, 200),
+                createSynthesizer(12).ancestor(new TileKey("test-scene-id", 14, 401, 803)));
+    }
+
+    @Test
+    public void overzoom_cropsAndScalesAncestor() throws Exception {
+        final TileSynthesizer synthesizer = createSynthesizer(12);
+        final TileKey key = new TileKey("test-scene-id", 13, 2 * 100 + 1, 2 * 200 + 1);
+
+        final BufferedImage tile = decode(synthesizer.overzoom(key, quadrants()).get());
+
+        assertEquals(256, tile.getWidth());
+        assertEquals(Color.YELLOW.getRGB(), tile.getRGB(10, 10));
+        assertEquals(Color.YELLOW.getRGB(), tile.getRGB(245, 245));
+        verify(tileCache).put(eq(key), any(byte[].class));
+        verify(tileStore).put(eq(key), any(byte[].class));
+        assertEquals(Long.valueOf(1), synthesizer.stats().get("overzoomed"));
+    }
+
+    @Test
+    public void underzoom_scalesDownCachedChildren() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            final TileKey child = new TileKey("test-scene-id", 13, 20 + (i & 1), 40 + (i >> 1));
+            if (i == 3) {
+                when(tileStore.peek(child)).thenReturn(ByteBuffer.wrap(solid(QUADRANTS[i])));
+            }
+            else {
+                when(tileCache.peek(child)).thenReturn(solid(QUADRANTS[i]));
+            }
+        }
+        final TileSynthesizer synthesizer = createSynthesizer(0);
+        final TileKey key = new TileKey("test-scene-id", 12, 10, 20);
+
+        final BufferedImage tile = decode(synthesizer.underzoom(key).get());
+
+        assertEquals(Color.RED.getRGB(), tile.getRGB(10, 10));
+        assertEquals(Color.GREEN.getRGB(), tile.getRGB(245, 10));
+        assertEquals(Color.BLUE.getRGB(), tile.getRGB(10, 245));
+        assertEquals(Color.YELLOW.getRGB(), tile.getRGB(245, 245));
+        verify(tileCache).put(eq(key), any(byte[].class));
+    }
+
+    @Test
+    public void underzoom_needsAllChildren() throws Exception {
+        when(tileCache.peek(new TileKey("test-scene-id", 13, 20, 40))).thenReturn(solid(Color.RED));
+
+        assertNull(createSynthesizer(0).underzoom(new TileKey("test-scene-id", 12, 10, 20)));
+        verify(tileCache, never()).get(any());
+        verify(tileStore, never()).get(any());
+    }
+
+    @Test
+    public void overzoom_rejectsWorkBeyondQueue() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                blocked.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> { });
+        final TileSynthesizer synthesizer = createSynthesizer(12);
+
+        try {
+            synthesizer.overzoom(new TileKey("test-scene-id", 13, 0, 0), quadrants()).get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            assertEquals(Long.valueOf(1), synthesizer.stats().get("rejected"));
+        }
+        finally {
+            blocked.countDown();
+        }
+    }
+
+    @Test
+    public void overzoom_failsOnInvalidImage() throws Exception {
+        final TileSynthesizer synthesizer = createSynthesizer(12);
+
+        try {
+            synthesizer.overzoom(new TileKey("test-scene-id", 13, 0, 0), "test-data".getBytes()).get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertEquals(Long.valueOf(1), synthesizer.stats().get("failed"));
+        }
+    }
+
+    private TileSynthesizer createSynthesizer(int maxZoom) {
+        return new TileSynthesizer(tileCache, tileStore, maxZoom, 1, executor);
+    }
+
+    private static byte[] quadrants() throws IOException {
+        final BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        for (int i = 0; i < 4; i++) {
+            graphics.setColor(QUADRANTS[i]);
+            graphics.fillRect((i & 1) * 128, (i >> 1) * 128, 128, 128);
+        }
+        return encode(image);
+    }
+
+    private static byte[] solid(Color color) throws IOException {
+        final BufferedImage image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setColor(color);
+        graphics.fillRect(0, 0, 256, 256);
+        return encode(image);
+    }
+
+    private static byte[] encode(BufferedImage image) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+}